@@ -20,23 +20,31 @@
 package org.sonar.objectivec;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
 import org.sonar.objectivec.api.ObjectiveCGrammar;
 import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.lexer.MappedSourceReader;
+import org.sonar.objectivec.lexer.ObjectiveCTokenCache;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.objectivec.metrics.ObjectiveCCommentAnalyser;
+import org.sonar.objectivec.metrics.ObjectiveCFunctionMetrics;
+import org.sonar.objectivec.metrics.ObjectiveCImports;
+import org.sonar.objectivec.metrics.ObjectiveCLineMetrics;
+import org.sonar.objectivec.metrics.ObjectiveCMetricsVisitor;
 import org.sonar.objectivec.parser.ObjectiveCParser;
 import org.sonar.squidbridge.AstScanner;
-import org.sonar.squidbridge.CommentAnalyser;
 import org.sonar.squidbridge.SquidAstVisitor;
 import org.sonar.squidbridge.SquidAstVisitorContextImpl;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.api.SourceProject;
 import org.sonar.squidbridge.indexer.QueryByType;
-import org.sonar.squidbridge.metrics.CommentsVisitor;
-import org.sonar.squidbridge.metrics.LinesOfCodeVisitor;
-import org.sonar.squidbridge.metrics.LinesVisitor;
 
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.impl.Parser;
 
 public class ObjectiveCAstScanner {
@@ -46,6 +54,7 @@ public class ObjectiveCAstScanner {
 
     /**
      * Helper method for testing checks without having to deploy them on a Sonar instance.
+     * Tools which scan many single files without checks should rather use an {@link ObjectiveCScannerPool}.
      */
     public static SourceFile scanSingleFile(File file, SquidAstVisitor<ObjectiveCGrammar>... visitors) {
         if (!file.isFile()) {
@@ -61,8 +70,25 @@ public class ObjectiveCAstScanner {
     }
 
     public static AstScanner<ObjectiveCGrammar> create(ObjectiveCConfiguration conf, SquidAstVisitor<ObjectiveCGrammar>... visitors) {
+        return create(conf, null, visitors);
+    }
+
+    /**
+     * Creates a scanner which notifies the listener of every file once all the visitors have left it.
+     * Files which go over a limit of the watchdog of the configuration while being lexed are dropped, and the
+     * listener is not notified of them.
+     */
+    public static AstScanner<ObjectiveCGrammar> create(ObjectiveCConfiguration conf, ObjectiveCScanListener listener, SquidAstVisitor<ObjectiveCGrammar>... visitors) {
+        return create(conf, ObjectiveCParser.create(conf), listener, visitors);
+    }
+
+    /**
+     * Same as {@link #create(ObjectiveCConfiguration, ObjectiveCScanListener, SquidAstVisitor...)} with an existing parser,
+     * which must not be used by another scanner at the same time.
+     */
+    static AstScanner<ObjectiveCGrammar> create(ObjectiveCConfiguration conf, Parser<ObjectiveCGrammar> parser, ObjectiveCScanListener listener,
+            SquidAstVisitor<ObjectiveCGrammar>... visitors) {
         final SquidAstVisitorContextImpl<ObjectiveCGrammar> context = new SquidAstVisitorContextImpl<ObjectiveCGrammar>(new SourceProject("Objective-C Project"));
-        final Parser<ObjectiveCGrammar> parser = ObjectiveCParser.create(conf);
 
         AstScanner.Builder<ObjectiveCGrammar> builder = AstScanner.<ObjectiveCGrammar> builder(context).setBaseParser(parser);
 
@@ -70,36 +96,141 @@ public class ObjectiveCAstScanner {
         builder.withMetrics(ObjectiveCMetric.values());
 
         /* Comments */
-        builder.setCommentAnalyser(
-                new CommentAnalyser() {
-                    @Override
-                    public boolean isBlank(String line) {
-                        for (int i = 0; i < line.length(); i++) {
-                            if (Character.isLetterOrDigit(line.charAt(i))) {
-                                return false;
-                            }
-                        }
-                        return true;
-                    }
-
-                    @Override
-                    public String getContents(String comment) {
-                        return comment.startsWith("//") ? comment.substring(2) : comment.substring(2, comment.length() - 2);
-                    }
-                });
+        builder.setCommentAnalyser(new ObjectiveCCommentAnalyser());
 
         /* Files */
       builder.setFilesMetric(ObjectiveCMetric.FILES);
 
+        /* Listener, registered first as files are left in the reverse order of registration */
+        if (listener != null) {
+            builder.withSquidAstVisitor(new ScanListenerVisitor(conf, listener));
+        }
+
+        /* Profiling, timing the parser and all the visitors but the listener */
+        ObjectiveCScanProfiler profiler = conf.getProfiler();
+        if (profiler != null) {
+            builder.withSquidAstVisitor(profiler.phaseVisitor());
+        }
+
         /* Metrics */
-      	builder.withSquidAstVisitor(new LinesVisitor<ObjectiveCGrammar>(ObjectiveCMetric.LINES));
-      	builder.withSquidAstVisitor(new LinesOfCodeVisitor<ObjectiveCGrammar>(ObjectiveCMetric.LINES_OF_CODE));
-      	builder.withSquidAstVisitor(CommentsVisitor.<ObjectiveCGrammar> builder().withCommentMetric(ObjectiveCMetric.COMMENT_LINES)
-      			.withNoSonar(true)
-      			.withIgnoreHeaderComment(conf.getIgnoreHeaderComments())
-      			.build());
+        builder.withSquidAstVisitor(timed(profiler, new ObjectiveCMetricsVisitor(conf.getIgnoreHeaderComments())));
+
+        /* External visitors (typically Check ones) */
+        for (SquidAstVisitor<ObjectiveCGrammar> visitor : visitors) {
+            builder.withSquidAstVisitor(timed(profiler, visitor));
+        }
 
         return builder.build();
     }
 
+    private static SquidAstVisitor<ObjectiveCGrammar> timed(ObjectiveCScanProfiler profiler, SquidAstVisitor<ObjectiveCGrammar> visitor) {
+        return profiler == null ? visitor : profiler.timed(visitor);
+    }
+
+    /**
+     * Computes FILES, LINES, LINES_OF_CODE, COMMENT_LINES, the NOSONAR lines, the functions and the imports of the files from
+     * their tokens, without parsing them. Gives the same results as a scanner built by {@link #create} without
+     * any visitor, so it is meant for analyses in which no check needs a syntax tree. The tokens are kept in the token
+     * cache of the configuration, if any, for the next tools reading them. Files which go over a limit of the watchdog of
+     * the configuration while being lexed are skipped.
+     */
+    public static List<SourceFile> scanMetrics(ObjectiveCConfiguration conf, Collection<File> files) {
+        final List<SourceFile> sourceFiles = Lists.newArrayListWithCapacity(files.size());
+        scanMetrics(conf, files, new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile file) {
+                sourceFiles.add(file);
+            }
+        });
+        return sourceFiles;
+    }
+
+    /**
+     * Same as {@link #scanMetrics(ObjectiveCConfiguration, Collection)}, handing each file to the listener
+     * instead of keeping them. The listener is not notified of skipped files.
+     */
+    public static void scanMetrics(ObjectiveCConfiguration conf, Collection<File> files, ObjectiveCScanListener listener) {
+        MappedSourceReader reader = new MappedSourceReader(conf.getCharset());
+        ObjectiveCLineMetrics metrics = new ObjectiveCLineMetrics(conf.getIgnoreHeaderComments());
+        ObjectiveCFunctionMetrics functions = new ObjectiveCFunctionMetrics();
+        ObjectiveCImports imports = new ObjectiveCImports();
+        ObjectiveCScanProfiler profiler = conf.getProfiler();
+        for (File file : files) {
+            long start = profiler == null ? 0 : System.nanoTime();
+            ObjectiveCTokenStream tokens;
+            try {
+                tokens = lex(conf, file, reader);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read file '" + file.getAbsolutePath() + "'", e);
+            }
+            long lexed = profiler == null ? 0 : System.nanoTime();
+            if (tokens.isTruncated()) {
+                if (profiler != null) {
+                    profiler.add(ObjectiveCScanProfiler.Phase.LEXER, lexed - start);
+                }
+                continue;
+            }
+            SourceFile sourceFile = scanTokens(file.getAbsolutePath(), file.getPath(), tokens, metrics, functions, imports);
+            if (profiler != null) {
+                long scanned = System.nanoTime();
+                profiler.add(ObjectiveCScanProfiler.Phase.LEXER, lexed - start);
+                profiler.add(ObjectiveCScanProfiler.Phase.VISITORS, scanned - lexed);
+                profiler.addVisitor(ObjectiveCMetricsVisitor.class.getSimpleName(), scanned - lexed);
+                profiler.addFile(file, scanned - start);
+            }
+            listener.fileScanned(sourceFile);
+        }
+    }
+
+    /**
+     * Lexes the file under the watchdog of the configuration, the stream being truncated if the file goes over a limit.
+     */
+    static ObjectiveCTokenStream lex(ObjectiveCConfiguration conf, File file, MappedSourceReader reader) throws IOException {
+        ObjectiveCScanWatchdog watchdog = conf.getWatchdog();
+        ObjectiveCScanWatchdog.Watch watch = watchdog.limitsLexing() ? watchdog.watch(file) : null;
+        ObjectiveCTokenCache tokenCache = conf.getTokenCache();
+        ObjectiveCTokenStream tokens = tokenCache == null ? ObjectiveCTokenStream.lex(file, reader, watch) : tokenCache.lex(file, reader, watch);
+        if (tokens.isTruncated()) {
+            // the stream itself tells that the file went over a limit
+            watchdog.takeStopped(file);
+        }
+        return tokens;
+    }
+
+    static SourceFile scanTokens(String key, String name, ObjectiveCTokenStream tokens, ObjectiveCLineMetrics metrics, ObjectiveCFunctionMetrics functions,
+            ObjectiveCImports imports) {
+        SourceFile sourceFile = new SourceFile(key, name);
+        sourceFile.setMeasure(ObjectiveCMetric.FILES, 1);
+        metrics.scan(tokens);
+        metrics.saveTo(sourceFile);
+        functions.scan(tokens);
+        functions.saveTo(sourceFile);
+        imports.scan(tokens);
+        imports.saveTo(sourceFile);
+        return sourceFile;
+    }
+
+    private static class ScanListenerVisitor extends SquidAstVisitor<ObjectiveCGrammar> {
+
+        private final ObjectiveCConfiguration conf;
+        private final ObjectiveCScanListener listener;
+
+        ScanListenerVisitor(ObjectiveCConfiguration conf, ObjectiveCScanListener listener) {
+            this.conf = conf;
+            this.listener = listener;
+        }
+
+        @Override
+        public void leaveFile(AstNode astNode) {
+            SourceFile sourceFile = (SourceFile) getContext().peekSourceCode();
+            File file = getContext().getFile();
+            if (conf.getWatchdog().takeStopped(file)) {
+                // the file has only been partially lexed
+                sourceFile.getParent().getChildren().remove(sourceFile);
+            } else {
+                listener.fileScanned(sourceFile);
+            }
+        }
+
+    }
+
 }
@@ -21,11 +21,15 @@ package org.sonar.objectivec;
 
 import java.nio.charset.Charset;
 
+import org.sonar.objectivec.lexer.ObjectiveCTokenCache;
 import org.sonar.squid.api.SquidConfiguration;
 
 public class ObjectiveCConfiguration extends SquidConfiguration {
 
     private boolean ignoreHeaderComments;
+    private ObjectiveCScanWatchdog watchdog = ObjectiveCScanWatchdog.unlimited();
+    private ObjectiveCScanProfiler profiler;
+    private ObjectiveCTokenCache tokenCache;
 
     public ObjectiveCConfiguration() {
     }
@@ -42,4 +46,34 @@ public class ObjectiveCConfiguration extends SquidConfiguration {
         return ignoreHeaderComments;
     }
 
+    public void setWatchdog(ObjectiveCScanWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    public ObjectiveCScanWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public void setProfiler(ObjectiveCScanProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return the profiler timing the scans, or <code>null</code> if they are not profiled
+     */
+    public ObjectiveCScanProfiler getProfiler() {
+        return profiler;
+    }
+
+    public void setTokenCache(ObjectiveCTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * @return the cache of the tokens of the files lexed without parser, or <code>null</code> if they are not cached
+     */
+    public ObjectiveCTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
 }
@@ -0,0 +1,379 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContext;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.Token;
+
+/**
+ * Cumulative time spent in each phase of a scan and in each visitor, and the slowest files.
+ * Safe to share between the threads of a scan: each thread times the file it is scanning on its own.
+ *
+ * When the files are parsed, the lexer, parser and visitor times of a file are measured by the channel
+ * of the lexer and by the visitors returned by {@link #phaseVisitor()} and {@link #timed(SquidAstVisitor)}.
+ * When they are only lexed, they are measured by {@link ObjectiveCAstScanner#scanMetrics}.
+ */
+public class ObjectiveCScanProfiler {
+
+    public enum Phase {
+        LEXER, PARSER, VISITORS, SAVE
+    }
+
+    private final int slowestFileCount;
+    private final Map<Phase, Timer> phases = new ConcurrentHashMap<Phase, Timer>();
+    private final ConcurrentMap<String, Timer> visitors = new ConcurrentHashMap<String, Timer>();
+    private final PriorityQueue<FileTime> slowestFiles;
+    private final ThreadLocal<FileTiming> currentFiles = new ThreadLocal<FileTiming>() {
+        @Override
+        protected FileTiming initialValue() {
+            return new FileTiming();
+        }
+    };
+
+    public ObjectiveCScanProfiler(int slowestFileCount) {
+        this.slowestFileCount = slowestFileCount;
+        this.slowestFiles = new PriorityQueue<FileTime>(Math.max(1, slowestFileCount), FileTime.BY_TIME);
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Timer());
+        }
+    }
+
+    public void add(Phase phase, long nanos) {
+        phases.get(phase).add(nanos);
+    }
+
+    public void addVisitor(String name, long nanos) {
+        Timer timer = visitors.get(name);
+        if (timer == null) {
+            visitors.putIfAbsent(name, new Timer());
+            timer = visitors.get(name);
+        }
+        timer.add(nanos);
+    }
+
+    public void addFile(File file, long nanos) {
+        if (slowestFileCount <= 0) {
+            return;
+        }
+        synchronized (slowestFiles) {
+            if (slowestFiles.size() < slowestFileCount) {
+                slowestFiles.add(new FileTime(file.getPath(), nanos));
+            } else if (slowestFiles.peek().nanos < nanos) {
+                slowestFiles.poll();
+                slowestFiles.add(new FileTime(file.getPath(), nanos));
+            }
+        }
+    }
+
+    /**
+     * Called by the lexer channel when it starts lexing a file on the current thread.
+     */
+    public void lexingStarted() {
+        FileTiming timing = currentFiles.get();
+        timing.start = System.nanoTime();
+        timing.lexed = 0;
+    }
+
+    /**
+     * Called by the lexer channel when it has lexed the last character of a file on the current thread.
+     */
+    public void lexingEnded() {
+        FileTiming timing = currentFiles.get();
+        timing.lexed = System.nanoTime();
+        add(Phase.LEXER, timing.lexed - timing.start);
+    }
+
+    /**
+     * @return a visitor timing the parser, from the end of the lexing to the first visitor, and the visitors,
+     * to be registered before all the visitors to time
+     */
+    public SquidAstVisitor<ObjectiveCGrammar> phaseVisitor() {
+        return new PhaseVisitor();
+    }
+
+    /**
+     * @return a visitor forwarding all the calls of the scanner to the given one, timing them
+     */
+    public SquidAstVisitor<ObjectiveCGrammar> timed(SquidAstVisitor<ObjectiveCGrammar> visitor) {
+        return new TimedVisitor(visitor);
+    }
+
+    public long getNanos(Phase phase) {
+        return phases.get(phase).nanos.get();
+    }
+
+    public long getCount(Phase phase) {
+        return phases.get(phase).count.get();
+    }
+
+    /**
+     * @return the cumulative time and invocation count of each visitor, by name
+     */
+    public Map<String, long[]> getVisitors() {
+        Map<String, long[]> result = new TreeMap<String, long[]>();
+        for (Map.Entry<String, Timer> entry : visitors.entrySet()) {
+            result.put(entry.getKey(), new long[] {entry.getValue().nanos.get(), entry.getValue().count.get()});
+        }
+        return result;
+    }
+
+    /**
+     * @return the paths of the slowest files, the slowest first
+     */
+    public List<String> getSlowestFiles() {
+        List<String> paths = Lists.newArrayList();
+        for (FileTime file : sortedSlowestFiles()) {
+            paths.add(file.path);
+        }
+        return paths;
+    }
+
+    private List<FileTime> sortedSlowestFiles() {
+        List<FileTime> files;
+        synchronized (slowestFiles) {
+            files = Lists.newArrayList(slowestFiles);
+        }
+        Collections.sort(files, Collections.reverseOrder(FileTime.BY_TIME));
+        return files;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeJson(File file) throws IOException {
+        JSONObject json = new JSONObject();
+        JSONObject phasesJson = new JSONObject();
+        for (Phase phase : Phase.values()) {
+            phasesJson.put(phase.name().toLowerCase(Locale.ENGLISH), timerJson(getNanos(phase), getCount(phase)));
+        }
+        json.put("phases", phasesJson);
+        JSONObject visitorsJson = new JSONObject();
+        for (Map.Entry<String, long[]> entry : getVisitors().entrySet()) {
+            visitorsJson.put(entry.getKey(), timerJson(entry.getValue()[0], entry.getValue()[1]));
+        }
+        json.put("visitors", visitorsJson);
+        JSONArray filesJson = new JSONArray();
+        for (FileTime slowFile : sortedSlowestFiles()) {
+            JSONObject fileJson = new JSONObject();
+            fileJson.put("path", slowFile.path);
+            fileJson.put("millis", millis(slowFile.nanos));
+            filesJson.add(fileJson);
+        }
+        json.put("slowestFiles", filesJson);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            json.writeJSONString(writer);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject timerJson(long nanos, long count) {
+        JSONObject json = new JSONObject();
+        json.put("millis", millis(nanos));
+        json.put("count", count);
+        return json;
+    }
+
+    /**
+     * Logs the phases, the visitors and the slowest files as a table.
+     */
+    public void log(Logger logger) {
+        logger.info(String.format("%-40s %12s %12s", "Objective-C scan profile", "time (ms)", "count"));
+        for (Phase phase : Phase.values()) {
+            logger.info(String.format("%-40s %12d %12d", phase.name().toLowerCase(Locale.ENGLISH), millis(getNanos(phase)), getCount(phase)));
+        }
+        for (Map.Entry<String, long[]> entry : getVisitors().entrySet()) {
+            logger.info(String.format("  %-38s %12d %12d", entry.getKey(), millis(entry.getValue()[0]), entry.getValue()[1]));
+        }
+        for (FileTime file : sortedSlowestFiles()) {
+            logger.info(String.format("%-40s %12d", file.path, millis(file.nanos)));
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class Timer {
+
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong count = new AtomicLong();
+
+        void add(long time) {
+            nanos.addAndGet(time);
+            count.incrementAndGet();
+        }
+
+    }
+
+    private static final class FileTime {
+
+        static final Comparator<FileTime> BY_TIME = new Comparator<FileTime>() {
+            public int compare(FileTime left, FileTime right) {
+                return left.nanos < right.nanos ? -1 : left.nanos > right.nanos ? 1 : 0;
+            }
+        };
+
+        private final String path;
+        private final long nanos;
+
+        FileTime(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+
+    }
+
+    /**
+     * Timestamps of the file being scanned by a thread.
+     */
+    private static final class FileTiming {
+
+        private long start;
+        private long lexed;
+        private long visited;
+
+    }
+
+    private class PhaseVisitor extends SquidAstVisitor<ObjectiveCGrammar> {
+
+        @Override
+        public void visitFile(AstNode astNode) {
+            FileTiming timing = currentFiles.get();
+            timing.visited = System.nanoTime();
+            if (timing.lexed == 0) {
+                // the lexer channel is not called for empty files
+                timing.start = timing.visited;
+                timing.lexed = timing.visited;
+            }
+            add(Phase.PARSER, timing.visited - timing.lexed);
+        }
+
+        @Override
+        public void leaveFile(AstNode astNode) {
+            FileTiming timing = currentFiles.get();
+            long now = System.nanoTime();
+            add(Phase.VISITORS, now - timing.visited);
+            addFile(getContext().getFile(), now - timing.start);
+            timing.lexed = 0;
+        }
+
+    }
+
+    private class TimedVisitor extends SquidAstVisitor<ObjectiveCGrammar> implements AstAndTokenVisitor {
+
+        private final SquidAstVisitor<ObjectiveCGrammar> visitor;
+        private final String name;
+
+        TimedVisitor(SquidAstVisitor<ObjectiveCGrammar> visitor) {
+            this.visitor = visitor;
+            this.name = visitor.getClass().getSimpleName();
+        }
+
+        @Override
+        public void setContext(SquidAstVisitorContext<ObjectiveCGrammar> context) {
+            super.setContext(context);
+            visitor.setContext(context);
+        }
+
+        @Override
+        public List<AstNodeType> getAstNodeTypesToVisit() {
+            return visitor.getAstNodeTypesToVisit();
+        }
+
+        @Override
+        public void init() {
+            visitor.init();
+        }
+
+        @Override
+        public void destroy() {
+            visitor.destroy();
+        }
+
+        @Override
+        public void visitFile(AstNode astNode) {
+            long start = System.nanoTime();
+            visitor.visitFile(astNode);
+            addVisitor(name, System.nanoTime() - start);
+        }
+
+        @Override
+        public void leaveFile(AstNode astNode) {
+            long start = System.nanoTime();
+            visitor.leaveFile(astNode);
+            addVisitor(name, System.nanoTime() - start);
+        }
+
+        @Override
+        public void visitNode(AstNode astNode) {
+            long start = System.nanoTime();
+            visitor.visitNode(astNode);
+            addVisitor(name, System.nanoTime() - start);
+        }
+
+        @Override
+        public void leaveNode(AstNode astNode) {
+            long start = System.nanoTime();
+            visitor.leaveNode(astNode);
+            addVisitor(name, System.nanoTime() - start);
+        }
+
+        public void visitToken(Token token) {
+            if (visitor instanceof AstAndTokenVisitor) {
+                long start = System.nanoTime();
+                ((AstAndTokenVisitor) visitor).visitToken(token);
+                addVisitor(name, System.nanoTime() - start);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per file limits of a scan. A file larger than the size limit is skipped before being read. A file which
+ * has more tokens than the token limit, or whose lexing takes longer than the time limit, is not lexed any
+ * further and is skipped as well, whether it is parsed or only measured from its tokens.
+ *
+ * Every file which went over a limit is recorded as a {@link Trip}. Instances are shared by the scanners
+ * of all the threads, and a limit of 0 means no limit.
+ */
+public class ObjectiveCScanWatchdog {
+
+    /**
+     * Number of tokens between two readings of the clock.
+     */
+    private static final int CLOCK_INTERVAL = 256;
+
+    public enum Limit {
+        FILE_SIZE("bytes"),
+        TOKENS("tokens"),
+        TIME("ms");
+
+        private final String unit;
+
+        private Limit(String unit) {
+            this.unit = unit;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    private final long maxFileSize;
+    private final int maxTokens;
+    private final long maxTimeMillis;
+
+    private final List<Trip> trips = Collections.synchronizedList(new ArrayList<Trip>());
+    private final Set<File> stopped = Collections.synchronizedSet(new HashSet<File>());
+
+    public ObjectiveCScanWatchdog(long maxFileSize, int maxTokens, long maxTimeMillis) {
+        this.maxFileSize = maxFileSize;
+        this.maxTokens = maxTokens;
+        this.maxTimeMillis = maxTimeMillis;
+    }
+
+    public static ObjectiveCScanWatchdog unlimited() {
+        return new ObjectiveCScanWatchdog(0, 0, 0);
+    }
+
+    public boolean limitsLexing() {
+        return maxTokens > 0 || maxTimeMillis > 0;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public long getMaxTimeMillis() {
+        return maxTimeMillis;
+    }
+
+    /**
+     * @return the files which are not larger than the size limit, the other ones being recorded as skipped
+     */
+    public List<File> filterBySize(Collection<File> files) {
+        List<File> accepted = new ArrayList<File>(files.size());
+        for (File file : files) {
+            long size = file.length();
+            if (maxFileSize > 0 && size > maxFileSize) {
+                trips.add(new Trip(file, Limit.FILE_SIZE, size, maxFileSize));
+            } else {
+                accepted.add(file);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Starts watching the lexing of a file.
+     */
+    public Watch watch(File file) {
+        return new Watch(file);
+    }
+
+    /**
+     * @return true once if the file went over a limit while being lexed, in which case it is forgotten
+     */
+    public boolean takeStopped(File file) {
+        return stopped.remove(file.getAbsoluteFile());
+    }
+
+    /**
+     * @return the files which went over a limit, in the order in which it happened
+     */
+    public List<Trip> getTrips() {
+        synchronized (trips) {
+            return new ArrayList<Trip>(trips);
+        }
+    }
+
+    private void stop(File file, Limit limit, long value, long max) {
+        trips.add(new Trip(file, limit, value, max));
+        stopped.add(file.getAbsoluteFile());
+    }
+
+    /**
+     * Counts the tokens of a file and the time spent on them. Not thread-safe.
+     */
+    public final class Watch {
+
+        private final File file;
+        private final long start = System.nanoTime();
+        private int tokens;
+
+        private Watch(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Counts a token of the file.
+         *
+         * @return false if the file went over a limit, which has been recorded, and must not be lexed any further
+         */
+        public boolean tokenLexed() {
+            tokens++;
+            if (maxTokens > 0 && tokens > maxTokens) {
+                stop(file, Limit.TOKENS, tokens, maxTokens);
+                return false;
+            }
+            if (maxTimeMillis > 0 && tokens % CLOCK_INTERVAL == 0) {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (elapsed > maxTimeMillis) {
+                    stop(file, Limit.TIME, elapsed, maxTimeMillis);
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A file which went over a limit, and was skipped.
+     */
+    public static final class Trip {
+
+        private final File file;
+        private final Limit limit;
+        private final long value;
+        private final long max;
+
+        Trip(File file, Limit limit, long value, long max) {
+            this.file = file;
+            this.limit = limit;
+            this.value = value;
+            this.max = max;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Limit getLimit() {
+            return limit;
+        }
+
+        @Override
+        public String toString() {
+            String excess = limit == Limit.TOKENS ? "more than " + max : value + " " + limit.getUnit() + ", limit is " + max;
+            return file.getPath() + ": " + excess + " " + limit.getUnit() + ", skipped";
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.objectivec.lexer.MappedSourceReader;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.objectivec.metrics.ObjectiveCFunctionMetrics;
+import org.sonar.objectivec.metrics.ObjectiveCImports;
+import org.sonar.objectivec.metrics.ObjectiveCLineMetrics;
+import org.sonar.objectivec.parser.ObjectiveCParser;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceFile;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.impl.Parser;
+
+/**
+ * Scans single files or in-memory sources over and over again without building the reader, metrics and parser
+ * each time, for tools which analyse one file per call. Safe to share between threads: every thread gets
+ * a scanner of its own the first time it uses the pool, and keeps it for the next calls.
+ *
+ * Files are either measured from their tokens, or parsed and visited by checks and other visitors with the parser of
+ * the thread, the visitors being given by the caller for each file.
+ */
+public class ObjectiveCScannerPool {
+
+    private final ObjectiveCConfiguration conf;
+
+    private final ThreadLocal<PooledScanner> scanners = new ThreadLocal<PooledScanner>() {
+        @Override
+        protected PooledScanner initialValue() {
+            return new PooledScanner(conf);
+        }
+    };
+
+    public ObjectiveCScannerPool(ObjectiveCConfiguration conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * Lexes a file, or gets its tokens from the token cache of the configuration. Unless it comes from the cache,
+     * the stream shares the buffer of the reader of the current thread, so it must not be used any more once
+     * the same thread has lexed or scanned another file through the pool. The stream is truncated if the file goes
+     * over a limit of the watchdog of the configuration.
+     */
+    public ObjectiveCTokenStream lex(File file) throws IOException {
+        return ObjectiveCAstScanner.lex(conf, file, scanners.get().reader);
+    }
+
+    /**
+     * Computes the same measures as {@link ObjectiveCAstScanner#scanMetrics(ObjectiveCConfiguration, java.util.Collection)}
+     * for a single file.
+     *
+     * @return the measures of the file, or <code>null</code> if it went over a limit of the watchdog of the configuration
+     */
+    public SourceFile scanFile(File file) throws IOException {
+        PooledScanner scanner = scanners.get();
+        ObjectiveCTokenStream tokens = lex(file);
+        return tokens.isTruncated() ? null : scanner.scan(file.getAbsolutePath(), file.getPath(), tokens);
+    }
+
+    /**
+     * Same as {@link #scanFile(File)} for a source which is not read from the disk, such as the content of an editor.
+     *
+     * @param key the key, and name, of the returned file
+     */
+    public SourceFile scanSource(String key, String source) {
+        return scanners.get().scan(key, key, ObjectiveCTokenStream.lex(source));
+    }
+
+    /**
+     * Same as {@link ObjectiveCAstScanner#scanSingleFile(File, SquidAstVisitor...)} with the parser of the current thread:
+     * the file is parsed, and its syntax tree visited by the visitors, typically checks. The visitors are initialised
+     * and destroyed by the scan, so they must not be used by another thread at the same time.
+     *
+     * @return the file with its measures and the messages of the checks, or <code>null</code> if it went over a limit
+     * of the watchdog of the configuration
+     */
+    public SourceFile scanSingleFile(File file, SquidAstVisitor<ObjectiveCGrammar>... visitors) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("File '" + file + "' not found.");
+        }
+        final SourceFile[] scanned = new SourceFile[1];
+        AstScanner<ObjectiveCGrammar> scanner = ObjectiveCAstScanner.create(conf, scanners.get().getParser(), new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile sourceFile) {
+                scanned[0] = sourceFile;
+            }
+        }, visitors);
+        scanner.scanFile(file);
+        return scanned[0];
+    }
+
+    public AstNode parse(File file) {
+        return scanners.get().getParser().parse(file);
+    }
+
+    public AstNode parse(String source) {
+        return scanners.get().getParser().parse(source);
+    }
+
+    private static class PooledScanner {
+
+        private final ObjectiveCConfiguration conf;
+        private final MappedSourceReader reader;
+        private final ObjectiveCLineMetrics metrics;
+        private final ObjectiveCFunctionMetrics functions = new ObjectiveCFunctionMetrics();
+        private final ObjectiveCImports imports = new ObjectiveCImports();
+        private Parser<ObjectiveCGrammar> parser;
+
+        PooledScanner(ObjectiveCConfiguration conf) {
+            this.conf = conf;
+            this.reader = new MappedSourceReader(conf.getCharset());
+            this.metrics = new ObjectiveCLineMetrics(conf.getIgnoreHeaderComments());
+        }
+
+        SourceFile scan(String key, String name, ObjectiveCTokenStream tokens) {
+            return ObjectiveCAstScanner.scanTokens(key, name, tokens, metrics, functions, imports);
+        }
+
+        /**
+         * The parser is only built when first needed, as most callers only need the measures. It is shared by the
+         * parse methods and by the scanners of {@link ObjectiveCScannerPool#scanSingleFile(File, SquidAstVisitor...)}.
+         */
+        Parser<ObjectiveCGrammar> getParser() {
+            if (parser == null) {
+                parser = ObjectiveCParser.create(conf);
+            }
+            return parser;
+        }
+
+    }
+
+}
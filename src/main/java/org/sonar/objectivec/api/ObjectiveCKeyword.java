@@ -65,6 +65,7 @@ public enum ObjectiveCKeyword implements TokenType {
     AT_SELECTOR("@selector"), // returns SEL type of a method
     AT_ENCODE("@encode"), // return char encoding of a type
     AT_COMPATIBILITY_ALIAS("@compatibility_alias"),
+    AT_IMPORT("@import"), // module import
 
     // memory management
 
@@ -136,6 +137,7 @@ public enum ObjectiveCKeyword implements TokenType {
     // obj-c specific
 
     BOOL("BOOL"),
+    SELF("self"),
     SUPER("super"),
     ID("id"),
     CLASS("Class"),
@@ -86,6 +86,7 @@ public enum ObjectiveCPunctuator implements TokenType {
     COLON(":"),
     SEMICOLON(";"),
     COMMA(","),
+    DOT("."),
 
     MINUSLT("->"),
     MINUSLTSTAR("->*"),
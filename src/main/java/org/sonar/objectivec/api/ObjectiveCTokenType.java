@@ -24,7 +24,10 @@ import com.sonar.sslr.api.TokenType;
 
 public enum ObjectiveCTokenType implements TokenType {
 
-    NUMERIC_LITERAL;
+    NUMERIC_LITERAL,
+    STRING_LITERAL,
+    CHARACTER_LITERAL,
+    PREPROCESSOR;
 
     public String getName() {
         return name();
@@ -0,0 +1,70 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory mappings without waiting for the garbage collector. A mapped file cannot be deleted or replaced
+ * on some platforms, Windows among them, as long as it is mapped.
+ */
+public final class MappedBuffers {
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmaps a buffer returned by {@link java.nio.channels.FileChannel#map}, which must not be read any more.
+     * Relies on the cleaner of the buffer up to Java 8, and on <code>sun.misc.Unsafe.invokeCleaner</code> from Java 9.
+     *
+     * @return false if the buffer is not a direct one, or if the JVM does not allow it to be unmapped, in which case
+     * it is left to the garbage collector
+     */
+    public static boolean unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return false;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (Exception e) {
+            // before Java 9
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null) {
+                return false;
+            }
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads source files into a character buffer which is owned by the reader and reused from one file to the next,
+ * growing when needed. Large files are read through a read-only memory mapping, released as soon as they are
+ * decoded, and smaller ones through a plain read into a reused byte buffer, as mapping a file costs more than
+ * reading a few pages.
+ * ASCII, ISO-8859-1 and well-formed UTF-8 content is decoded by a hand-written loop; other charsets, and the rest
+ * of a file from its first malformed sequence, go through a reused {@link CharsetDecoder}, so that the result is
+ * the same as through an {@link java.io.InputStreamReader}.
+ *
+ * Files are decoded in full rather than on demand: the lexer reads every character once and the token stream
+ * keeps them all, so decoding lazily would only add a check to every character read.
+ *
+ * Not thread-safe: the buffer returned by {@link #getBuffer()} is only valid until the next call to {@link #read(File)}.
+ */
+public final class MappedSourceReader {
+
+    private static final int MIN_CAPACITY = 4096;
+
+    /**
+     * Size from which files are mapped instead of being read.
+     */
+    static final int MAPPING_THRESHOLD = 256 * 1024;
+
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean latin1;
+    private final boolean ascii;
+    private CharsetDecoder decoder;
+
+    private char[] buffer = new char[MIN_CAPACITY];
+    private int length;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(MIN_CAPACITY);
+
+    public MappedSourceReader(Charset charset) {
+        this.charset = charset;
+        String name = charset.name();
+        this.utf8 = "UTF-8".equals(name);
+        this.latin1 = "ISO-8859-1".equals(name);
+        this.ascii = "US-ASCII".equals(name);
+    }
+
+    /**
+     * Decodes the content of the file into the buffer of this reader.
+     *
+     * @return the number of characters read
+     */
+    public int read(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped: " + file);
+            }
+            length = 0;
+            if (size >= MAPPING_THRESHOLD) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    decode(mapped);
+                } finally {
+                    MappedBuffers.unmap(mapped);
+                }
+            } else if (size > 0) {
+                decode(readFully(channel, (int) size));
+            }
+            return length;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return the reused byte buffer holding the first <code>size</code> bytes of the channel, or less if the file
+     * has been shortened meanwhile
+     */
+    private ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        if (readBuffer.capacity() < size) {
+            readBuffer = ByteBuffer.allocate(Math.max(size, readBuffer.capacity() + (readBuffer.capacity() >> 1)));
+        }
+        readBuffer.clear();
+        readBuffer.limit(size);
+        while (readBuffer.hasRemaining() && channel.read(readBuffer) >= 0) {
+            // read until the end of the file
+        }
+        readBuffer.flip();
+        return readBuffer;
+    }
+
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of characters decoded by the last call to {@link #read(File)}
+     */
+    public int getLength() {
+        return length;
+    }
+
+    private void decode(ByteBuffer bytes) throws CharacterCodingException {
+        int size = bytes.limit();
+        int i = 0;
+        if (utf8 || latin1 || ascii) {
+            // the decoded content of these charsets is never longer than the encoded one
+            ensureCapacity(size);
+            i = decodeAscii(bytes, i, size);
+            if (latin1) {
+                i = decodeLatin1(bytes, i, size);
+            } else if (utf8) {
+                i = decodeUtf8(bytes, i, size);
+            }
+        }
+        if (i < size) {
+            decodeWithCharset(bytes, i);
+        }
+    }
+
+    /**
+     * @return the offset of the first non ASCII byte, or <code>size</code>
+     */
+    private int decodeAscii(ByteBuffer bytes, int offset, int size) {
+        char[] chars = buffer;
+        int i = offset;
+        while (i < size) {
+            byte b = bytes.get(i);
+            if (b < 0) {
+                break;
+            }
+            chars[length++] = (char) b;
+            i++;
+        }
+        return i;
+    }
+
+    private int decodeLatin1(ByteBuffer bytes, int offset, int size) {
+        char[] chars = buffer;
+        for (int i = offset; i < size; i++) {
+            chars[length++] = (char) (bytes.get(i) & 0xFF);
+        }
+        return size;
+    }
+
+    /**
+     * @return the offset of the first malformed sequence, or <code>size</code>
+     */
+    private int decodeUtf8(ByteBuffer bytes, int offset, int size) {
+        char[] chars = buffer;
+        int i = offset;
+        while (i < size) {
+            int b = bytes.get(i);
+            if (b >= 0) {
+                chars[length++] = (char) b;
+                i++;
+                continue;
+            }
+            int sequenceLength;
+            int codePoint;
+            int minCodePoint;
+            if ((b & 0xE0) == 0xC0) {
+                sequenceLength = 2;
+                codePoint = b & 0x1F;
+                minCodePoint = 0x80;
+            } else if ((b & 0xF0) == 0xE0) {
+                sequenceLength = 3;
+                codePoint = b & 0x0F;
+                minCodePoint = 0x800;
+            } else if ((b & 0xF8) == 0xF0) {
+                sequenceLength = 4;
+                codePoint = b & 0x07;
+                minCodePoint = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            } else {
+                return i;
+            }
+            if (i + sequenceLength > size) {
+                return i;
+            }
+            for (int j = 1; j < sequenceLength; j++) {
+                int next = bytes.get(i + j);
+                if ((next & 0xC0) != 0x80) {
+                    return i;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if (codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                return i;
+            }
+            if (sequenceLength == 4) {
+                length += Character.toChars(codePoint, chars, length);
+            } else {
+                chars[length++] = (char) codePoint;
+            }
+            i += sequenceLength;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the bytes from <code>offset</code> with the charset of this reader, which also takes care of
+     * the replacement of malformed input.
+     */
+    private void decodeWithCharset(ByteBuffer bytes, int offset) throws CharacterCodingException {
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        decoder.reset();
+        bytes.position(offset);
+        ensureCapacity(length + (int) (bytes.remaining() * (double) decoder.averageCharsPerByte()) + 16);
+        CharBuffer out = CharBuffer.wrap(buffer);
+        out.position(length);
+        CoderResult result = decoder.decode(bytes, out, true);
+        while (result.isOverflow()) {
+            out = grow(out);
+            result = decoder.decode(bytes, out, true);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (decoder.flush(out).isOverflow()) {
+            out = grow(out);
+        }
+        length = out.position();
+    }
+
+    private CharBuffer grow(CharBuffer out) {
+        length = out.position();
+        ensureCapacity(buffer.length * 2);
+        CharBuffer larger = CharBuffer.wrap(buffer);
+        larger.position(length);
+        return larger;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            char[] larger = new char[Math.max(capacity, buffer.length + (buffer.length >> 1))];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+
+}
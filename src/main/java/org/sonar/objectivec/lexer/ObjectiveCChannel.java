@@ -0,0 +1,128 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.io.File;
+import java.net.URI;
+
+import org.sonar.objectivec.ObjectiveCScanProfiler;
+import org.sonar.objectivec.ObjectiveCScanWatchdog;
+import org.sonar.sslr.channel.Channel;
+import org.sonar.sslr.channel.CodeReader;
+
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.Lexer;
+
+/**
+ * Single channel reading comments, typed tokens and whitespace in one forward pass,
+ * delegating recognition to {@link ObjectiveCLexerEngine}.
+ *
+ * When the watchdog limits the lexing of files, a file which goes over a limit is dropped: the rest of it
+ * is consumed without producing any token. When a profiler is given, the time spent lexing each file is added to it.
+ */
+public class ObjectiveCChannel extends Channel<Lexer> {
+
+    private final ObjectiveCLexerEngine engine = new ObjectiveCLexerEngine();
+    private final StringBuilder value = new StringBuilder();
+    private final Token.Builder tokenBuilder = Token.builder();
+    private final ObjectiveCScanWatchdog watchdog;
+    private final ObjectiveCScanProfiler profiler;
+    private ObjectiveCScanWatchdog.Watch watch;
+
+    public ObjectiveCChannel() {
+        this(ObjectiveCScanWatchdog.unlimited());
+    }
+
+    public ObjectiveCChannel(ObjectiveCScanWatchdog watchdog) {
+        this(watchdog, null);
+    }
+
+    public ObjectiveCChannel(ObjectiveCScanWatchdog watchdog, ObjectiveCScanProfiler profiler) {
+        this.watchdog = watchdog;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public boolean consume(CodeReader code, Lexer lexer) {
+        if (code.getLinePosition() == 1 && code.getColumnPosition() == 0) {
+            engine.reset();
+            watch = watchdog.limitsLexing() && isFile(lexer.getURI()) ? watchdog.watch(new File(lexer.getURI())) : null;
+            if (profiler != null) {
+                profiler.lexingStarted();
+            }
+        }
+
+        int kind = engine.scan(code, 0, code.length());
+        int length = engine.getEnd();
+
+        if (kind == ObjectiveCLexerEngine.WHITESPACE) {
+            for (int i = 0; i < length; i++) {
+                code.pop();
+            }
+            checkEndOfFile(code);
+            return true;
+        }
+
+        int line = code.getLinePosition();
+        int column = code.getColumnPosition();
+        value.setLength(0);
+        for (int i = 0; i < length; i++) {
+            value.append((char) code.pop());
+        }
+
+        Token token = tokenBuilder
+                .setType(ObjectiveCLexerEngine.tokenType(kind))
+                .setValueAndOriginalValue(value.toString())
+                .setURI(lexer.getURI())
+                .setLine(line)
+                .setColumn(column)
+                .build();
+
+        if (kind == ObjectiveCLexerEngine.COMMENT) {
+            lexer.addTrivia(Trivia.createComment(token));
+        } else {
+            lexer.addToken(token);
+            if (watch != null && !watch.tokenLexed()) {
+                watch = null;
+                skipToEnd(code);
+            }
+        }
+        checkEndOfFile(code);
+        return true;
+    }
+
+    private void checkEndOfFile(CodeReader code) {
+        if (profiler != null && code.peek() == -1) {
+            profiler.lexingEnded();
+        }
+    }
+
+    private static boolean isFile(URI uri) {
+        return uri != null && "file".equals(uri.getScheme());
+    }
+
+    private static void skipToEnd(CodeReader code) {
+        while (code.peek() != -1) {
+            code.pop();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+
+/**
+ * Perfect hash of {@link ObjectiveCKeyword#keywordValues()}, computed once with the "hash and displace" scheme:
+ * a first hash selects a bucket, whose precomputed displacement seeds a second hash giving a collision-free slot.
+ * A lookup therefore hashes the candidate twice and compares it to a single keyword, without allocating.
+ */
+public final class ObjectiveCKeywordTable {
+
+    private static final int FIRST_LEVEL_SEED = 0;
+
+    private static final char[][] KEYWORDS;
+    private static final int[] ORDINALS;
+    private static final int[] DISPLACEMENTS;
+    private static final int SLOT_MASK;
+    private static final int BUCKET_MASK;
+    private static final int MIN_LENGTH;
+    private static final int MAX_LENGTH;
+
+    static {
+        String[] values = ObjectiveCKeyword.keywordValues();
+
+        int slots = Integer.highestOneBit(values.length * 2 - 1) << 1;
+        int buckets = Integer.highestOneBit(Math.max(1, values.length / 2 - 1)) << 1;
+        SLOT_MASK = slots - 1;
+        BUCKET_MASK = buckets - 1;
+        KEYWORDS = new char[slots][];
+        ORDINALS = new int[slots];
+        DISPLACEMENTS = new int[buckets];
+        Arrays.fill(ORDINALS, -1);
+
+        List<List<Integer>> keywordsByBucket = new ArrayList<List<Integer>>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            keywordsByBucket.add(new ArrayList<Integer>());
+        }
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (int ordinal = 0; ordinal < values.length; ordinal++) {
+            String value = values[ordinal];
+            keywordsByBucket.get(hash(FIRST_LEVEL_SEED, value, 0, value.length()) & BUCKET_MASK).add(ordinal);
+            minLength = Math.min(minLength, value.length());
+            maxLength = Math.max(maxLength, value.length());
+        }
+        MIN_LENGTH = minLength;
+        MAX_LENGTH = maxLength;
+
+        List<Integer> bucketOrder = new ArrayList<Integer>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            bucketOrder.add(i);
+        }
+        final List<List<Integer>> sizes = keywordsByBucket;
+        Collections.sort(bucketOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                return sizes.get(right).size() - sizes.get(left).size();
+            }
+        });
+
+        for (int bucket : bucketOrder) {
+            List<Integer> ordinals = keywordsByBucket.get(bucket);
+            if (!ordinals.isEmpty()) {
+                DISPLACEMENTS[bucket] = place(values, ordinals);
+            }
+        }
+    }
+
+    private ObjectiveCKeywordTable() {
+    }
+
+    private static int place(String[] values, List<Integer> ordinals) {
+        int[] candidateSlots = new int[ordinals.size()];
+        for (int displacement = 1; ; displacement++) {
+            boolean placed = true;
+            for (int i = 0; i < ordinals.size() && placed; i++) {
+                String value = values[ordinals.get(i)];
+                int slot = hash(displacement, value, 0, value.length()) & SLOT_MASK;
+                placed = KEYWORDS[slot] == null;
+                for (int j = 0; j < i && placed; j++) {
+                    placed = candidateSlots[j] != slot;
+                }
+                candidateSlots[i] = slot;
+            }
+            if (placed) {
+                for (int i = 0; i < ordinals.size(); i++) {
+                    KEYWORDS[candidateSlots[i]] = values[ordinals.get(i)].toCharArray();
+                    ORDINALS[candidateSlots[i]] = ordinals.get(i);
+                }
+                return displacement;
+            }
+        }
+    }
+
+    /**
+     * @return the ordinal in {@link ObjectiveCKeyword} of the keyword spelled by <code>input[start, end[</code>, or -1
+     */
+    public static int lookup(CharSequence input, int start, int end) {
+        return lookup((char) 0, input, start, end);
+    }
+
+    /**
+     * Same as {@link #lookup(CharSequence, int, int)} for a keyword starting with the given prefix character,
+     * '@' or '#', which is not part of the range.
+     */
+    public static int lookup(char prefix, CharSequence input, int start, int end) {
+        int length = end - start + (prefix == 0 ? 0 : 1);
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return -1;
+        }
+        int bucket = hash(FIRST_LEVEL_SEED, prefix, input, start, end) & BUCKET_MASK;
+        int slot = hash(DISPLACEMENTS[bucket], prefix, input, start, end) & SLOT_MASK;
+        char[] keyword = KEYWORDS[slot];
+        if (keyword == null || keyword.length != length) {
+            return -1;
+        }
+        int k = 0;
+        if (prefix != 0 && keyword[k++] != prefix) {
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            if (keyword[k++] != input.charAt(i)) {
+                return -1;
+            }
+        }
+        return ORDINALS[slot];
+    }
+
+    private static int hash(int seed, CharSequence input, int start, int end) {
+        return hash(seed, (char) 0, input, start, end);
+    }
+
+    private static int hash(int seed, char prefix, CharSequence input, int start, int end) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        if (prefix != 0) {
+            h = (h ^ prefix) * 0x01000193;
+        }
+        for (int i = start; i < end; i++) {
+            h = (h ^ input.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+}
@@ -19,14 +19,9 @@
  */
 package org.sonar.objectivec.lexer;
 
-import static com.sonar.sslr.api.GenericTokenType.LITERAL;
-import static com.sonar.sslr.impl.channel.RegexpChannelBuilder.commentRegexp;
-import static com.sonar.sslr.impl.channel.RegexpChannelBuilder.regexp;
-
 import org.sonar.objectivec.ObjectiveCConfiguration;
 
 import com.sonar.sslr.impl.Lexer;
-import com.sonar.sslr.impl.channel.BlackHoleChannel;
 
 public class ObjectiveCLexer {
 
@@ -43,14 +38,8 @@ public class ObjectiveCLexer {
 
                 .withFailIfNoChannelToConsumeOneCharacter(false)
 
-                // Comments
-                .withChannel(commentRegexp("//[^\\n\\r]*+"))
-                .withChannel(commentRegexp("/\\*[\\s\\S]*?\\*/"))
-
-                // All other tokens
-                .withChannel(regexp(LITERAL, "[^\r\n\\s/]+"))
-
-                .withChannel(new BlackHoleChannel("[\\s]"))
+                // Comments, literals and whitespace
+                .withChannel(new ObjectiveCChannel(conf.getWatchdog(), conf.getProfiler()))
 
                 .build();
     }
@@ -0,0 +1,460 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.api.ObjectiveCPunctuator;
+import org.sonar.objectivec.api.ObjectiveCTokenType;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.TokenType;
+
+/**
+ * Character dispatch scanner recognising one lexeme at a time, without any regular expression.
+ * Offsets are given against the {@link CharSequence} handed to {@link #scan(CharSequence, int, int)},
+ * so the same engine can read an SSLR code reader or a plain character buffer.
+ *
+ * Lexemes are identified by an int code: one of the constants below, or a keyword or punctuator code
+ * which can be resolved with {@link #keyword(int)} and {@link #punctuator(int)}.
+ *
+ * Instances keep track of the position in the current line, in order to recognise preprocessor directives,
+ * and are not thread-safe. {@link #reset()} must be called before reading a new file.
+ */
+public final class ObjectiveCLexerEngine {
+
+    public static final int WHITESPACE = 0;
+    public static final int COMMENT = 1;
+    public static final int IDENTIFIER = 2;
+    public static final int NUMBER = 3;
+    public static final int STRING = 4;
+    public static final int CHARACTER = 5;
+    public static final int PREPROCESSOR = 6;
+    public static final int UNKNOWN = 7;
+
+    private static final int KEYWORD_BASE = 8;
+    private static final ObjectiveCKeyword[] KEYWORDS = ObjectiveCKeyword.values();
+    private static final int PUNCTUATOR_BASE = KEYWORD_BASE + KEYWORDS.length;
+    private static final ObjectiveCPunctuator[] PUNCTUATORS = ObjectiveCPunctuator.values();
+
+    private static final TokenType[] TOKEN_TYPES = new TokenType[PUNCTUATOR_BASE + PUNCTUATORS.length];
+
+    /**
+     * Punctuators indexed by their first ASCII character, longest first.
+     */
+    private static final ObjectiveCPunctuator[][] PUNCTUATORS_BY_FIRST_CHAR = new ObjectiveCPunctuator[128][];
+
+    static {
+        TOKEN_TYPES[COMMENT] = GenericTokenType.COMMENT;
+        TOKEN_TYPES[IDENTIFIER] = GenericTokenType.IDENTIFIER;
+        TOKEN_TYPES[NUMBER] = ObjectiveCTokenType.NUMERIC_LITERAL;
+        TOKEN_TYPES[STRING] = ObjectiveCTokenType.STRING_LITERAL;
+        TOKEN_TYPES[CHARACTER] = ObjectiveCTokenType.CHARACTER_LITERAL;
+        TOKEN_TYPES[PREPROCESSOR] = ObjectiveCTokenType.PREPROCESSOR;
+        TOKEN_TYPES[UNKNOWN] = GenericTokenType.UNKNOWN_CHAR;
+        System.arraycopy(KEYWORDS, 0, TOKEN_TYPES, KEYWORD_BASE, KEYWORDS.length);
+        System.arraycopy(PUNCTUATORS, 0, TOKEN_TYPES, PUNCTUATOR_BASE, PUNCTUATORS.length);
+
+        for (char c = 0; c < PUNCTUATORS_BY_FIRST_CHAR.length; c++) {
+            List<ObjectiveCPunctuator> candidates = new ArrayList<ObjectiveCPunctuator>();
+            for (ObjectiveCPunctuator punctuator : PUNCTUATORS) {
+                if (punctuator.getValue().charAt(0) == c) {
+                    candidates.add(punctuator);
+                }
+            }
+            Collections.sort(candidates, new Comparator<ObjectiveCPunctuator>() {
+                @Override
+                public int compare(ObjectiveCPunctuator left, ObjectiveCPunctuator right) {
+                    return right.getValue().length() - left.getValue().length();
+                }
+            });
+            PUNCTUATORS_BY_FIRST_CHAR[c] = candidates.toArray(new ObjectiveCPunctuator[candidates.size()]);
+        }
+    }
+
+    private int end;
+    private boolean atLineStart = true;
+    private boolean expectHeaderName;
+    private boolean continuedLine;
+
+    /**
+     * Forgets the state of the previous file.
+     */
+    public void reset() {
+        atLineStart = true;
+        expectHeaderName = false;
+        continuedLine = false;
+    }
+
+    /**
+     * Recognises the lexeme starting at <code>offset</code>, which must be lower than <code>limit</code>.
+     *
+     * @return the code of the lexeme, its end offset being available through {@link #getEnd()}
+     */
+    public int scan(CharSequence input, int offset, int limit) {
+        char c = input.charAt(offset);
+
+        int whitespaceEnd = whitespaceEnd(input, offset, limit);
+        if (whitespaceEnd > offset) {
+            end = whitespaceEnd;
+            return WHITESPACE;
+        }
+
+        if (c == '/' && offset + 1 < limit) {
+            char next = input.charAt(offset + 1);
+            if (next == '/') {
+                end = lineEnd(input, offset + 2, limit);
+                return COMMENT;
+            }
+            if (next == '*') {
+                end = blockCommentEnd(input, offset + 2, limit);
+                return COMMENT;
+            }
+        }
+
+        boolean lineStart = atLineStart;
+        boolean headerName = expectHeaderName;
+        atLineStart = false;
+        expectHeaderName = false;
+
+        if (c == '\\' && offset + 1 < limit && isNewLine(input.charAt(offset + 1))) {
+            return lineSplice(offset, headerName);
+        }
+        if (isIdentifierStart(c)) {
+            return identifierOrKeyword(input, offset, limit);
+        }
+        if (isDigit(c) || (c == '.' && offset + 1 < limit && isDigit(input.charAt(offset + 1)))) {
+            end = numberEnd(input, offset + 1, limit);
+            return NUMBER;
+        }
+        if (c == '"') {
+            end = quotedEnd(input, offset + 1, limit, '"');
+            return STRING;
+        }
+        if (c == '\'') {
+            end = quotedEnd(input, offset + 1, limit, '\'');
+            return CHARACTER;
+        }
+        if (c == '@') {
+            return atSign(input, offset, limit);
+        }
+        if (c == '#' && lineStart) {
+            return directive(input, offset, limit);
+        }
+        if (c == '<' && headerName) {
+            int headerEnd = headerNameEnd(input, offset + 1, limit);
+            if (headerEnd != -1) {
+                end = headerEnd;
+                return STRING;
+            }
+        }
+        return punctuatorOrUnknown(input, offset, limit, c);
+    }
+
+    /**
+     * @return the end offset (exclusive) of the lexeme recognised by the last call to {@link #scan(CharSequence, int, int)}
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public static boolean isKeyword(int code) {
+        return code >= KEYWORD_BASE && code < PUNCTUATOR_BASE;
+    }
+
+    public static boolean isPunctuator(int code) {
+        return code >= PUNCTUATOR_BASE;
+    }
+
+    public static ObjectiveCKeyword keyword(int code) {
+        return KEYWORDS[code - KEYWORD_BASE];
+    }
+
+    public static ObjectiveCPunctuator punctuator(int code) {
+        return PUNCTUATORS[code - PUNCTUATOR_BASE];
+    }
+
+    public static int code(ObjectiveCKeyword keyword) {
+        return KEYWORD_BASE + keyword.ordinal();
+    }
+
+    public static int code(ObjectiveCPunctuator punctuator) {
+        return PUNCTUATOR_BASE + punctuator.ordinal();
+    }
+
+    /**
+     * @return the SSLR token type of a lexeme code, other than {@link #WHITESPACE}
+     */
+    public static TokenType tokenType(int code) {
+        return TOKEN_TYPES[code];
+    }
+
+    /**
+     * Same character class as <code>\s</code> in {@link java.util.regex.Pattern}.
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\u000B';
+    }
+
+    private static boolean isNewLine(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$'
+            || (c > 127 && Character.isJavaIdentifierStart(c));
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c) || (c > 127 && Character.isJavaIdentifierPart(c));
+    }
+
+    /**
+     * Whitespace run. The new line of a line splice does not start a new line.
+     */
+    private int whitespaceEnd(CharSequence input, int offset, int limit) {
+        int i = offset;
+        while (i < limit && isWhitespace(input.charAt(i))) {
+            char c = input.charAt(i);
+            if (isNewLine(c) && continuedLine) {
+                continuedLine = false;
+                if (c == '\r' && i + 1 < limit && input.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else if (isNewLine(c)) {
+                atLineStart = true;
+                expectHeaderName = false;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Backslash followed by a new line, kept as an unknown character like any other backslash, so that every line
+     * of a continued directive is a line of code and the splice can be seen in the tokens. The next line continues the
+     * current one: a <code>#</code> at its start is not a directive.
+     */
+    private int lineSplice(int offset, boolean headerName) {
+        end = offset + 1;
+        continuedLine = true;
+        expectHeaderName = headerName;
+        return UNKNOWN;
+    }
+
+    private static int lineEnd(CharSequence input, int offset, int limit) {
+        int i = offset;
+        while (i < limit && !isNewLine(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads every character of the comment once, so that the cost stays linear whatever its size.
+     * A comment which is not terminated ends with the input, rather than being read again as code.
+     *
+     * @return the offset following the closing <code>*&#47;</code>, or <code>limit</code>
+     */
+    private static int blockCommentEnd(CharSequence input, int offset, int limit) {
+        for (int i = offset + 1; i < limit; i++) {
+            if (input.charAt(i) == '/' && input.charAt(i - 1) == '*') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static int identifierEnd(CharSequence input, int offset, int limit) {
+        int i = offset;
+        while (i < limit && isIdentifierPart(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int identifierOrKeyword(CharSequence input, int offset, int limit) {
+        int identifierEnd = identifierEnd(input, offset + 1, limit);
+        if (identifierEnd < limit && isEncodingPrefix(input, offset, identifierEnd)) {
+            char quote = input.charAt(identifierEnd);
+            if (quote == '"' || quote == '\'') {
+                end = quotedEnd(input, identifierEnd + 1, limit, quote);
+                return quote == '"' ? STRING : CHARACTER;
+            }
+        }
+        end = identifierEnd;
+        int keyword = ObjectiveCKeywordTable.lookup(input, offset, identifierEnd);
+        return keyword == -1 ? IDENTIFIER : KEYWORD_BASE + keyword;
+    }
+
+    /**
+     * <code>L</code>, <code>u</code>, <code>U</code> and <code>u8</code> string and character literal prefixes.
+     */
+    private static boolean isEncodingPrefix(CharSequence input, int offset, int identifierEnd) {
+        char c = input.charAt(offset);
+        switch (identifierEnd - offset) {
+            case 1:
+                return c == 'L' || c == 'u' || c == 'U';
+            case 2:
+                return c == 'u' && input.charAt(offset + 1) == '8';
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Preprocessing number, which also covers suffixes, hexadecimal and floating point literals.
+     */
+    private static int numberEnd(CharSequence input, int offset, int limit) {
+        int i = offset;
+        while (i < limit) {
+            char c = input.charAt(i);
+            if ((c == '+' || c == '-') && isExponent(input.charAt(i - 1))) {
+                i++;
+            } else if (c == '.' || isIdentifierPart(c)) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isExponent(char c) {
+        return c == 'e' || c == 'E' || c == 'p' || c == 'P';
+    }
+
+    /**
+     * String or character literal, from the character following the opening quote. A literal which is not
+     * terminated on its line ends with the line, unless the new line is escaped.
+     */
+    private static int quotedEnd(CharSequence input, int offset, int limit, char quote) {
+        int i = offset;
+        while (i < limit) {
+            char c = input.charAt(i);
+            if (c == quote) {
+                return i + 1;
+            } else if (c == '\\') {
+                i += i + 2 < limit && input.charAt(i + 1) == '\r' && input.charAt(i + 2) == '\n' ? 3 : 2;
+            } else if (isNewLine(c)) {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * <code>&lt;header.h&gt;</code> following an import or include directive.
+     */
+    private static int headerNameEnd(CharSequence input, int offset, int limit) {
+        for (int i = offset; i < limit; i++) {
+            char c = input.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            } else if (isNewLine(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <code>@"..."</code> strings and <code>@</code> keywords.
+     */
+    private int atSign(CharSequence input, int offset, int limit) {
+        if (offset + 1 < limit) {
+            char next = input.charAt(offset + 1);
+            if (next == '"') {
+                end = quotedEnd(input, offset + 2, limit, '"');
+                return STRING;
+            }
+            if (isIdentifierStart(next)) {
+                int identifierEnd = identifierEnd(input, offset + 2, limit);
+                int keyword = ObjectiveCKeywordTable.lookup('@', input, offset + 1, identifierEnd);
+                if (keyword != -1) {
+                    end = identifierEnd;
+                    return KEYWORD_BASE + keyword;
+                }
+            }
+        }
+        end = offset + 1;
+        return UNKNOWN;
+    }
+
+    /**
+     * Directive name, <code>#</code> being the first character of the line: a <code>#</code> keyword when known,
+     * {@link #PREPROCESSOR} otherwise. The rest of the line is made of regular tokens.
+     */
+    private int directive(CharSequence input, int offset, int limit) {
+        int nameStart = offset + 1;
+        while (nameStart < limit && (input.charAt(nameStart) == ' ' || input.charAt(nameStart) == '\t')) {
+            nameStart++;
+        }
+        if (nameStart == limit || !isIdentifierStart(input.charAt(nameStart))) {
+            end = offset + 1;
+            return PREPROCESSOR;
+        }
+        end = identifierEnd(input, nameStart + 1, limit);
+        int keyword = ObjectiveCKeywordTable.lookup('#', input, nameStart, end);
+        if (keyword == -1) {
+            return PREPROCESSOR;
+        }
+        ObjectiveCKeyword directive = KEYWORDS[keyword];
+        expectHeaderName = directive == ObjectiveCKeyword.HASH_IMPORT || directive == ObjectiveCKeyword.HASH_INCLUDE;
+        return KEYWORD_BASE + keyword;
+    }
+
+    private int punctuatorOrUnknown(CharSequence input, int offset, int limit, char c) {
+        if (c < PUNCTUATORS_BY_FIRST_CHAR.length) {
+            for (ObjectiveCPunctuator punctuator : PUNCTUATORS_BY_FIRST_CHAR[c]) {
+                String value = punctuator.getValue();
+                if (matches(input, offset, limit, value)) {
+                    end = offset + value.length();
+                    return PUNCTUATOR_BASE + punctuator.ordinal();
+                }
+            }
+        }
+        end = offset + 1;
+        return UNKNOWN;
+    }
+
+    private static boolean matches(CharSequence input, int offset, int limit, String value) {
+        if (offset + value.length() > limit) {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            if (input.charAt(offset + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.sonar.objectivec.ObjectiveCScanWatchdog;
+
+/**
+ * Token streams of the files lexed during an analysis, so that each file is lexed once whatever the number of
+ * tools reading its tokens. Entries are keyed by the absolute path of their file, and dropped as soon as its
+ * modification time or size changed.
+ *
+ * The heap used by the cached streams is bounded: the least recently used streams are evicted to make room for
+ * a new one. Streams which have not been read yet since they were cached are not evicted, the new stream is
+ * not cached instead, so that reading many files twice in the same order still hits the cache for some files.
+ * When the number of tools reading each file is known, a stream is dropped as soon as the last of them has read it,
+ * so that the cache is empty once they are all done.
+ *
+ * Safe to share between threads, cached streams being never modified.
+ */
+public class ObjectiveCTokenCache {
+
+    private final long maxMemorySize;
+    private final int maxReads;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long memorySize;
+    /**
+     * Heap used by the streams which have been read since they were cached, and can be evicted.
+     */
+    private long readMemorySize;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param maxMemorySize the maximum heap used by the cached streams, in bytes. 0 disables the cache.
+     */
+    public ObjectiveCTokenCache(long maxMemorySize) {
+        this(maxMemorySize, 0);
+    }
+
+    /**
+     * @param maxMemorySize the maximum heap used by the cached streams, in bytes. 0 disables the cache.
+     * @param maxReads the number of times a cached stream is read before it is dropped, 0 to keep it until it is evicted
+     */
+    public ObjectiveCTokenCache(long maxMemorySize, int maxReads) {
+        this.maxMemorySize = maxMemorySize;
+        this.maxReads = maxReads;
+    }
+
+    /**
+     * Returns the cached tokens of the file, or lexes it through the given reader and caches its tokens.
+     * The returned stream shares the buffer of the reader when the tokens could not be cached,
+     * like {@link ObjectiveCTokenStream#lex(File, MappedSourceReader)}.
+     */
+    public ObjectiveCTokenStream lex(File file, MappedSourceReader reader) throws IOException {
+        return lex(file, reader, null);
+    }
+
+    /**
+     * Same as {@link #lex(File, MappedSourceReader)}, the file being lexed under the watch, if any, when it is not
+     * cached. Truncated streams are not cached.
+     */
+    public ObjectiveCTokenStream lex(File file, MappedSourceReader reader, ObjectiveCScanWatchdog.Watch watch) throws IOException {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        ObjectiveCTokenStream cached = get(key, lastModified, length);
+        if (cached != null) {
+            return cached;
+        }
+        ObjectiveCTokenStream tokens = ObjectiveCTokenStream.lex(file, reader, watch);
+        if (tokens.isTruncated() || !canCache(tokens.getMemorySize())) {
+            return tokens;
+        }
+        ObjectiveCTokenStream detached = tokens.detach();
+        return put(key, new Entry(lastModified, length, detached)) ? detached : tokens;
+    }
+
+    private synchronized ObjectiveCTokenStream get(String key, long lastModified, long length) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            hits++;
+            if (entry.reads++ == 0) {
+                readMemorySize += entry.memorySize;
+            }
+            if (maxReads > 0 && entry.reads >= maxReads) {
+                // read by its last reader
+                remove(key);
+            }
+            return entry.tokens;
+        }
+        misses++;
+        if (entry != null) {
+            remove(key);
+        }
+        return null;
+    }
+
+    private boolean canCache(long size) {
+        return size <= maxMemorySize;
+    }
+
+    private synchronized boolean put(String key, Entry entry) {
+        remove(key);
+        if (memorySize - readMemorySize + entry.memorySize > maxMemorySize) {
+            return false;
+        }
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (memorySize + entry.memorySize > maxMemorySize && leastRecentlyUsed.hasNext()) {
+            Entry evicted = leastRecentlyUsed.next();
+            if (evicted.reads > 0) {
+                leastRecentlyUsed.remove();
+                memorySize -= evicted.memorySize;
+                readMemorySize -= evicted.memorySize;
+            }
+        }
+        entries.put(key, entry);
+        memorySize += entry.memorySize;
+        return true;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            memorySize -= removed.memorySize;
+            if (removed.reads > 0) {
+                readMemorySize -= removed.memorySize;
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached streams, typically once the last tool reading them is done.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        memorySize = 0;
+        readMemorySize = 0;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the estimated heap used by the cached streams, in bytes
+     */
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    private static final class Entry {
+
+        private final long lastModified;
+        private final long length;
+        private final ObjectiveCTokenStream tokens;
+        private final long memorySize;
+        private int reads;
+
+        Entry(long lastModified, long length, ObjectiveCTokenStream tokens) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.tokens = tokens;
+            this.memorySize = tokens.getMemorySize();
+        }
+    }
+
+}
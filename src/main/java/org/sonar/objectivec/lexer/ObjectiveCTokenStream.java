@@ -0,0 +1,287 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonar.objectivec.ObjectiveCScanWatchdog;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.api.Trivia;
+
+/**
+ * Compact representation of a lexed file: the characters of the file in a single buffer,
+ * and the type, start offset, length and line of every token and comment in parallel int arrays.
+ * Types are the lexeme codes of {@link ObjectiveCLexerEngine}; whitespace is not recorded.
+ */
+public final class ObjectiveCTokenStream {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final char[] buffer;
+    private final int length;
+
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int size;
+
+    private int[] lineStarts;
+    private int lineCount;
+
+    private boolean truncated;
+
+    private ObjectiveCTokenStream(char[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+        int capacity = Math.max(MIN_CAPACITY, length / 8);
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        lineStarts = new int[Math.max(MIN_CAPACITY, length / 32)];
+    }
+
+    private ObjectiveCTokenStream(ObjectiveCTokenStream stream) {
+        this.buffer = Arrays.copyOf(stream.buffer, stream.length);
+        this.length = stream.length;
+        this.size = stream.size;
+        this.types = Arrays.copyOf(stream.types, size);
+        this.starts = Arrays.copyOf(stream.starts, size);
+        this.lengths = Arrays.copyOf(stream.lengths, size);
+        this.lines = Arrays.copyOf(stream.lines, size);
+        this.lineCount = stream.lineCount;
+        this.lineStarts = Arrays.copyOf(stream.lineStarts, lineCount);
+        this.truncated = stream.truncated;
+    }
+
+    public static ObjectiveCTokenStream lex(File file, Charset charset) throws IOException {
+        return lex(file, new MappedSourceReader(charset));
+    }
+
+    /**
+     * Lexes a file read through the given reader. The stream shares the buffer of the reader,
+     * so it must not be used any more once the reader has read another file.
+     */
+    public static ObjectiveCTokenStream lex(File file, MappedSourceReader reader) throws IOException {
+        return lex(file, reader, null);
+    }
+
+    /**
+     * Same as {@link #lex(File, MappedSourceReader)}, the lexing being stopped as soon as the file goes over a limit
+     * of the watch, if any.
+     */
+    public static ObjectiveCTokenStream lex(File file, MappedSourceReader reader, ObjectiveCScanWatchdog.Watch watch) throws IOException {
+        int length = reader.read(file);
+        return lex(reader.getBuffer(), length, watch);
+    }
+
+    public static ObjectiveCTokenStream lex(String source) {
+        return lex(source.toCharArray(), source.length());
+    }
+
+    /**
+     * Lexes the first <code>length</code> characters of <code>buffer</code>, which is kept by the stream without copy.
+     */
+    public static ObjectiveCTokenStream lex(char[] buffer, int length) {
+        return lex(buffer, length, null);
+    }
+
+    /**
+     * Same as {@link #lex(char[], int)}, the lexing being stopped as soon as the buffer goes over a limit of the
+     * watch, if any, in which case the stream is {@link #isTruncated() truncated}.
+     */
+    public static ObjectiveCTokenStream lex(char[] buffer, int length, ObjectiveCScanWatchdog.Watch watch) {
+        ObjectiveCTokenStream stream = new ObjectiveCTokenStream(buffer, length);
+        stream.indexLines();
+        stream.lexTokens(new ObjectiveCLexerEngine(), watch);
+        return stream;
+    }
+
+    private void indexLines() {
+        lineStarts[0] = 0;
+        lineCount = 1;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c == '\n' || (c == '\r' && (i + 1 == length || buffer[i + 1] != '\n'))) {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount + (lineCount >> 1));
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+    }
+
+    private void lexTokens(ObjectiveCLexerEngine engine, ObjectiveCScanWatchdog.Watch watch) {
+        CharSequence input = CharBuffer.wrap(buffer, 0, length);
+        int line = 1;
+        int offset = 0;
+        while (offset < length) {
+            int kind = engine.scan(input, offset, length);
+            int end = engine.getEnd();
+            if (kind != ObjectiveCLexerEngine.WHITESPACE) {
+                while (line < lineCount && lineStarts[line] <= offset) {
+                    line++;
+                }
+                add(kind, offset, end - offset, line);
+                if (watch != null && kind != ObjectiveCLexerEngine.COMMENT && !watch.tokenLexed()) {
+                    truncated = true;
+                    return;
+                }
+            }
+            offset = end;
+        }
+    }
+
+    private void add(int type, int start, int tokenLength, int line) {
+        if (size == types.length) {
+            int capacity = size + (size >> 1);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = type;
+        starts[size] = start;
+        lengths[size] = tokenLength;
+        lines[size] = line;
+        size++;
+    }
+
+    /**
+     * @return true if the lexing was stopped by a watchdog, the stream only holding the first tokens of the file
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of tokens and comments, end of file excluded
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getType(int index) {
+        return types[index];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    public int getColumn(int index) {
+        return starts[index] - lineStarts[lines[index] - 1];
+    }
+
+    public boolean isComment(int index) {
+        return types[index] == ObjectiveCLexerEngine.COMMENT;
+    }
+
+    public String getValue(int index) {
+        return new String(buffer, starts[index], lengths[index]);
+    }
+
+    public TokenType getTokenType(int index) {
+        return ObjectiveCLexerEngine.tokenType(types[index]);
+    }
+
+    /**
+     * @return the number of lines of the file, which is also the line of the end of file token
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    public int getBufferLength() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the stream owning its buffer, its arrays trimmed to its size, which can be kept once the
+     * buffer it was lexed into is reused
+     */
+    public ObjectiveCTokenStream detach() {
+        return new ObjectiveCTokenStream(this);
+    }
+
+    /**
+     * @return an estimate of the heap used by the characters, tokens and lines of the stream, in bytes,
+     * which is the heap used by its {@link #detach() detached} copy
+     */
+    public long getMemorySize() {
+        return 2L * length + 16L * size + 4L * lineCount;
+    }
+
+    /**
+     * Materialises the stream as SSLR tokens, identical to those produced by {@link ObjectiveCLexer}.
+     */
+    public List<Token> toTokens(URI uri) {
+        List<Token> tokens = Lists.newArrayListWithCapacity(size + 1);
+        List<Trivia> trivia = new ArrayList<Trivia>();
+        Token.Builder builder = Token.builder();
+        for (int i = 0; i < size; i++) {
+            String value = getValue(i);
+            builder.setType(getTokenType(i))
+                    .setValueAndOriginalValue(value)
+                    .setURI(uri)
+                    .setLine(lines[i])
+                    .setColumn(getColumn(i));
+            if (isComment(i)) {
+                trivia.add(Trivia.createComment(builder.setTrivia(new ArrayList<Trivia>()).build()));
+            } else {
+                tokens.add(builder.setTrivia(trivia).build());
+                trivia = new ArrayList<Trivia>();
+            }
+        }
+        tokens.add(builder.setType(GenericTokenType.EOF)
+                .setValueAndOriginalValue("EOF")
+                .setURI(uri)
+                .setLine(lineCount)
+                .setColumn(length - lineStarts[lineCount - 1])
+                .setTrivia(trivia)
+                .build());
+        return tokens;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import org.sonar.squidbridge.CommentAnalyser;
+
+public class ObjectiveCCommentAnalyser extends CommentAnalyser {
+
+    @Override
+    public boolean isBlank(String line) {
+        return isBlank(line, 0, line.length());
+    }
+
+    @Override
+    public String getContents(String comment) {
+        return comment.substring(contentsStart(comment, 0), contentsEnd(comment, 0, comment.length()));
+    }
+
+    static boolean isBlank(CharSequence line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.isLetterOrDigit(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int contentsStart(CharSequence comment, int start) {
+        return start + 2;
+    }
+
+    /**
+     * A block comment which is not terminated has no closing characters to remove.
+     */
+    static int contentsEnd(CharSequence comment, int start, int end) {
+        if (comment.charAt(start + 1) == '*' && end - start >= 4
+                && comment.charAt(end - 2) == '*' && comment.charAt(end - 1) == '/') {
+            return end - 2;
+        }
+        return end;
+    }
+
+}
@@ -0,0 +1,414 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.api.ObjectiveCPunctuator;
+import org.sonar.objectivec.api.ObjectiveCTokenType;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.TokenType;
+
+/**
+ * Finds the Objective-C methods, C functions and blocks of a file in a single pass over its tokens, and computes
+ * their statements and cyclomatic complexity. A block is a function of its own, nested in the enclosing one, whose
+ * complexity also includes the decision points of the block. The complexity of the file counts each function once, and
+ * each decision point once.
+ *
+ * Complexity is 1, plus 1 per <code>if</code>, <code>for</code>, <code>while</code>, <code>case</code>,
+ * <code>@catch</code>, <code>&amp;&amp;</code>, <code>||</code> and <code>?</code>. Statements are the simple
+ * statements ended by a semicolon, plus the compound ones (<code>if</code>, <code>for</code>, <code>while</code>,
+ * <code>do</code>, <code>switch</code>, <code>@try</code>, <code>@synchronized</code> and <code>@autoreleasepool</code>).
+ *
+ * Preprocessor lines are ignored, lines continued by a backslash included, and so are the <code>#else</code> and <code>#elif</code> branches of conditional
+ * directives, which would otherwise open the same function twice.
+ *
+ * Instances are not thread-safe, and can be reused from one file to the next after a call to {@link #reset()}.
+ */
+public final class ObjectiveCFunctionMetrics {
+
+    private final List<Function> functions = new ArrayList<Function>();
+    private final List<Function> openFunctions = new ArrayList<Function>();
+    private final List<Boolean> conditionals = new ArrayList<Boolean>();
+
+    private int braceDepth;
+    private int parenDepth;
+    private TokenType previousType;
+    private CharSequence previousSource;
+    private int previousStart;
+    private int previousEnd;
+    private int previousLine;
+    private boolean inTypedef;
+    private int blockCount;
+
+    private int directiveLine;
+    private boolean directiveContinued;
+    private int skippedBranches;
+
+    private boolean inContainer;
+    private int containerHeaderLine;
+
+    private StringBuilder selector;
+    private String selectorPart;
+    private int methodLine;
+
+    private String candidateName;
+    private int candidateLine;
+    private boolean candidateComplete;
+
+    private int blockParenDepth;
+    private int blockLine;
+
+    public ObjectiveCFunctionMetrics() {
+        reset();
+    }
+
+    public void reset() {
+        functions.clear();
+        openFunctions.clear();
+        conditionals.clear();
+        braceDepth = 0;
+        parenDepth = 0;
+        previousType = null;
+        previousSource = null;
+        previousLine = 0;
+        inTypedef = false;
+        blockCount = 0;
+        directiveLine = -1;
+        directiveContinued = false;
+        skippedBranches = 0;
+        inContainer = false;
+        containerHeaderLine = -1;
+        clearPending();
+    }
+
+    /**
+     * Resets the metrics and computes them for all the tokens of the stream.
+     */
+    public void scan(ObjectiveCTokenStream tokens) {
+        reset();
+        CharSequence source = CharBuffer.wrap(tokens.getBuffer(), 0, tokens.getBufferLength());
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.isComment(i)) {
+                int start = tokens.getStart(i);
+                addToken(tokens.getTokenType(i), source, start, start + tokens.getLength(i), tokens.getLine(i));
+            }
+        }
+        addEndOfFile();
+    }
+
+    /**
+     * Adds the token read between <code>start</code> and <code>end</code> in <code>source</code>, comments excluded.
+     */
+    public void addToken(TokenType type, CharSequence source, int start, int end, int line) {
+        if (isDirective(type)) {
+            directive(source, start, end);
+            directiveLine = line;
+            directiveContinued = false;
+            return;
+        }
+        if (line == directiveLine || (directiveContinued && line == directiveLine + 1)) {
+            // the backslash ending a line of a directive is the last token of the line
+            directiveLine = line;
+            directiveContinued = type == GenericTokenType.UNKNOWN_CHAR && end - start == 1 && source.charAt(start) == '\\';
+            return;
+        }
+        if (skippedBranches > 0) {
+            return;
+        }
+
+        if (!openFunctions.isEmpty()) {
+            count(openFunctions.get(openFunctions.size() - 1), type);
+        }
+
+        if (type == ObjectiveCPunctuator.LCURLYBRACE) {
+            openBrace();
+        } else if (type == ObjectiveCPunctuator.RCURLYBRACE) {
+            closeBrace();
+        } else if (type == ObjectiveCPunctuator.LPARENTHESIS) {
+            openParenthesis();
+        } else if (type == ObjectiveCPunctuator.RPARENTHESIS) {
+            closeParenthesis();
+        } else {
+            otherToken(type, source, start, end, line);
+        }
+
+        previousType = type;
+        previousSource = source;
+        previousStart = start;
+        previousEnd = end;
+        previousLine = line;
+    }
+
+    /**
+     * Closes the functions which are still open at the end of the file.
+     */
+    public void addEndOfFile() {
+        while (!openFunctions.isEmpty()) {
+            closeFunction();
+        }
+    }
+
+    /**
+     * Closes the innermost open function, whose decision points are added to the complexity of the enclosing one.
+     */
+    private void closeFunction() {
+        Function function = openFunctions.remove(openFunctions.size() - 1);
+        if (!openFunctions.isEmpty()) {
+            openFunctions.get(openFunctions.size() - 1).nestedComplexity += function.complexity - 1 + function.nestedComplexity;
+        }
+        functions.add(function);
+    }
+
+    private static boolean isDirective(TokenType type) {
+        return type == ObjectiveCTokenType.PREPROCESSOR
+            || (type instanceof ObjectiveCKeyword && ((ObjectiveCKeyword) type).getValue().charAt(0) == '#');
+    }
+
+    private void directive(CharSequence source, int start, int end) {
+        int nameStart = start + 1;
+        while (nameStart < end && Character.isWhitespace(source.charAt(nameStart))) {
+            nameStart++;
+        }
+        String name = source.subSequence(nameStart, end).toString();
+        int last = conditionals.size() - 1;
+        if (name.startsWith("if")) {
+            conditionals.add(Boolean.FALSE);
+        } else if (("else".equals(name) || "elif".equals(name)) && last >= 0 && !conditionals.get(last)) {
+            conditionals.set(last, Boolean.TRUE);
+            skippedBranches++;
+        } else if ("endif".equals(name) && last >= 0 && conditionals.remove(last)) {
+            skippedBranches--;
+        }
+    }
+
+    private void count(Function function, TokenType type) {
+        if (type == ObjectiveCKeyword.IF || type == ObjectiveCKeyword.FOR || type == ObjectiveCKeyword.CASE
+            || type == ObjectiveCKeyword.AT_CATCH || type == ObjectiveCPunctuator.AMPAMP
+            || type == ObjectiveCPunctuator.BARBAR || type == ObjectiveCPunctuator.QUESTION) {
+            function.complexity++;
+        }
+
+        if (type == ObjectiveCKeyword.WHILE) {
+            function.complexity++;
+            int last = function.doDepths.size() - 1;
+            if (last >= 0 && function.doDepths.get(last) == braceDepth) {
+                // end of a do-while statement, which has already been counted
+                function.doDepths.remove(last);
+                function.skipSemicolon = true;
+            } else {
+                function.statements++;
+            }
+        } else if (type == ObjectiveCKeyword.DO) {
+            function.doDepths.add(braceDepth);
+            function.statements++;
+        } else if (type == ObjectiveCKeyword.IF || type == ObjectiveCKeyword.FOR || type == ObjectiveCKeyword.SWITCH
+            || type == ObjectiveCKeyword.AT_TRY || type == ObjectiveCKeyword.AT_SYNCHRONIZED
+            || type == ObjectiveCKeyword.AT_AUTORELEASEPOOL) {
+            function.statements++;
+        } else if (type == ObjectiveCPunctuator.SEMICOLON && parenDepth == function.parenDepth) {
+            if (function.skipSemicolon) {
+                function.skipSemicolon = false;
+            } else {
+                function.statements++;
+            }
+        }
+    }
+
+    private void openBrace() {
+        Function function = null;
+        if (containerHeaderLine >= 0 && braceDepth == 0) {
+            // instance variables of a class
+            containerHeaderLine = -1;
+        } else if (selector != null && braceDepth == 0 && parenDepth == 0) {
+            function = new Function(selector.toString(), methodLine);
+        } else if (blockParenDepth == parenDepth) {
+            blockCount++;
+            function = new Function("^" + blockCount, blockLine);
+        } else if (candidateComplete && braceDepth == 0) {
+            function = new Function(candidateName, candidateLine);
+        }
+        clearPending();
+
+        braceDepth++;
+        if (function != null) {
+            function.bodyDepth = braceDepth;
+            function.parenDepth = parenDepth;
+            openFunctions.add(function);
+        }
+    }
+
+    private void closeBrace() {
+        clearPending();
+        if (braceDepth > 0) {
+            braceDepth--;
+        }
+        while (!openFunctions.isEmpty() && openFunctions.get(openFunctions.size() - 1).bodyDepth > braceDepth) {
+            closeFunction();
+        }
+    }
+
+    private void openParenthesis() {
+        candidateComplete = false;
+        if (braceDepth == 0 && parenDepth == 0) {
+            boolean candidate = previousType == GenericTokenType.IDENTIFIER && selector == null
+                && containerHeaderLine < 0 && !inTypedef;
+            candidateName = candidate ? previousSource.subSequence(previousStart, previousEnd).toString() : null;
+            candidateLine = previousLine;
+        }
+        parenDepth++;
+    }
+
+    private void closeParenthesis() {
+        if (parenDepth > 0) {
+            parenDepth--;
+        }
+        candidateComplete = candidateName != null && braceDepth == 0 && parenDepth == 0;
+        if (parenDepth < blockParenDepth) {
+            blockParenDepth = -1;
+        }
+    }
+
+    private void otherToken(TokenType type, CharSequence source, int start, int end, int line) {
+        candidateComplete = false;
+
+        if (type == ObjectiveCKeyword.AT_INTERFACE || type == ObjectiveCKeyword.AT_IMPLEMENTATION
+            || type == ObjectiveCKeyword.AT_PROTOCOL) {
+            clearPending();
+            inContainer = true;
+            containerHeaderLine = line;
+            return;
+        }
+        if (type == ObjectiveCKeyword.AT_END) {
+            clearPending();
+            inContainer = false;
+            containerHeaderLine = -1;
+            return;
+        }
+        if (line > containerHeaderLine) {
+            containerHeaderLine = -1;
+        }
+
+        if ((type == ObjectiveCPunctuator.MINUS || type == ObjectiveCPunctuator.PLUS) && inContainer
+            && braceDepth == 0 && parenDepth == 0 && line != previousLine) {
+            clearPending();
+            containerHeaderLine = -1;
+            selector = new StringBuilder(type == ObjectiveCPunctuator.MINUS ? "-" : "+");
+            methodLine = line;
+            return;
+        }
+        if (selector != null && parenDepth == 0) {
+            methodHeader(type, source, start, end);
+        }
+
+        if (type == ObjectiveCPunctuator.CARET) {
+            blockParenDepth = parenDepth;
+            blockLine = line;
+        } else if (parenDepth == blockParenDepth && !isBlockHeader(type)) {
+            blockParenDepth = -1;
+        }
+
+        if (braceDepth == 0 && type == ObjectiveCKeyword.TYPEDEF) {
+            // typedef NS_ENUM(NSInteger, Foo) { ... } is not a function
+            inTypedef = true;
+        } else if (type == ObjectiveCPunctuator.SEMICOLON && braceDepth == 0 && parenDepth == 0) {
+            clearPending();
+            inTypedef = false;
+        }
+    }
+
+    /**
+     * Builds the selector of a method from the names of its parts, the types of the parameters being skipped.
+     */
+    private void methodHeader(TokenType type, CharSequence source, int start, int end) {
+        if (type == ObjectiveCPunctuator.COLON) {
+            if (selectorPart != null) {
+                selector.append(selectorPart);
+                selectorPart = null;
+            }
+            selector.append(':');
+        } else if (type == GenericTokenType.IDENTIFIER || type instanceof ObjectiveCKeyword) {
+            if (selector.length() == 1) {
+                selector.append(source, start, end);
+            } else if (selector.charAt(selector.length() - 1) == ':' || selectorPart != null) {
+                selectorPart = source.subSequence(start, end).toString();
+            }
+        }
+    }
+
+    private static boolean isBlockHeader(TokenType type) {
+        return type == GenericTokenType.IDENTIFIER || type instanceof ObjectiveCKeyword
+            || type == ObjectiveCPunctuator.STAR;
+    }
+
+    private void clearPending() {
+        selector = null;
+        selectorPart = null;
+        candidateName = null;
+        candidateComplete = false;
+        blockParenDepth = -1;
+    }
+
+    /**
+     * Adds the functions found to the file, each one with its FUNCTIONS, COMPLEXITY and STATEMENTS measures, and
+     * sets the COMPLEXITY of the file, in which the decision points of nested functions are not counted twice.
+     * Their signatures end with their line, so that two functions with the same name, or two blocks, are kept apart.
+     */
+    public void saveTo(SourceFile sourceFile) {
+        int fileComplexity = 0;
+        for (Function function : functions) {
+            SourceFunction sourceFunction = new SourceFunction(sourceFile, function.name + ":" + function.line, function.line);
+            sourceFunction.setMeasure(ObjectiveCMetric.FUNCTIONS, 1);
+            sourceFunction.setMeasure(ObjectiveCMetric.COMPLEXITY, function.complexity + function.nestedComplexity);
+            sourceFunction.setMeasure(ObjectiveCMetric.STATEMENTS, function.statements);
+            sourceFile.addChild(sourceFunction);
+            fileComplexity += function.complexity;
+        }
+        sourceFile.setMeasure(ObjectiveCMetric.COMPLEXITY, fileComplexity);
+    }
+
+    private static final class Function {
+
+        private final String name;
+        private final int line;
+        private int bodyDepth;
+        private int parenDepth;
+        private int complexity = 1;
+        private int nestedComplexity;
+        private int statements;
+        private final List<Integer> doDepths = new ArrayList<Integer>();
+        private boolean skipSemicolon;
+
+        Function(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.api.ObjectiveCPunctuator;
+import org.sonar.objectivec.api.ObjectiveCTokenType;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.measures.CalculatedMetricFormula;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.TokenType;
+
+/**
+ * Finds the headers and modules imported by a file in a single pass over its tokens: <code>#import</code> and
+ * <code>#include</code> directives followed by a header name, and <code>@import</code> declarations.
+ * Imports are kept as written, delimiters included: <code>"Foo.h"</code>, <code>&lt;UIKit/UIKit.h&gt;</code>,
+ * and <code>@Foo.Bar</code> for modules. Directives of all the branches of conditional directives are kept.
+ *
+ * Instances are not thread-safe, and can be reused from one file to the next after a call to {@link #reset()}.
+ */
+public final class ObjectiveCImports {
+
+    /**
+     * Key of the imports of a file, saved as data of the file rather than as a measure.
+     */
+    public enum Data implements MetricDef {
+        IMPORTS;
+
+        public String getName() {
+            return name();
+        }
+
+        public boolean isCalculatedMetric() {
+            return false;
+        }
+
+        public boolean aggregateIfThereIsAlreadyAValue() {
+            return false;
+        }
+
+        public boolean isThereAggregationFormula() {
+            return false;
+        }
+
+        public CalculatedMetricFormula getCalculatedMetricFormula() {
+            return null;
+        }
+    }
+
+    private final List<String> imports = new ArrayList<String>();
+    private final StringBuilder module = new StringBuilder();
+
+    private int directiveLine = -1;
+    private boolean inModule;
+
+    public void reset() {
+        imports.clear();
+        module.setLength(0);
+        directiveLine = -1;
+        inModule = false;
+    }
+
+    public void scan(ObjectiveCTokenStream tokens) {
+        reset();
+        CharSequence source = CharBuffer.wrap(tokens.getBuffer(), 0, tokens.getBufferLength());
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.isComment(i)) {
+                int start = tokens.getStart(i);
+                addToken(tokens.getTokenType(i), source, start, start + tokens.getLength(i), tokens.getLine(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the token read between <code>start</code> and <code>end</code> in <code>source</code>, comments excluded.
+     */
+    public void addToken(TokenType type, CharSequence source, int start, int end, int line) {
+        if (type == ObjectiveCKeyword.HASH_IMPORT || type == ObjectiveCKeyword.HASH_INCLUDE) {
+            directiveLine = line;
+            return;
+        }
+        if (directiveLine != -1) {
+            if (line == directiveLine && type == ObjectiveCTokenType.STRING_LITERAL && end - start > 2
+                    && (source.charAt(start) == '"' || source.charAt(start) == '<')) {
+                imports.add(source.subSequence(start, end).toString());
+            }
+            directiveLine = -1;
+            return;
+        }
+
+        if (type == ObjectiveCKeyword.AT_IMPORT) {
+            inModule = true;
+            module.setLength(0);
+            module.append('@');
+        } else if (inModule) {
+            if (type == GenericTokenType.IDENTIFIER || type == ObjectiveCPunctuator.DOT) {
+                module.append(source, start, end);
+            } else {
+                if (type == ObjectiveCPunctuator.SEMICOLON && module.length() > 1) {
+                    imports.add(module.toString());
+                }
+                inModule = false;
+            }
+        }
+    }
+
+    /**
+     * @return the imports found since the last reset, in order
+     */
+    public List<String> getImports() {
+        return Collections.unmodifiableList(imports);
+    }
+
+    public void saveTo(SourceCode sourceFile) {
+        sourceFile.addData(Data.IMPORTS, new ArrayList<String>(imports));
+    }
+
+    /**
+     * @return the imports saved to the file, or an empty list
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> getImports(SourceCode sourceFile) {
+        List<String> saved = (List<String>) sourceFile.getData(Data.IMPORTS);
+        return saved == null ? Collections.<String>emptyList() : saved;
+    }
+
+}
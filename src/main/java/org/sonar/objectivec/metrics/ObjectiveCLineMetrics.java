@@ -0,0 +1,177 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import java.nio.CharBuffer;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.squidbridge.api.SourceFile;
+
+/**
+ * Lines, lines of code, comment lines and NOSONAR lines of a file, the line sets being kept in bitsets.
+ * Fed with the tokens and comments of a file in order, it gives the same results as the <code>LinesVisitor</code>,
+ * <code>LinesOfCodeVisitor</code> and <code>CommentsVisitor</code> of the SSLR squid bridge,
+ * comments being read as {@link ObjectiveCCommentAnalyser} does.
+ *
+ * Instances can be reused from one file to the next, after a call to {@link #reset()}.
+ */
+public final class ObjectiveCLineMetrics {
+
+    private static final String NOSONAR = "NOSONAR";
+
+    private final boolean ignoreHeaderComments;
+
+    private final BitSet linesOfCode = new BitSet();
+    private final BitSet commentLines = new BitSet();
+    private final BitSet noSonarLines = new BitSet();
+    private int lines;
+    private int lastTokenLine;
+    private boolean seenFirstToken;
+
+    public ObjectiveCLineMetrics(boolean ignoreHeaderComments) {
+        this.ignoreHeaderComments = ignoreHeaderComments;
+        reset();
+    }
+
+    public void reset() {
+        linesOfCode.clear();
+        commentLines.clear();
+        noSonarLines.clear();
+        lines = 0;
+        lastTokenLine = -1;
+        seenFirstToken = false;
+    }
+
+    /**
+     * Resets the metrics and computes them for all the tokens and comments of the stream.
+     */
+    public void scan(ObjectiveCTokenStream tokens) {
+        reset();
+        char[] buffer = tokens.getBuffer();
+        CharSequence source = CharBuffer.wrap(buffer, 0, tokens.getBufferLength());
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.isComment(i)) {
+                int start = tokens.getStart(i);
+                addComment(source, start, start + tokens.getLength(i), tokens.getLine(i));
+            } else {
+                addToken(tokens.getLine(i));
+            }
+        }
+        addEndOfFile(tokens.getLineCount());
+    }
+
+    /**
+     * Adds a token starting on the given line, all the comments preceding it having already been added. Only the line
+     * on which the token starts is a line of code, as for the <code>LinesOfCodeVisitor</code>, even when the token
+     * goes on over several lines.
+     */
+    public void addToken(int line) {
+        seenFirstToken = true;
+        if (line != lastTokenLine) {
+            linesOfCode.set(line);
+            lastTokenLine = line;
+        }
+    }
+
+    public void addComment(CharSequence source, int start, int end, int line) {
+        if (seenFirstToken || !ignoreHeaderComments) {
+            int contentsEnd = ObjectiveCCommentAnalyser.contentsEnd(source, start, end);
+            int lineStart = ObjectiveCCommentAnalyser.contentsStart(source, start);
+            int currentLine = line;
+            for (int i = lineStart; i < contentsEnd; i++) {
+                char c = source.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    addCommentLine(source, lineStart, i, currentLine);
+                    if (c == '\r' && i + 1 < contentsEnd && source.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    lineStart = i + 1;
+                    currentLine++;
+                }
+            }
+            addCommentLine(source, lineStart, contentsEnd, currentLine);
+        }
+    }
+
+    private void addCommentLine(CharSequence source, int start, int end, int line) {
+        if (contains(source, start, end, NOSONAR)) {
+            noSonarLines.set(line);
+        } else if (!ObjectiveCCommentAnalyser.isBlank(source, start, end)) {
+            commentLines.set(line);
+        }
+    }
+
+    private static boolean contains(CharSequence source, int start, int end, String value) {
+        int last = end - value.length();
+        for (int i = start; i <= last; i++) {
+            int j = 0;
+            while (j < value.length() && source.charAt(i + j) == value.charAt(j)) {
+                j++;
+            }
+            if (j == value.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the end of file, all the comments preceding it having already been added.
+     */
+    public void addEndOfFile(int line) {
+        lines = line;
+        seenFirstToken = true;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getLinesOfCode() {
+        return linesOfCode.cardinality();
+    }
+
+    public int getCommentLines() {
+        return commentLines.cardinality();
+    }
+
+    public Set<Integer> getNoSonarLines() {
+        Set<Integer> result = new HashSet<Integer>();
+        for (int line = noSonarLines.nextSetBit(0); line >= 0; line = noSonarLines.nextSetBit(line + 1)) {
+            result.add(line);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the LINES, LINES_OF_CODE and COMMENT_LINES measures and the NOSONAR lines of the file.
+     */
+    public void saveTo(SourceFile sourceFile) {
+        sourceFile.setMeasure(ObjectiveCMetric.LINES, lines);
+        sourceFile.setMeasure(ObjectiveCMetric.LINES_OF_CODE, getLinesOfCode());
+        sourceFile.setMeasure(ObjectiveCMetric.COMMENT_LINES, getCommentLines());
+        sourceFile.addNoSonarTagLines(getNoSonarLines());
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceFile;
+
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+
+/**
+ * Computes LINES, LINES_OF_CODE, COMMENT_LINES and the NOSONAR lines of a file in a single walk over its tokens,
+ * in place of the <code>LinesVisitor</code>, <code>LinesOfCodeVisitor</code> and <code>CommentsVisitor</code>
+ * of the SSLR squid bridge. The same walk finds the functions of the file, see {@link ObjectiveCFunctionMetrics},
+ * and its imports, see {@link ObjectiveCImports}.
+ */
+public class ObjectiveCMetricsVisitor extends SquidAstVisitor<ObjectiveCGrammar> implements AstAndTokenVisitor {
+
+    private final ObjectiveCLineMetrics metrics;
+    private final ObjectiveCFunctionMetrics functions = new ObjectiveCFunctionMetrics();
+    private final ObjectiveCImports imports = new ObjectiveCImports();
+
+    public ObjectiveCMetricsVisitor(boolean ignoreHeaderComments) {
+        this.metrics = new ObjectiveCLineMetrics(ignoreHeaderComments);
+    }
+
+    @Override
+    public void visitFile(AstNode astNode) {
+        metrics.reset();
+        functions.reset();
+        imports.reset();
+    }
+
+    public void visitToken(Token token) {
+        for (Trivia trivia : token.getTrivia()) {
+            if (trivia.isComment()) {
+                String comment = trivia.getToken().getOriginalValue();
+                metrics.addComment(comment, 0, comment.length(), trivia.getToken().getLine());
+            }
+        }
+        if (token.getType() == GenericTokenType.EOF) {
+            metrics.addEndOfFile(token.getLine());
+            functions.addEndOfFile();
+        } else {
+            String value = token.getValue();
+            metrics.addToken(token.getLine());
+            functions.addToken(token.getType(), value, 0, value.length(), token.getLine());
+            imports.addToken(token.getType(), value, 0, value.length(), token.getLine());
+        }
+    }
+
+    @Override
+    public void leaveFile(AstNode astNode) {
+        SourceFile sourceFile = (SourceFile) getContext().peekSourceCode();
+        metrics.saveTo(sourceFile);
+        functions.saveTo(sourceFile);
+        imports.saveTo(sourceFile);
+    }
+
+}
@@ -20,7 +20,7 @@
 package org.sonar.objectivec.parser;
 
 import static com.sonar.sslr.api.GenericTokenType.EOF;
-import static com.sonar.sslr.api.GenericTokenType.LITERAL;
+import static com.sonar.sslr.impl.matcher.GrammarFunctions.Advanced.anyTokenButNot;
 import static com.sonar.sslr.impl.matcher.GrammarFunctions.Standard.o2n;
 
 import org.sonar.objectivec.api.ObjectiveCGrammar;
@@ -29,7 +29,7 @@ public class ObjectiveCGrammarImpl extends ObjectiveCGrammar {
 
     public ObjectiveCGrammarImpl() {
 
-         program.is(o2n(LITERAL), EOF);
+         program.is(o2n(anyTokenButNot(EOF)), EOF);
 
     }
 
@@ -0,0 +1,60 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.File;
+import java.util.Map;
+
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Input files of the file system indexed by absolute and relative path, built once so that every lookup
+ * is a hash lookup rather than an evaluation of a path predicate over all the files.
+ */
+public class InputFileIndex {
+
+    private final Map<String, InputFile> byPath = Maps.newHashMap();
+
+    public InputFileIndex(FileSystem fileSystem) {
+        for (InputFile inputFile : fileSystem.inputFiles(fileSystem.predicates().all())) {
+            byPath.put(normalize(inputFile.absolutePath()), inputFile);
+            byPath.put(normalize(inputFile.relativePath()), inputFile);
+        }
+    }
+
+    /**
+     * @return the input file of the given absolute path, or path relative to the base directory, or <code>null</code>
+     */
+    public InputFile get(String path) {
+        return byPath.get(normalize(path));
+    }
+
+    public InputFile get(File file) {
+        return byPath.get(normalize(file.getAbsolutePath()));
+    }
+
+    private static String normalize(String path) {
+        return path.replace('\\', '/');
+    }
+
+}
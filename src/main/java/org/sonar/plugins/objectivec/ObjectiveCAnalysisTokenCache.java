@@ -0,0 +1,86 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.objectivec.checks.CheckList;
+import org.sonar.objectivec.lexer.ObjectiveCTokenCache;
+import org.sonar.plugins.objectivec.colorizer.ObjectiveCHighlightingSensor;
+import org.sonar.plugins.objectivec.cpd.ObjectiveCCpdSensor;
+
+/**
+ * Token cache shared by the squid sensor, which fills it when scanning files without parser, and by the highlighting
+ * and the detection of duplications. The tools lexing the files are known from the settings and the active checks,
+ * so that each stream is dropped once all of them have read it, and nothing is cached when a single tool lexes the files.
+ * The streams left, such as those of files skipped by a tool, are dropped once the last sensor reading the cache is done.
+ */
+public class ObjectiveCAnalysisTokenCache extends ObjectiveCTokenCache implements BatchExtension {
+
+    public static final String SIZE_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".tokenCache.size";
+    public static final String DEFAULT_SIZE = "64";
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private int pendingSensors;
+
+    public ObjectiveCAnalysisTokenCache(Settings settings, RulesProfile profile) {
+        super(readers(settings, profile) > 0 ? MEGABYTE * (settings.hasKey(SIZE_KEY) ? settings.getInt(SIZE_KEY) : Integer.parseInt(DEFAULT_SIZE)) : 0,
+            readers(settings, profile));
+        if (ObjectiveCHighlightingSensor.isEnabled(settings)) {
+            pendingSensors++;
+        }
+        if (ObjectiveCCpdSensor.isBuiltin(settings)) {
+            pendingSensors++;
+        }
+    }
+
+    /**
+     * Called by the highlighting and duplication sensors once they are done, the cache being cleared after the last one.
+     */
+    public synchronized void sensorDone() {
+        pendingSensors--;
+        if (pendingSensors <= 0) {
+            clear();
+        }
+    }
+
+    /**
+     * @return the number of tools reading the tokens of a file once the first one lexed it
+     */
+    static int readers(Settings settings, RulesProfile profile) {
+        int lexers = 0;
+        if (profile.getActiveRulesByRepository(CheckList.REPOSITORY_KEY).isEmpty()) {
+            // no check needs a syntax tree, the squid sensor scans the tokens
+            lexers++;
+        }
+        if (ObjectiveCHighlightingSensor.isEnabled(settings)) {
+            lexers++;
+        }
+        if (ObjectiveCCpdSensor.isBuiltin(settings) || !settings.getBoolean(CoreProperties.CPD_SKIP_PROPERTY)) {
+            // either the plugin or the CPD engine of the platform
+            lexers++;
+        }
+        return lexers - 1;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.config.Settings;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Files changed since a base revision, to which an analysis can be limited in order to check a pull request
+ * in a time depending on the size of its diff only. They are either:
+ * <ul>
+ * <li>listed in a file, one path per line, absolute or relative to the base directory;</li>
+ * <li>or computed with git from the working tree of the base directory: the files which differ from the common
+ * ancestor of the base revision and <code>HEAD</code>, and the files which are not tracked yet.</li>
+ * </ul>
+ */
+public class ObjectiveCChangedFiles {
+
+    public static final String LIST_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".changedFiles.list";
+    public static final String GIT_BASE_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".changedFiles.gitBase";
+
+    private final Set<String> paths = Sets.newHashSet();
+
+    ObjectiveCChangedFiles(File baseDir, Collection<String> paths) {
+        for (String path : paths) {
+            File file = new File(path);
+            this.paths.add(normalize(file.isAbsolute() ? file : new File(baseDir, path)));
+        }
+    }
+
+    /**
+     * @return the changed files given by the settings, or <code>null</code> if the analysis is not limited to changed files
+     */
+    public static ObjectiveCChangedFiles create(Settings settings, File baseDir) {
+        String list = settings.getString(LIST_KEY);
+        if (list != null && !list.trim().isEmpty()) {
+            return new ObjectiveCChangedFiles(baseDir, readList(absoluteFile(baseDir, list.trim())));
+        }
+        String gitBase = settings.getString(GIT_BASE_KEY);
+        if (gitBase != null && !gitBase.trim().isEmpty()) {
+            return new ObjectiveCChangedFiles(baseDir, gitChanges(baseDir, gitBase.trim()));
+        }
+        return null;
+    }
+
+    public boolean contains(File file) {
+        return paths.contains(normalize(file));
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    private static String normalize(File file) {
+        String path = FilenameUtils.normalize(file.getAbsolutePath(), true);
+        return path == null ? file.getAbsolutePath().replace('\\', '/') : path;
+    }
+
+    private static File absoluteFile(File baseDir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(baseDir, path);
+    }
+
+    private static List<String> readList(File list) {
+        List<String> paths = Lists.newArrayList();
+        try {
+            for (String line : FileUtils.readLines(list, Charsets.UTF_8.name())) {
+                if (!line.trim().isEmpty()) {
+                    paths.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the list of changed files '" + list.getAbsolutePath() + "'", e);
+        }
+        return paths;
+    }
+
+    private static List<String> gitChanges(File baseDir, String base) {
+        String mergeBase = new String(git(baseDir, "merge-base", base, "HEAD"), Charsets.UTF_8).trim();
+        List<String> paths = Lists.newArrayList();
+        paths.addAll(splitPaths(git(baseDir, "diff", "--name-only", "--relative", "-z", mergeBase)));
+        paths.addAll(splitPaths(git(baseDir, "ls-files", "--others", "--exclude-standard", "-z")));
+        return paths;
+    }
+
+    private static List<String> splitPaths(byte[] output) {
+        List<String> paths = Lists.newArrayList();
+        for (String path : new String(output, Charsets.UTF_8).split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Runs git in the base directory, its error output being read by another thread so that neither output can block it.
+     *
+     * @return the standard output of git
+     */
+    private static byte[] git(File baseDir, String... arguments) {
+        List<String> command = Lists.newArrayList("git");
+        command.addAll(Arrays.asList(arguments));
+        String commandLine = Joiner.on(' ').join(command);
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command).directory(baseDir).start();
+            final Process started = process;
+            final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            Thread errorReader = new Thread("git error output") {
+                @Override
+                public void run() {
+                    try {
+                        IOUtils.copy(started.getErrorStream(), errors);
+                    } catch (IOException e) {
+                        // only used to explain a failure
+                    }
+                }
+            };
+            errorReader.start();
+            byte[] output = IOUtils.toByteArray(process.getInputStream());
+            int exitValue = process.waitFor();
+            errorReader.join();
+            if (exitValue != 0) {
+                throw new IllegalStateException("Command '" + commandLine + "' failed with exit value " + exitValue + ": "
+                    + new String(errors.toByteArray(), Charsets.UTF_8).trim());
+            }
+            return output;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to run '" + commandLine + "' in " + baseDir.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running '" + commandLine + "'", e);
+        } finally {
+            if (process != null) {
+                IOUtils.closeQuietly(process.getInputStream());
+                IOUtils.closeQuietly(process.getErrorStream());
+                IOUtils.closeQuietly(process.getOutputStream());
+            }
+        }
+    }
+
+}
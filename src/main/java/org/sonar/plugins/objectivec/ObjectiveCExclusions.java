@@ -0,0 +1,370 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.Settings;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Generated and vendored files, which are left out by all the sensors of the plugin before being read or
+ * looked up. Nothing is excluded unless configured; a file is excluded when:
+ * <ul>
+ * <li>one of its parent directories, relative to the base directory, is one of the excluded directories.
+ * A directory starting with <code>**&#47;</code> is excluded at any depth;</li>
+ * <li>its name matches one of the file name patterns, in which <code>*</code> matches any characters;</li>
+ * <li>one of its first lines contains one of the markers of generated code, ignoring case. Only the first
+ * {@value #HEADER_SIZE} bytes of the file are read, once per analysis.</li>
+ * </ul>
+ * Directories are compiled into a trie of path segments, so that a lookup costs one hash lookup per segment
+ * whatever the number of directories.
+ * <p>
+ * When the analysis is limited to the {@link ObjectiveCChangedFiles changed files}, the files which did not change
+ * are excluded as well.
+ */
+public class ObjectiveCExclusions implements BatchExtension {
+
+    public static final String DIRECTORIES_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".exclusions.directories";
+    public static final String DEFAULT_DIRECTORIES = "";
+    public static final String FILE_NAMES_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".exclusions.fileNames";
+    public static final String DEFAULT_FILE_NAMES = "";
+    public static final String GENERATED_MARKERS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".exclusions.generatedMarkers";
+    public static final String DEFAULT_GENERATED_MARKERS = "";
+    public static final String HEADER_LINES_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".exclusions.headerLines";
+    public static final String DEFAULT_HEADER_LINES = "10";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCExclusions.class);
+
+    private static final String ANY_DEPTH = "**/";
+    private static final int HEADER_SIZE = 8192;
+
+    private final Settings settings;
+    private final FileSystem fileSystem;
+    private final Node rootDirectories = new Node();
+    private final Node anyDepthDirectories = new Node();
+    private final List<String[]> fileNamePatterns = Lists.newArrayList();
+    private final List<String> markers = Lists.newArrayList();
+    private final int headerLines;
+    private final ConcurrentMap<String, Boolean> generatedFiles = new ConcurrentHashMap<String, Boolean>();
+
+    private String baseDir;
+    private ObjectiveCChangedFiles changedFiles;
+    private boolean changedFilesLoaded;
+
+    public ObjectiveCExclusions(Settings settings, FileSystem fileSystem) {
+        this.settings = settings;
+        this.fileSystem = fileSystem;
+        for (String directory : values(settings, DIRECTORIES_KEY, DEFAULT_DIRECTORIES)) {
+            String path = directory.replace('\\', '/');
+            if (path.startsWith(ANY_DEPTH)) {
+                anyDepthDirectories.add(path.substring(ANY_DEPTH.length()));
+            } else {
+                rootDirectories.add(path);
+            }
+        }
+        for (String pattern : values(settings, FILE_NAMES_KEY, DEFAULT_FILE_NAMES)) {
+            fileNamePatterns.add(pattern.split("\\*", -1));
+        }
+        for (String marker : values(settings, GENERATED_MARKERS_KEY, DEFAULT_GENERATED_MARKERS)) {
+            markers.add(marker.toLowerCase(Locale.ENGLISH));
+        }
+        this.headerLines = settings.hasKey(HEADER_LINES_KEY) ? settings.getInt(HEADER_LINES_KEY) : Integer.parseInt(DEFAULT_HEADER_LINES);
+    }
+
+    private static String[] values(Settings settings, String key, String defaultValue) {
+        String[] values = settings.hasKey(key) ? settings.getStringArray(key) : defaultValue.split(",");
+        List<String> trimmed = Lists.newArrayList();
+        for (String value : values) {
+            if (!value.trim().isEmpty()) {
+                trimmed.add(value.trim());
+            }
+        }
+        return trimmed.toArray(new String[trimmed.size()]);
+    }
+
+    /**
+     * @return true if the file, given by its absolute path or its path relative to the base directory, is excluded
+     */
+    public boolean isExcluded(String path) {
+        return isExcluded(absoluteFile(path));
+    }
+
+    public boolean isExcluded(File file) {
+        if (isUnchanged(file)) {
+            return true;
+        }
+        String path = file.getAbsolutePath().replace('\\', '/');
+        String relativePath = relativize(path);
+        int nameStart = relativePath.lastIndexOf('/') + 1;
+
+        return inExcludedDirectory(relativePath, nameStart)
+            || matchesFileName(relativePath.substring(nameStart))
+            || isGenerated(file, path);
+    }
+
+    /**
+     * @return the files which are not excluded
+     */
+    public List<File> filter(Iterable<File> files) {
+        List<File> included = Lists.newArrayList();
+        int unchanged = 0;
+        int excluded = 0;
+        for (File file : files) {
+            if (isUnchanged(file)) {
+                unchanged++;
+            } else if (isExcluded(file)) {
+                excluded++;
+            } else {
+                included.add(file);
+            }
+        }
+        if (unchanged > 0) {
+            LOG.info("{} unchanged Objective-C files left out of the analysis", unchanged);
+        }
+        if (excluded > 0) {
+            LOG.info("{} Objective-C files excluded as generated or vendored code", excluded);
+        }
+        return included;
+    }
+
+    /**
+     * @return true if the analysis is limited to the files changed since a base revision
+     */
+    public boolean isLimitedToChangedFiles() {
+        return changedFiles() != null;
+    }
+
+    private boolean isUnchanged(File file) {
+        ObjectiveCChangedFiles changed = changedFiles();
+        return changed != null && !changed.contains(file);
+    }
+
+    private synchronized ObjectiveCChangedFiles changedFiles() {
+        if (!changedFilesLoaded) {
+            changedFiles = ObjectiveCChangedFiles.create(settings, fileSystem.baseDir());
+            changedFilesLoaded = true;
+            if (changedFiles != null) {
+                LOG.info("Objective-C analysis limited to {} changed files", changedFiles.size());
+            }
+        }
+        return changedFiles;
+    }
+
+    private File absoluteFile(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(fileSystem.baseDir(), path);
+    }
+
+    private String relativize(String path) {
+        if (baseDir == null) {
+            baseDir = fileSystem.baseDir().getAbsolutePath().replace('\\', '/') + '/';
+        }
+        return path.startsWith(baseDir) ? path.substring(baseDir.length()) : path;
+    }
+
+    private boolean inExcludedDirectory(String relativePath, int nameStart) {
+        if (rootDirectories.matches(relativePath, 0, nameStart)) {
+            return true;
+        }
+        if (anyDepthDirectories.children.isEmpty()) {
+            return false;
+        }
+        for (int start = 0; start < nameStart; start = relativePath.indexOf('/', start) + 1) {
+            if (anyDepthDirectories.matches(relativePath, start, nameStart)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesFileName(String name) {
+        for (String[] parts : fileNamePatterns) {
+            if (matches(name, parts)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param parts the literal parts of a pattern, which were separated by <code>*</code>
+     */
+    private static boolean matches(String name, String[] parts) {
+        if (parts.length == 1) {
+            return name.equals(parts[0]);
+        }
+        String last = parts[parts.length - 1];
+        if (!name.startsWith(parts[0]) || !name.endsWith(last) || name.length() < parts[0].length() + last.length()) {
+            return false;
+        }
+        int offset = parts[0].length();
+        int end = name.length() - last.length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            int found = name.indexOf(parts[i], offset);
+            if (found < 0 || found + parts[i].length() > end) {
+                return false;
+            }
+            offset = found + parts[i].length();
+        }
+        return true;
+    }
+
+    private boolean isGenerated(File file, String path) {
+        if (!sniffsHeaders()) {
+            return false;
+        }
+        Boolean generated = generatedFiles.get(path);
+        if (generated == null) {
+            generated = sniff(file);
+            generatedFiles.put(path, generated);
+        }
+        return generated;
+    }
+
+    private boolean sniffsHeaders() {
+        return headerLines > 0 && !markers.isEmpty();
+    }
+
+    /**
+     * @return true if one of the first lines of the file contains a marker, false if it cannot be read
+     */
+    private boolean sniff(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            length = IOUtils.read(input, header);
+        } catch (IOException e) {
+            LOG.warn("Unable to read " + file, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        CharsetDecoder decoder = encoding().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(length);
+        decoder.decode(ByteBuffer.wrap(header, 0, length), chars, true);
+        chars.flip();
+        StringBuilder line = new StringBuilder();
+        int lines = 0;
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c != '\n') {
+                line.append(c);
+            } else if (containsMarker(line)) {
+                return true;
+            } else if (++lines == headerLines) {
+                return false;
+            } else {
+                line.setLength(0);
+            }
+        }
+        return containsMarker(line);
+    }
+
+    private boolean containsMarker(CharSequence line) {
+        String lowerCase = line.toString().toLowerCase(Locale.ENGLISH);
+        for (String marker : markers) {
+            if (lowerCase.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Charset encoding() {
+        Charset encoding = fileSystem.encoding();
+        return encoding == null ? Charset.defaultCharset() : encoding;
+    }
+
+    /**
+     * Trie of directory paths, one node per path segment.
+     */
+    private static final class Node {
+
+        private final Map<String, Node> children = Maps.newHashMap();
+        private boolean terminal;
+
+        void add(String path) {
+            Node node = this;
+            for (String segment : path.split("/")) {
+                if (!segment.isEmpty()) {
+                    Node child = node.children.get(segment);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(segment, child);
+                    }
+                    node = child;
+                }
+            }
+            node.terminal = node != this;
+        }
+
+        /**
+         * @return true if a path made of the directories between <code>start</code> and <code>end</code> starts with one of the paths of the trie
+         */
+        boolean matches(String path, int start, int end) {
+            Node node = this;
+            int segmentStart = start;
+            while (segmentStart < end) {
+                int segmentEnd = path.indexOf('/', segmentStart);
+                if (segmentEnd < 0 || segmentEnd >= end) {
+                    return false;
+                }
+                node = node.children.get(path.substring(segmentStart, segmentEnd));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+                segmentStart = segmentEnd + 1;
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+
+/**
+ * Digests of the content of the files, computed once per analysis and shared by the sensors which cache their
+ * results by content.
+ */
+public class ObjectiveCFileDigests implements BatchExtension {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCFileDigests.class);
+
+    private final ConcurrentMap<String, String> digests = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @return the digest of the content of the file, see {@link ObjectiveCSquidCache#digest(File)}, or <code>null</code>
+     * if the file cannot be read
+     */
+    public String digest(File file) {
+        String path = file.getAbsolutePath();
+        String digest = digests.get(path);
+        if (digest == null && file.isFile()) {
+            try {
+                digest = ObjectiveCSquidCache.digest(file);
+                digests.put(path, digest);
+            } catch (IOException e) {
+                LOG.warn("Unable to read " + file, e);
+            }
+        }
+        return digest;
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Files of the analysis, with the digest of their content and the headers and modules they import, stored in
+ * the working directory so that the next analyses can tell which files depend on the files that changed.
+ *
+ * Imports are resolved against the files of the graph: a quoted header is first looked up next to the importing
+ * file, then, like an angled one, among all the files whose path ends with the header name. Modules, and headers
+ * of the SDK or of other projects, are not resolved. When several files match, the file depends on all of them.
+ */
+public class ObjectiveCImportGraph {
+
+    public static final String FILE_NAME = "objectivec-imports.graph";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCImportGraph.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final Map<File, Node> nodes;
+    private Map<File, Set<File>> dependencies;
+    private Map<File, Set<File>> dependents;
+
+    private ObjectiveCImportGraph(File file, Map<File, Node> nodes) {
+        this.file = file;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Loads the graph stored in <code>file</code>, or starts an empty one when it does not exist or cannot be read.
+     */
+    public static ObjectiveCImportGraph load(File file) {
+        Map<File, Node> nodes = Maps.newHashMap();
+        if (file.isFile()) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (input.readInt() == FORMAT_VERSION) {
+                    int count = input.readInt();
+                    for (int i = 0; i < count; i++) {
+                        File source = new File(input.readUTF());
+                        String digest = input.readUTF();
+                        int importCount = input.readInt();
+                        List<String> imports = Lists.newArrayListWithCapacity(importCount);
+                        for (int j = 0; j < importCount; j++) {
+                            imports.add(input.readUTF());
+                        }
+                        nodes.put(source, new Node(digest, imports));
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read the Objective-C import graph " + file + ", it will be rebuilt", e);
+                nodes.clear();
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return new ObjectiveCImportGraph(file, nodes);
+    }
+
+    public void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(nodes.size());
+            for (Map.Entry<File, Node> entry : nodes.entrySet()) {
+                output.writeUTF(entry.getKey().getPath());
+                output.writeUTF(entry.getValue().digest);
+                output.writeInt(entry.getValue().imports.size());
+                for (String header : entry.getValue().imports) {
+                    output.writeUTF(header);
+                }
+            }
+            output.close();
+            FileUtils.deleteQuietly(file);
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to write the Objective-C import graph " + file, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(temporary);
+        }
+    }
+
+    /**
+     * Records the digest and the imports of a file, as found by {@link org.sonar.objectivec.metrics.ObjectiveCImports}.
+     */
+    public void put(File source, String digest, List<String> imports) {
+        nodes.put(source.getAbsoluteFile(), new Node(digest, Lists.newArrayList(imports)));
+        dependencies = null;
+        dependents = null;
+    }
+
+    /**
+     * Removes the files which are not among the given ones.
+     */
+    public void retainAll(Collection<File> files) {
+        Set<File> retained = Sets.newHashSet();
+        for (File source : files) {
+            retained.add(source.getAbsoluteFile());
+        }
+        if (nodes.keySet().retainAll(retained)) {
+            dependencies = null;
+            dependents = null;
+        }
+    }
+
+    /**
+     * @return the digest recorded for the file, or <code>null</code> if it is not in the graph
+     */
+    public String getDigest(File source) {
+        Node node = nodes.get(source.getAbsoluteFile());
+        return node == null ? null : node.digest;
+    }
+
+    /**
+     * @param digests the digests of the files of the current analysis, by absolute file
+     * @return the files whose digest is not the recorded one, including the new files, and the files of the graph
+     * which are not in the current analysis any more
+     */
+    public Set<File> getChangedFiles(Map<File, String> digests) {
+        Set<File> changed = Sets.newHashSet();
+        for (Map.Entry<File, String> entry : digests.entrySet()) {
+            if (!entry.getValue().equals(getDigest(entry.getKey()))) {
+                changed.add(entry.getKey().getAbsoluteFile());
+            }
+        }
+        for (File source : nodes.keySet()) {
+            if (!digests.containsKey(source)) {
+                changed.add(source);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the files of the graph imported by the file
+     */
+    public Set<File> getDependencies(File source) {
+        Set<File> result = dependencies().get(source.getAbsoluteFile());
+        return result == null ? Collections.<File>emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return the files of the graph which import the file
+     */
+    public Set<File> getDependents(File source) {
+        Set<File> result = dependents().get(source.getAbsoluteFile());
+        return result == null ? Collections.<File>emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return the files which import one of the given files, directly or through other files, the given files excluded
+     */
+    public Set<File> getTransitiveDependents(Collection<File> files) {
+        Set<File> visited = Sets.newHashSet();
+        LinkedList<File> queue = Lists.newLinkedList();
+        for (File source : files) {
+            if (visited.add(source.getAbsoluteFile())) {
+                queue.add(source.getAbsoluteFile());
+            }
+        }
+        Set<File> result = Sets.newHashSet();
+        while (!queue.isEmpty()) {
+            for (File dependent : getDependents(queue.removeFirst())) {
+                if (visited.add(dependent)) {
+                    result.add(dependent);
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<File, Set<File>> dependencies() {
+        if (dependencies == null) {
+            resolve();
+        }
+        return dependencies;
+    }
+
+    private Map<File, Set<File>> dependents() {
+        if (dependents == null) {
+            resolve();
+        }
+        return dependents;
+    }
+
+    private void resolve() {
+        Map<String, List<File>> filesByName = Maps.newHashMap();
+        for (File source : nodes.keySet()) {
+            List<File> sameName = filesByName.get(source.getName());
+            if (sameName == null) {
+                sameName = Lists.newArrayListWithCapacity(1);
+                filesByName.put(source.getName(), sameName);
+            }
+            sameName.add(source);
+        }
+
+        dependencies = Maps.newHashMap();
+        dependents = Maps.newHashMap();
+        for (Map.Entry<File, Node> entry : nodes.entrySet()) {
+            File source = entry.getKey();
+            for (String header : entry.getValue().imports) {
+                for (File imported : resolve(source, header, filesByName)) {
+                    if (!imported.equals(source)) {
+                        add(dependencies, source, imported);
+                        add(dependents, imported, source);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<File> resolve(File source, String header, Map<String, List<File>> filesByName) {
+        if (header.length() < 3 || header.charAt(0) == '@') {
+            return Collections.emptyList();
+        }
+        String name = header.substring(1, header.length() - 1).replace('\\', '/');
+        if (header.charAt(0) == '"') {
+            String sibling = FilenameUtils.normalize(new File(source.getParentFile(), name).getPath());
+            if (sibling != null && nodes.containsKey(new File(sibling))) {
+                return Collections.singletonList(new File(sibling));
+            }
+        }
+        List<File> sameName = filesByName.get(name.substring(name.lastIndexOf('/') + 1));
+        if (sameName == null) {
+            return Collections.emptyList();
+        }
+        List<File> matches = Lists.newArrayListWithCapacity(sameName.size());
+        String suffix = "/" + name;
+        for (File candidate : sameName) {
+            if (candidate.getPath().replace('\\', '/').endsWith(suffix)) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    private static void add(Map<File, Set<File>> edges, File from, File to) {
+        Set<File> targets = edges.get(from);
+        if (targets == null) {
+            targets = Sets.newHashSet();
+            edges.put(from, targets);
+        }
+        targets.add(to);
+    }
+
+    private static final class Node {
+
+        private final String digest;
+        private final List<String> imports;
+
+        Node(String digest, List<String> imports) {
+            this.digest = digest;
+            this.imports = imports;
+        }
+    }
+
+}
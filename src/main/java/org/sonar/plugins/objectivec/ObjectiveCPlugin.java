@@ -24,12 +24,15 @@ import java.util.List;
 import org.sonar.api.Extension;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 import org.sonar.plugins.objectivec.complexity.LizardSensor;
 import org.sonar.plugins.objectivec.coverage.CoberturaSensor;
 import org.sonar.plugins.objectivec.colorizer.ObjectiveCColorizerFormat;
+import org.sonar.plugins.objectivec.colorizer.ObjectiveCHighlightingSensor;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 import org.sonar.plugins.objectivec.cpd.ObjectiveCCpdMapping;
+import org.sonar.plugins.objectivec.cpd.ObjectiveCCpdSensor;
 
 import com.google.common.collect.ImmutableList;
 
@@ -45,14 +48,41 @@ import org.sonar.plugins.objectivec.violations.oclint.*;
         @Property(key = CoberturaSensor.REPORT_PATTERN_KEY, defaultValue = CoberturaSensor.DEFAULT_REPORT_PATTERN, name = "Path to unit test coverage report(s)", description = "Relative to projects' root. Ant patterns are accepted", global = false, project = true),
         @Property(key = OCLintSensor.REPORT_PATH_KEY, defaultValue = OCLintSensor.DEFAULT_REPORT_PATH, name = "Path to oclint pmd formatted report", description = "Relative to projects' root.", global = false, project = true),
         @Property(key = FauxPasSensor.REPORT_PATH_KEY, defaultValue = FauxPasSensor.DEFAULT_REPORT_PATH, name = "Path to fauxpas json formatted report", description = "Relative to projects' root.", global = false, project = true),
-        @Property(key = LizardSensor.REPORT_PATH_KEY, defaultValue = LizardSensor.DEFAULT_REPORT_PATH, name = "Path to lizard report", description = "Relative to projects' root.", global = false, project = true)
+        @Property(key = LizardSensor.REPORT_PATH_KEY, defaultValue = LizardSensor.DEFAULT_REPORT_PATH, name = "Path to lizard report", description = "Relative to projects' root.", global = false, project = true),
+        @Property(key = ObjectiveCSquidSensor.THREADS_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_THREADS, name = "Number of threads scanning source files", description = "0 uses one thread per available processor.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.CACHE_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_CACHE, name = "Reuse the results of unchanged files", description = "Results and duplication blocks are cached in the working directory, by file content, and discarded by any change of the plugin or of the settings of the analysis. Disabled by default.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.BUILTIN_COMPLEXITY_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_BUILTIN_COMPLEXITY, name = "Compute complexity without Lizard", description = "Functions and complexity are computed by the plugin, and the Lizard report is ignored.", type = PropertyType.BOOLEAN, global = false, project = true),
+        @Property(key = ObjectiveCExclusions.DIRECTORIES_KEY, defaultValue = ObjectiveCExclusions.DEFAULT_DIRECTORIES, name = "Excluded directories", description = "Comma-separated directories of generated or vendored code, relative to projects' root, e.g. Pods,Carthage. Directories starting with **/ are excluded at any depth. Empty by default.", global = true, project = true),
+        @Property(key = ObjectiveCExclusions.FILE_NAMES_KEY, defaultValue = ObjectiveCExclusions.DEFAULT_FILE_NAMES, name = "Excluded file names", description = "Comma-separated file name patterns of generated code, * matching any characters, e.g. *.pbobjc.h,*.pbobjc.m. Empty by default.", global = true, project = true),
+        @Property(key = ObjectiveCExclusions.GENERATED_MARKERS_KEY, defaultValue = ObjectiveCExclusions.DEFAULT_GENERATED_MARKERS, name = "Markers of generated files", description = "Comma-separated texts which, found in the first lines of a file, mark it as generated, e.g. DO NOT EDIT. Case is ignored. Empty by default, as such texts are also found in license headers.", global = true, project = true),
+        @Property(key = ObjectiveCExclusions.HEADER_LINES_KEY, defaultValue = ObjectiveCExclusions.DEFAULT_HEADER_LINES, name = "Number of lines searched for markers of generated files", description = "0 disables the search.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCAnalysisTokenCache.SIZE_KEY, defaultValue = ObjectiveCAnalysisTokenCache.DEFAULT_SIZE, name = "Memory of the token cache", description = "In megabytes. Tokens of the files measured without parser are kept for the detection of duplications, so that files are lexed once. 0 disables the cache.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCCpdMapping.IGNORE_LITERALS_KEY, defaultValue = ObjectiveCCpdMapping.DEFAULT_IGNORE_LITERALS, name = "Ignore literals in duplications", description = "String, character and number literals are all alike when looking for duplicated code.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCCpdMapping.IGNORE_IMPORTS_KEY, defaultValue = ObjectiveCCpdMapping.DEFAULT_IGNORE_IMPORTS, name = "Ignore imports in duplications", description = "#import, #include and @import directives are left out when looking for duplicated code.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCCpdSensor.BUILTIN_KEY, defaultValue = ObjectiveCCpdSensor.DEFAULT_BUILTIN, name = "Detect duplications without the CPD engine", description = "Duplications are detected by the plugin, on several threads, instead of the CPD engine of the platform.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCCpdSensor.MINIMUM_LINES_KEY, defaultValue = ObjectiveCCpdSensor.DEFAULT_MINIMUM_LINES, name = "Minimum number of lines of a duplication", description = "Lines without any token are not counted. Only used when duplications are detected by the plugin.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCCpdSensor.MINIMUM_TOKENS_KEY, defaultValue = ObjectiveCCpdSensor.DEFAULT_MINIMUM_TOKENS, name = "Minimum number of tokens of a duplication", description = "Only used when duplications are detected by the plugin.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCHighlightingSensor.ENABLED_KEY, defaultValue = ObjectiveCHighlightingSensor.DEFAULT_ENABLED, name = "Highlight the source code from its tokens", description = "When disabled, the source code is colorized by the generic tokenizers of the platform.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCChangedFiles.LIST_KEY, name = "File listing the changed files", description = "Limits the analysis to the files listed in this file, one path per line, absolute or relative to projects' root. Meant for the analysis of pull requests.", global = false, project = true),
+        @Property(key = ObjectiveCChangedFiles.GIT_BASE_KEY, name = "Base revision of the changed files", description = "Limits the analysis to the files of the git working tree which changed since this revision, or are not tracked yet. Ignored when a file lists the changed files.", global = false, project = true),
+        @Property(key = ObjectiveCSquidSensor.MAX_FILE_SIZE_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_MAX_FILE_SIZE, name = "Maximum size of a scanned file", description = "In kilobytes. Larger files are skipped. 0 means no limit.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.MAX_TOKENS_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_MAX_TOKENS, name = "Maximum number of tokens of a scanned file", description = "Files with more tokens are skipped. 0 means no limit.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.MAX_FILE_TIME_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_MAX_FILE_TIME, name = "Maximum time spent lexing a scanned file", description = "In seconds. Slower files are skipped. 0 means no limit.", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.PROFILE_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_PROFILE, name = "Profile the scan of source files", description = "Times of the lexer, parser, visitors and save, and the slowest files, are logged and written to objectivec-squid-profile.json in the working directory.", type = PropertyType.BOOLEAN, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.PROFILE_SLOWEST_FILES_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_PROFILE_SLOWEST_FILES, name = "Number of slowest files in the scan profile", type = PropertyType.INTEGER, global = true, project = true),
+        @Property(key = ObjectiveCSquidSensor.PROGRESS_INTERVAL_KEY, defaultValue = ObjectiveCSquidSensor.DEFAULT_PROGRESS_INTERVAL, name = "Interval between progress logs of the scan of source files", description = "In seconds. 0 disables the progress logs.", type = PropertyType.INTEGER, global = true, project = true)
 })
 public class ObjectiveCPlugin extends SonarPlugin {
 
     public List<Class<? extends Extension>> getExtensions() {
         return ImmutableList.of(ObjectiveC.class,
+                ObjectiveCExclusions.class,
+                ObjectiveCFileDigests.class,
+                ObjectiveCAnalysisTokenCache.class,
                 ObjectiveCColorizerFormat.class,
+                ObjectiveCHighlightingSensor.class,
                 ObjectiveCCpdMapping.class,
+                ObjectiveCCpdSensor.class,
 
                 ObjectiveCSquidSensor.class,
                 ObjectiveCProfile.class,
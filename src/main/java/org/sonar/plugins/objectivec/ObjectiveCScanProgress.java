@@ -0,0 +1,216 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.File;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.objectivec.ObjectiveCScanListener;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.squidbridge.api.SourceFile;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+/**
+ * Logs the progress of a scan at a regular interval from a thread of its own: files done, lines per second,
+ * the file being scanned and the estimated remaining time, estimated from the size of the files left.
+ * Scanning threads only update atomic counters, either through the files returned by
+ * {@link #track(List, ObjectiveCScanListener)}, or by calling {@link #fileStarted(File)} and {@link #fileDone(File, SourceFile)}
+ * themselves. Files skipped by the scanner are done as well, so that all the files are done at the end of the scan.
+ */
+public class ObjectiveCScanProgress {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCScanProgress.class);
+
+    private final int totalFiles;
+    private final long totalBytes;
+    private final Map<File, Long> sizes;
+    private final long intervalMillis;
+    private final AtomicInteger doneFiles = new AtomicInteger();
+    private final AtomicLong doneLines = new AtomicLong();
+    private final AtomicLong doneBytes = new AtomicLong();
+    private volatile String currentFile;
+    private long startNanos;
+    private Thread thread;
+
+    /**
+     * @param intervalMillis 0 not to log anything
+     */
+    public ObjectiveCScanProgress(List<File> files, long intervalMillis) {
+        long bytes = 0;
+        this.sizes = Maps.newHashMapWithExpectedSize(files.size());
+        for (File file : files) {
+            long size = file.length();
+            sizes.put(file, size);
+            bytes += size;
+        }
+        this.totalFiles = files.size();
+        this.totalBytes = bytes;
+        this.intervalMillis = intervalMillis;
+        this.currentFile = files.isEmpty() ? null : files.get(0).getPath();
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        if (intervalMillis <= 0 || totalFiles == 0) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(intervalMillis);
+                        LOG.info(report());
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "Objective-C scan progress");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * @param files the files scanned one after the other by the current thread, in order
+     * @return the files to hand to the scanner, which are also the listener to notify of the scanned files before they are
+     * handed to the given one. A file is done when the scanner moves on to the next one.
+     */
+    public TrackedFiles track(List<File> files, ObjectiveCScanListener listener) {
+        return new TrackedFiles(files, listener);
+    }
+
+    public void fileStarted(File file) {
+        currentFile = file.getPath();
+    }
+
+    /**
+     * @param squidFile the results of the file, or <code>null</code> if the scanner skipped it
+     */
+    public void fileDone(File file, SourceFile squidFile) {
+        doneFiles.incrementAndGet();
+        if (squidFile != null) {
+            doneLines.addAndGet(squidFile.getInt(ObjectiveCMetric.LINES));
+        }
+        Long size = sizes.get(file);
+        if (size != null) {
+            doneBytes.addAndGet(size);
+        }
+    }
+
+    public int getDoneFiles() {
+        return doneFiles.get();
+    }
+
+    public long getDoneLines() {
+        return doneLines.get();
+    }
+
+    String report() {
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        long bytes = doneBytes.get();
+        StringBuilder report = new StringBuilder();
+        report.append(doneFiles.get()).append('/').append(totalFiles).append(" files scanned, ")
+                .append(doneLines.get() * 1000 / elapsedMillis).append(" lines/s");
+        if (bytes > 0) {
+            long remainingSeconds = (long) ((double) elapsedMillis * (totalBytes - bytes) / bytes / 1000);
+            report.append(", about ").append(remainingSeconds).append(" s remaining");
+        }
+        String file = currentFile;
+        if (file != null) {
+            report.append(", current file: ").append(file);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Files scanned by the current thread, the scan moving on to the next file when the scanner iterates over them.
+     */
+    public final class TrackedFiles extends AbstractCollection<File> implements ObjectiveCScanListener {
+
+        private final List<File> files;
+        private final ObjectiveCScanListener listener;
+        private File current;
+        private SourceFile scanned;
+
+        private TrackedFiles(List<File> files, ObjectiveCScanListener listener) {
+            this.files = files;
+            this.listener = listener;
+        }
+
+        @Override
+        public Iterator<File> iterator() {
+            final Iterator<File> iterator = files.iterator();
+            return new AbstractIterator<File>() {
+                @Override
+                protected File computeNext() {
+                    finishCurrent();
+                    if (!iterator.hasNext()) {
+                        return endOfData();
+                    }
+                    current = iterator.next();
+                    fileStarted(current);
+                    return current;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return files.size();
+        }
+
+        public void fileScanned(SourceFile squidFile) {
+            scanned = squidFile;
+            listener.fileScanned(squidFile);
+        }
+
+        private void finishCurrent() {
+            if (current != null) {
+                fileDone(current, scanned);
+                current = null;
+                scanned = null;
+            }
+        }
+    }
+
+}
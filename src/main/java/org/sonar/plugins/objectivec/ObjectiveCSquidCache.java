@@ -0,0 +1,432 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.lexer.MappedBuffers;
+import org.sonar.objectivec.metrics.ObjectiveCImports;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Measures, NOSONAR lines, functions, imports and check messages of the files of the previous analysis, stored in the working
+ * directory and keyed by the digest of the content of each file. The whole cache is discarded when its
+ * fingerprint, made of the {@link #analysisVersion() analysis version} and of the settings of the analysis, does not
+ * match the current one.
+ *
+ * Messages replayed from the cache have their {@link RuleKey} as check.
+ */
+public class ObjectiveCSquidCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCSquidCache.class);
+
+    /**
+     * Version of the results of the analysis of a file. To be increased with any change of the lexer, parser, metrics or
+     * tokenizers which alters the results of unchanged files, so that the caches of previous analyses are discarded.
+     */
+    public static final String ANALYSIS_VERSION = "1";
+
+    private static String analysisVersion;
+
+    private static final int FORMAT_VERSION = 3;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final String fingerprint;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = Maps.newHashMap();
+    private int hits;
+    private int misses;
+
+    private ObjectiveCSquidCache(File file, String fingerprint, Map<String, Entry> previous) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the cache stored in <code>file</code>, or starts an empty one when it does not exist,
+     * cannot be read or has another fingerprint.
+     */
+    public static ObjectiveCSquidCache load(File file, String fingerprint) {
+        return load(file, analysisVersion(), fingerprint);
+    }
+
+    /**
+     * @return the {@link #ANALYSIS_VERSION} followed by the digest of the jar of the plugin, so that the caches are
+     * also discarded by any new build of the plugin, even when the version was not increased
+     */
+    public static synchronized String analysisVersion() {
+        if (analysisVersion == null) {
+            analysisVersion = ANALYSIS_VERSION;
+            CodeSource codeSource = ObjectiveCSquidCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+                try {
+                    File jar = new File(codeSource.getLocation().toURI());
+                    if (jar.isFile()) {
+                        analysisVersion += '-' + digest(jar);
+                    }
+                } catch (URISyntaxException e) {
+                    LOG.debug("Unable to locate the jar of the Objective-C plugin", e);
+                } catch (IOException e) {
+                    LOG.debug("Unable to read the jar of the Objective-C plugin", e);
+                } catch (IllegalArgumentException e) {
+                    LOG.debug("Unable to locate the jar of the Objective-C plugin", e);
+                }
+            }
+        }
+        return analysisVersion;
+    }
+
+    static ObjectiveCSquidCache load(File file, String analysisVersion, String settingsFingerprint) {
+        String fingerprint = analysisVersion + '|' + settingsFingerprint;
+        Map<String, Entry> entries = Maps.newHashMap();
+        if (file.isFile()) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (input.readInt() == FORMAT_VERSION && fingerprint.equals(input.readUTF())) {
+                    int count = input.readInt();
+                    for (int i = 0; i < count; i++) {
+                        entries.put(input.readUTF(), Entry.read(input));
+                    }
+                } else {
+                    LOG.info("Objective-C analysis cache is outdated and will be rebuilt");
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read the Objective-C analysis cache " + file + ", it will be rebuilt", e);
+                entries.clear();
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return new ObjectiveCSquidCache(file, fingerprint, entries);
+    }
+
+    /**
+     * @return the results stored for a file with the given digest, or <code>null</code>
+     */
+    public SourceFile get(File sourceFile, String digest) {
+        Entry entry = previous.get(digest);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        current.put(digest, entry);
+        return entry.toSourceFile(sourceFile);
+    }
+
+    public void put(String digest, SourceFile squidFile, Map<Object, RuleKey> ruleKeys) {
+        current.put(digest, Entry.of(squidFile, ruleKeys));
+    }
+
+    /**
+     * Writes the entries read or added during this analysis, replacing the previous content of the cache.
+     */
+    public void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(fingerprint);
+            output.writeInt(current.size());
+            for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().write(output);
+            }
+            output.close();
+            FileUtils.deleteQuietly(file);
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to write the Objective-C analysis cache " + file, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(temporary);
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the hexadecimal digest of the content of the file
+     */
+    public static String digest(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        ByteBuffer content = null;
+        try {
+            FileChannel channel = input.getChannel();
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return digest(content);
+        } finally {
+            MappedBuffers.unmap(content);
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return the hexadecimal digest of the remaining bytes of the buffer, which are consumed
+     */
+    public static String digest(ByteBuffer content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(content);
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static final class Entry {
+
+        private final double[] measures;
+        private final int[] noSonarLines;
+        private final List<Function> functions;
+        private final List<String> imports;
+        private final List<Message> messages;
+
+        private Entry(double[] measures, int[] noSonarLines, List<Function> functions, List<String> imports, List<Message> messages) {
+            this.measures = measures;
+            this.noSonarLines = noSonarLines;
+            this.functions = functions;
+            this.imports = imports;
+            this.messages = messages;
+        }
+
+        static Entry of(SourceFile squidFile, Map<Object, RuleKey> ruleKeys) {
+            ObjectiveCMetric[] metrics = ObjectiveCMetric.values();
+            double[] measures = new double[metrics.length];
+            for (int i = 0; i < metrics.length; i++) {
+                measures[i] = squidFile.getDouble(metrics[i]);
+            }
+
+            Set<Integer> noSonar = squidFile.getNoSonarTagLines();
+            int[] noSonarLines = new int[noSonar == null ? 0 : noSonar.size()];
+            int i = 0;
+            if (noSonar != null) {
+                for (Integer line : noSonar) {
+                    noSonarLines[i++] = line;
+                }
+            }
+
+            List<Function> functions = Lists.newArrayList();
+            if (squidFile.hasChildren()) {
+                for (SourceCode function : squidFile.getChildren()) {
+                    functions.add(new Function(function.getName(), function.getStartAtLine(),
+                            function.getInt(ObjectiveCMetric.COMPLEXITY), function.getInt(ObjectiveCMetric.STATEMENTS)));
+                }
+            }
+
+            List<Message> messages = Lists.newArrayList();
+            Collection<CheckMessage> checkMessages = squidFile.getCheckMessages();
+            if (checkMessages != null) {
+                for (CheckMessage message : checkMessages) {
+                    RuleKey ruleKey = message.getCheck() instanceof RuleKey ? (RuleKey) message.getCheck() : ruleKeys.get(message.getCheck());
+                    if (ruleKey != null) {
+                        messages.add(new Message(ruleKey.toString(), message.getLine(), message.getText(Locale.ENGLISH), message.getCost()));
+                    }
+                }
+            }
+            return new Entry(measures, noSonarLines, functions, Lists.newArrayList(ObjectiveCImports.getImports(squidFile)), messages);
+        }
+
+        static Entry read(DataInputStream input) throws IOException {
+            ObjectiveCMetric[] metrics = ObjectiveCMetric.values();
+            if (input.readInt() != metrics.length) {
+                throw new IOException("Unexpected number of measures");
+            }
+            double[] measures = new double[metrics.length];
+            for (int i = 0; i < measures.length; i++) {
+                measures[i] = input.readDouble();
+            }
+            int[] noSonarLines = new int[input.readInt()];
+            for (int i = 0; i < noSonarLines.length; i++) {
+                noSonarLines[i] = input.readInt();
+            }
+            int functionCount = input.readInt();
+            List<Function> functions = Lists.newArrayListWithCapacity(functionCount);
+            for (int i = 0; i < functionCount; i++) {
+                functions.add(new Function(input.readUTF(), input.readInt(), input.readInt(), input.readInt()));
+            }
+            int importCount = input.readInt();
+            List<String> imports = Lists.newArrayListWithCapacity(importCount);
+            for (int i = 0; i < importCount; i++) {
+                imports.add(input.readUTF());
+            }
+            int count = input.readInt();
+            List<Message> messages = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                String ruleKey = input.readUTF();
+                Integer line = input.readBoolean() ? input.readInt() : null;
+                String text = input.readUTF();
+                Double cost = input.readBoolean() ? input.readDouble() : null;
+                messages.add(new Message(ruleKey, line, text, cost));
+            }
+            return new Entry(measures, noSonarLines, functions, imports, messages);
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeInt(measures.length);
+            for (double measure : measures) {
+                output.writeDouble(measure);
+            }
+            output.writeInt(noSonarLines.length);
+            for (int line : noSonarLines) {
+                output.writeInt(line);
+            }
+            output.writeInt(functions.size());
+            for (Function function : functions) {
+                output.writeUTF(function.signature);
+                output.writeInt(function.line);
+                output.writeInt(function.complexity);
+                output.writeInt(function.statements);
+            }
+            output.writeInt(imports.size());
+            for (String header : imports) {
+                output.writeUTF(header);
+            }
+            output.writeInt(messages.size());
+            for (Message message : messages) {
+                output.writeUTF(message.ruleKey);
+                output.writeBoolean(message.line != null);
+                if (message.line != null) {
+                    output.writeInt(message.line);
+                }
+                output.writeUTF(message.text);
+                output.writeBoolean(message.cost != null);
+                if (message.cost != null) {
+                    output.writeDouble(message.cost);
+                }
+            }
+        }
+
+        SourceFile toSourceFile(File file) {
+            SourceFile squidFile = new SourceFile(file.getAbsolutePath(), file.getPath());
+            ObjectiveCMetric[] metrics = ObjectiveCMetric.values();
+            for (int i = 0; i < metrics.length; i++) {
+                squidFile.setMeasure(metrics[i], measures[i]);
+            }
+            Set<Integer> noSonar = Sets.newHashSet();
+            for (int line : noSonarLines) {
+                noSonar.add(line);
+            }
+            squidFile.addNoSonarTagLines(noSonar);
+            for (Function function : functions) {
+                SourceFunction squidFunction = new SourceFunction(squidFile, function.signature, function.line);
+                squidFunction.setMeasure(ObjectiveCMetric.FUNCTIONS, 1);
+                squidFunction.setMeasure(ObjectiveCMetric.COMPLEXITY, function.complexity);
+                squidFunction.setMeasure(ObjectiveCMetric.STATEMENTS, function.statements);
+                squidFile.addChild(squidFunction);
+            }
+            squidFile.addData(ObjectiveCImports.Data.IMPORTS, Lists.newArrayList(imports));
+            for (Message message : messages) {
+                CheckMessage checkMessage = new CheckMessage(RuleKey.parse(message.ruleKey), message.text);
+                if (message.line != null) {
+                    checkMessage.setLine(message.line);
+                }
+                if (message.cost != null) {
+                    checkMessage.setCost(message.cost);
+                }
+                squidFile.log(checkMessage);
+            }
+            return squidFile;
+        }
+    }
+
+    private static final class Function {
+
+        private final String signature;
+        private final int line;
+        private final int complexity;
+        private final int statements;
+
+        Function(String signature, int line, int complexity, int statements) {
+            this.signature = signature;
+            this.line = line;
+            this.complexity = complexity;
+            this.statements = statements;
+        }
+    }
+
+    private static final class Message {
+
+        private final String ruleKey;
+        private final Integer line;
+        private final String text;
+        private final Double cost;
+
+        Message(String ruleKey, Integer line, String text, Double cost) {
+            this.ruleKey = ruleKey;
+            this.line = line;
+            this.text = text;
+            this.cost = cost;
+        }
+    }
+
+}
@@ -19,8 +19,10 @@
  */
 package org.sonar.plugins.objectivec;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FilePredicate;
@@ -29,18 +31,26 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.rule.CheckFactory;
 import org.sonar.api.batch.rule.Checks;
 import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.measures.RangeDistributionBuilder;
 import org.sonar.api.profiles.RulesProfile;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.scan.filesystem.PathResolver;
+import org.sonar.api.rules.ActiveRule;
+import org.sonar.api.rules.ActiveRuleParam;
 import org.sonar.objectivec.ObjectiveCAstScanner;
 import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScanListener;
+import org.sonar.objectivec.ObjectiveCScanProfiler;
+import org.sonar.objectivec.ObjectiveCScanWatchdog;
 import org.sonar.objectivec.api.ObjectiveCGrammar;
 import org.sonar.objectivec.api.ObjectiveCMetric;
 import org.sonar.objectivec.checks.CheckList;
+import org.sonar.objectivec.metrics.ObjectiveCImports;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.SquidAstVisitor;
@@ -48,35 +58,97 @@ import org.sonar.squidbridge.api.CheckMessage;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.checks.SquidCheck;
-import org.sonar.squidbridge.indexer.QueryByType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class ObjectiveCSquidSensor implements Sensor {
 
+    public static final String THREADS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.threads";
+    public static final String DEFAULT_THREADS = "1";
+    public static final String CACHE_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.cache";
+    public static final String DEFAULT_CACHE = "false";
+    public static final String BUILTIN_COMPLEXITY_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".complexity.builtin";
+    public static final String DEFAULT_BUILTIN_COMPLEXITY = "false";
+    public static final String MAX_FILE_SIZE_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.maxFileSize";
+    public static final String DEFAULT_MAX_FILE_SIZE = "0";
+    public static final String MAX_TOKENS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.maxTokens";
+    public static final String DEFAULT_MAX_TOKENS = "0";
+    public static final String MAX_FILE_TIME_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.maxFileTime";
+    public static final String DEFAULT_MAX_FILE_TIME = "0";
+    public static final String PROFILE_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.profile";
+    public static final String DEFAULT_PROFILE = "false";
+    public static final String PROFILE_SLOWEST_FILES_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.profile.slowestFiles";
+    public static final String DEFAULT_PROFILE_SLOWEST_FILES = "10";
+    public static final String PROGRESS_INTERVAL_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".squid.progressInterval";
+    public static final String DEFAULT_PROGRESS_INTERVAL = "10";
+
+    private static final String CACHE_FILE = "objectivec-squid.cache";
+    private static final String PROFILE_FILE = "objectivec-squid-profile.json";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCSquidSensor.class);
+
     private final Number[] FUNCTIONS_DISTRIB_BOTTOM_LIMITS = {1, 2, 4, 6, 8, 10, 12, 20, 30};
     private final Number[] FILES_DISTRIB_BOTTOM_LIMITS = {0, 5, 10, 20, 30, 60, 90};
 
+    private final RulesProfile profile;
     private final FileSystem fileSystem;
-    private final PathResolver pathResolver;
     private final ResourcePerspectives resourcePerspectives;
-    private final Checks<SquidCheck<ObjectiveCGrammar>> checks;
+    private final CheckFactory checkFactory;
+    private final Settings settings;
     private final FilePredicate mainFilePredicates;
+    private final ObjectiveCExclusions exclusions;
+    private final ObjectiveCFileDigests fileDigests;
+    private final ObjectiveCAnalysisTokenCache tokenCache;
 
+    /**
+     * Rule keys of the check instances of all the workers.
+     */
+    private final Map<Object, RuleKey> ruleKeys = Collections.synchronizedMap(new IdentityHashMap<Object, RuleKey>());
 
-    private Project project;
     private SensorContext context;
-    private AstScanner<ObjectiveCGrammar> scanner;
+    private InputFileIndex inputFiles;
+    private ObjectiveCScanWatchdog watchdog;
+    private ObjectiveCScanProfiler profiler;
+    private ObjectiveCImportGraph importGraph;
+
+    /**
+     * Digests of the content of the files, and files with the same content as a scanned file, by absolute file.
+     */
+    private Map<java.io.File, String> digests;
+    private Map<java.io.File, List<java.io.File>> duplicates;
 
-    public ObjectiveCSquidSensor(RulesProfile profile, FileSystem fileSystem, PathResolver pathResolver, ResourcePerspectives resourcePerspectives, CheckFactory checkFactory) {
+    public ObjectiveCSquidSensor(RulesProfile profile, FileSystem fileSystem, ResourcePerspectives resourcePerspectives, CheckFactory checkFactory, Settings settings, ObjectiveCExclusions exclusions,
+            ObjectiveCFileDigests fileDigests, ObjectiveCAnalysisTokenCache tokenCache) {
 
+        this.profile = profile;
         this.fileSystem = fileSystem;
-        this.pathResolver = pathResolver;
         this.resourcePerspectives = resourcePerspectives;
-        this.checks = checkFactory.<SquidCheck<ObjectiveCGrammar>>create(CheckList.REPOSITORY_KEY).addAnnotatedChecks(CheckList.getChecks());
+        this.checkFactory = checkFactory;
+        this.settings = settings;
+        this.exclusions = exclusions;
+        this.fileDigests = fileDigests;
+        this.tokenCache = tokenCache;
         this.mainFilePredicates = fileSystem.predicates().and(fileSystem.predicates().hasLanguage(ObjectiveC.KEY), fileSystem.predicates().hasType(InputFile.Type.MAIN));
     }
 
@@ -87,34 +159,510 @@ public class ObjectiveCSquidSensor implements Sensor {
     }
 
     public void analyse(Project project, SensorContext context) {
-        this.project = project;
         this.context = context;
+        this.inputFiles = new InputFileIndex(fileSystem);
+        this.watchdog = createWatchdog();
+        this.profiler = createProfiler();
+        this.digests = Maps.newHashMap();
+        this.duplicates = Maps.newHashMap();
+        this.importGraph = ObjectiveCImportGraph.load(new java.io.File(fileSystem.workDir(), ObjectiveCImportGraph.FILE_NAME));
+
+        List<java.io.File> files = exclusions.filter(fileSystem.files(mainFilePredicates));
+        // files over the size limit are skipped before their content is read to be digested
+        List<java.io.File> distinctFiles = groupByContent(watchdog.filterBySize(files));
+
+        boolean cacheEnabled = settings.hasKey(CACHE_KEY) ? settings.getBoolean(CACHE_KEY) : Boolean.parseBoolean(DEFAULT_CACHE);
+        if (!cacheEnabled) {
+            scanFiles(distinctFiles, new ObjectiveCScanListener() {
+                public void fileScanned(SourceFile squidFile) {
+                    save(squidFile);
+                }
+            });
+            saveImportGraph(files);
+            logTrips();
+            logProfile();
+            return;
+        }
 
-        List<SquidAstVisitor<ObjectiveCGrammar>> visitors = Lists.<SquidAstVisitor<ObjectiveCGrammar>>newArrayList(checks.all());
-        AstScanner<ObjectiveCGrammar> scanner = ObjectiveCAstScanner.create(createConfiguration(), visitors.toArray(new SquidAstVisitor[visitors.size()]));
+        Set<java.io.File> changedImports = importGraph.getChangedFiles(digests);
+        if (exclusions.isLimitedToChangedFiles()) {
+            // the files left out of the analysis did not change, they are not removed
+            changedImports.retainAll(digests.keySet());
+        }
+        Set<java.io.File> dependents = importGraph.getTransitiveDependents(changedImports);
+        LOG.info("Objective-C import graph: {} changed files, {} dependent files analysed again", changedImports.size(), dependents.size());
+
+        final ObjectiveCSquidCache cache = ObjectiveCSquidCache.load(new java.io.File(fileSystem.workDir(), CACHE_FILE), cacheFingerprint());
+        List<java.io.File> changedFiles = Lists.newArrayList();
+        for (java.io.File file : distinctFiles) {
+            String digest = digests.get(file.getAbsoluteFile());
+            SourceFile cached = digest == null || importsChanged(file, dependents) ? null : cache.get(file, digest);
+            if (cached == null) {
+                changedFiles.add(file);
+            } else {
+                save(cached);
+            }
+        }
+        LOG.info("Objective-C analysis cache: {} hits, {} misses", cache.getHits(), cache.getMisses());
 
+        scanFiles(changedFiles, new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile squidFile) {
+                String digest = digests.get(new java.io.File(squidFile.getKey()));
+                if (digest != null) {
+                    cache.put(digest, squidFile, ruleKeys);
+                }
+                save(squidFile);
+            }
+        });
+        cache.save();
+        saveImportGraph(files);
+        logTrips();
+        logProfile();
+    }
 
-        scanner.scanFiles(ImmutableList.copyOf(fileSystem.files(mainFilePredicates)));
+    /**
+     * Groups the files by the digest of their content, so that files with the same content are only scanned once.
+     * The digest of every file is kept, and the other files of each group are kept as duplicates of the first one.
+     *
+     * @return the first file of each group, in the original order
+     */
+    private List<java.io.File> groupByContent(List<java.io.File> files) {
+        Map<String, java.io.File> firstFiles = Maps.newHashMap();
+        List<java.io.File> distinctFiles = Lists.newArrayList();
+        for (java.io.File file : files) {
+            String digest = fileDigests.digest(file);
+            if (digest != null) {
+                digests.put(file.getAbsoluteFile(), digest);
+            }
+            java.io.File first = digest == null ? null : firstFiles.get(digest);
+            if (first == null) {
+                distinctFiles.add(file);
+                if (digest != null) {
+                    firstFiles.put(digest, file);
+                }
+            } else {
+                List<java.io.File> copies = duplicates.get(first.getAbsoluteFile());
+                if (copies == null) {
+                    copies = Lists.newArrayList();
+                    duplicates.put(first.getAbsoluteFile(), copies);
+                }
+                copies.add(file);
+            }
+        }
+        if (distinctFiles.size() < files.size()) {
+            LOG.info("{} Objective-C files have the same content as another file and are scanned only once", files.size() - distinctFiles.size());
+        }
+        return distinctFiles;
+    }
+
+    /**
+     * @return true if the file, or a file with the same content, imports a file which changed since the previous analysis
+     */
+    private boolean importsChanged(java.io.File file, Set<java.io.File> dependents) {
+        if (dependents.contains(file.getAbsoluteFile())) {
+            return true;
+        }
+        List<java.io.File> copies = duplicates.get(file.getAbsoluteFile());
+        if (copies != null) {
+            for (java.io.File copy : copies) {
+                if (dependents.contains(copy.getAbsoluteFile())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void saveImportGraph(List<java.io.File> files) {
+        if (!exclusions.isLimitedToChangedFiles()) {
+            importGraph.retainAll(files);
+        }
+        importGraph.save();
+    }
+
+    /**
+     * @return the graph of the imports between the files of the last analysis, to be used once it is done
+     */
+    public ObjectiveCImportGraph getImportGraph() {
+        return importGraph;
+    }
 
-        Collection<SourceCode> squidSourceFiles = scanner.getIndex().search(new QueryByType(SourceFile.class));
-        save(squidSourceFiles);
+    /**
+     * Scans the files, the listener being called on the current thread with the files in their original order.
+     */
+    private void scanFiles(List<java.io.File> files, ObjectiveCScanListener listener) {
+        int threads = Math.min(threads(), files.size());
+        ObjectiveCScanProgress progress = new ObjectiveCScanProgress(files, 1000L * intSetting(PROGRESS_INTERVAL_KEY, DEFAULT_PROGRESS_INTERVAL));
+        progress.start();
+        try {
+            if (threads > 1) {
+                LOG.info("Scanning {} files with {} threads", files.size(), threads);
+                scanInParallel(files, threads, listener, progress);
+            } else {
+                ObjectiveCScanProgress.TrackedFiles trackedFiles = progress.track(files, listener);
+                scan(trackedFiles, createChecks(), detaching(trackedFiles));
+            }
+        } finally {
+            progress.stop();
+        }
+    }
+
+    /**
+     * Cached results only hold for the same encoding, scan limits and active checks. The analysis version is added by the cache.
+     */
+    private String cacheFingerprint() {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(fileSystem.encoding().name())
+                .append('|').append(watchdog.getMaxFileSize()).append('|').append(watchdog.getMaxTokens()).append('|').append(watchdog.getMaxTimeMillis());
+        List<String> rules = Lists.newArrayList();
+        for (ActiveRule activeRule : profile.getActiveRulesByRepository(CheckList.REPOSITORY_KEY)) {
+            List<String> params = Lists.newArrayList();
+            for (ActiveRuleParam param : activeRule.getActiveRuleParams()) {
+                params.add(param.getKey() + "=" + param.getValue());
+            }
+            Collections.sort(params);
+            rules.add(activeRule.getRuleKey() + params);
+        }
+        Collections.sort(rules);
+        return fingerprint.append('|').append(rules).toString();
+    }
+
+    private int threads() {
+        int threads = settings.hasKey(THREADS_KEY) ? settings.getInt(THREADS_KEY) : Integer.parseInt(DEFAULT_THREADS);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
     }
 
     private ObjectiveCConfiguration createConfiguration() {
 
-        return new ObjectiveCConfiguration(fileSystem.encoding());
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration(fileSystem.encoding());
+        conf.setWatchdog(watchdog);
+        conf.setProfiler(profiler);
+        conf.setTokenCache(tokenCache);
+        return conf;
+    }
+
+    private ObjectiveCScanProfiler createProfiler() {
+        boolean enabled = settings.hasKey(PROFILE_KEY) ? settings.getBoolean(PROFILE_KEY) : Boolean.parseBoolean(DEFAULT_PROFILE);
+        return enabled ? new ObjectiveCScanProfiler(intSetting(PROFILE_SLOWEST_FILES_KEY, DEFAULT_PROFILE_SLOWEST_FILES)) : null;
+    }
+
+    private ObjectiveCScanWatchdog createWatchdog() {
+        long maxFileSize = 1024L * intSetting(MAX_FILE_SIZE_KEY, DEFAULT_MAX_FILE_SIZE);
+        int maxTokens = intSetting(MAX_TOKENS_KEY, DEFAULT_MAX_TOKENS);
+        long maxTimeMillis = 1000L * intSetting(MAX_FILE_TIME_KEY, DEFAULT_MAX_FILE_TIME);
+        return new ObjectiveCScanWatchdog(Math.max(0, maxFileSize), Math.max(0, maxTokens), Math.max(0, maxTimeMillis));
+    }
+
+    private int intSetting(String key, String defaultValue) {
+        return settings.hasKey(key) ? settings.getInt(key) : Integer.parseInt(defaultValue);
+    }
+
+    /**
+     * Lists the files which went over a limit of the watchdog.
+     */
+    private void logTrips() {
+        List<ObjectiveCScanWatchdog.Trip> trips = watchdog.getTrips();
+        if (trips.isEmpty()) {
+            return;
+        }
+        LOG.warn("{} Objective-C files went over the scan limits:", trips.size());
+        for (ObjectiveCScanWatchdog.Trip trip : trips) {
+            LOG.warn("  {}", trip);
+        }
+    }
+
+    /**
+     * Writes the times of the scan to the working directory and to the log, when it is profiled.
+     */
+    private void logProfile() {
+        if (profiler == null) {
+            return;
+        }
+        java.io.File file = new java.io.File(fileSystem.workDir(), PROFILE_FILE);
+        try {
+            profiler.writeJson(file);
+            LOG.info("Objective-C scan profile written to {}", file);
+        } catch (IOException e) {
+            LOG.warn("Unable to write the Objective-C scan profile to " + file, e);
+        }
+        profiler.log(LOG);
+    }
+
+    /**
+     * Creates the checks of a scanner, which must be done on the current thread as the check factory is not thread-safe.
+     */
+    private Checks<SquidCheck<ObjectiveCGrammar>> createChecks() {
+        Checks<SquidCheck<ObjectiveCGrammar>> checks = checkFactory.<SquidCheck<ObjectiveCGrammar>>create(CheckList.REPOSITORY_KEY).addAnnotatedChecks(CheckList.getChecks());
+        for (SquidCheck<ObjectiveCGrammar> check : checks.all()) {
+            ruleKeys.put(check, checks.ruleKey(check));
+        }
+        return checks;
+    }
+
+    /**
+     * Scans the files with a scanner and checks of its own, so that it can run in a worker thread.
+     */
+    private void scan(Collection<java.io.File> files, Checks<SquidCheck<ObjectiveCGrammar>> checks, ObjectiveCScanListener listener) {
+        List<SquidAstVisitor<ObjectiveCGrammar>> visitors = Lists.<SquidAstVisitor<ObjectiveCGrammar>>newArrayList(checks.all());
+
+        if (visitors.isEmpty()) {
+            // no check needs a syntax tree: the metrics are computed from the tokens only
+            ObjectiveCAstScanner.scanMetrics(createConfiguration(), files, listener);
+            return;
+        }
+
+        AstScanner<ObjectiveCGrammar> scanner = ObjectiveCAstScanner.create(createConfiguration(), listener, visitors.toArray(new SquidAstVisitor[visitors.size()]));
+        scanner.scanFiles(files);
+    }
+
+    /**
+     * @return a listener removing the scanned files from the squid tree of their scanner, on the scanning thread,
+     * before handing them to the given one
+     */
+    private static ObjectiveCScanListener detaching(final ObjectiveCScanListener listener) {
+        return new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile squidFile) {
+                SourceCode parent = squidFile.getParent();
+                if (parent != null && parent.hasChildren()) {
+                    parent.getChildren().remove(squidFile);
+                }
+                listener.fileScanned(squidFile);
+            }
+        };
+    }
+
+    /**
+     * Scans the files on several workers, each one with a scanner and checks of its own. Workers take the files
+     * one after the other in their original order, and scanned files are handed over to the current thread in the same
+     * order, as the sensor context is not thread-safe. Workers wait while too many files are scanned ahead of the
+     * next file to hand over, so that measures and issues are saved in the same order as by a sequential scan.
+     */
+    private void scanInParallel(final List<java.io.File> files, int threads, ObjectiveCScanListener listener, final ObjectiveCScanProgress progress) {
+        final OrderedResults results = new OrderedResults(files.size(), threads * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = Lists.newArrayList();
+            for (int i = 0; i < threads; i++) {
+                final Checks<SquidCheck<ObjectiveCGrammar>> checks = createChecks();
+                workers.add(executor.submit(new Runnable() {
+                    public void run() {
+                        WorkerFiles workerFiles = new WorkerFiles(files, results, progress);
+                        scan(workerFiles, checks, detaching(workerFiles));
+                        workerFiles.finishCurrent();
+                    }
+                }));
+            }
+
+            results.handOver(listener, workers);
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning Objective-C files", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private void save(Collection<SourceCode> squidSourceFiles) {
+    /**
+     * Results of the workers, by index of file, of which at most a given number are scanned ahead of the next
+     * file to hand over.
+     */
+    private static final class OrderedResults {
 
-        for (SourceCode squidSourceFile : squidSourceFiles) {
-            SourceFile squidFile = (SourceFile) squidSourceFile;
+        private final int count;
+        private final Semaphore room;
+        private final AtomicInteger nextClaim = new AtomicInteger();
+        private final BlockingQueue<Result> done = new LinkedBlockingQueue<Result>();
 
-            String relativePath = pathResolver.relativePath(fileSystem.baseDir(), new java.io.File(squidFile.getKey()));
-            InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasRelativePath(relativePath));
+        OrderedResults(int count, int maxAhead) {
+            this.count = count;
+            this.room = new Semaphore(maxAhead);
+        }
 
+        /**
+         * @return the index of the next file to scan, once there is room for its result, or -1 if all the files are taken
+         */
+        int claim() {
+            try {
+                room.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scanning Objective-C files", e);
+            }
+            int index = nextClaim.getAndIncrement();
+            if (index >= count) {
+                room.release();
+                return -1;
+            }
+            return index;
+        }
+
+        /**
+         * @param squidFile null if the file has not been scanned
+         */
+        void done(int index, SourceFile squidFile) {
+            done.add(new Result(index, squidFile));
+        }
+
+        /**
+         * Hands the scanned files over to the listener in the order of their indexes, until all the files are done
+         * or a worker failed.
+         */
+        void handOver(ObjectiveCScanListener listener, List<Future<?>> workers) throws InterruptedException, ExecutionException {
+            Map<Integer, Result> pending = Maps.newHashMap();
+            int next = 0;
+            while (next < count) {
+                Result result = done.poll(100, TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    if (checkWorkers(workers) && done.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                pending.put(result.index, result);
+                for (Result ready = pending.remove(next); ready != null; ready = pending.remove(next)) {
+                    if (ready.squidFile != null) {
+                        listener.fileScanned(ready.squidFile);
+                    }
+                    next++;
+                    room.release();
+                }
+            }
+        }
+
+        /**
+         * @return true if all the workers are done, the failure of a worker being thrown
+         */
+        private static boolean checkWorkers(List<Future<?>> workers) throws InterruptedException, ExecutionException {
+            boolean allDone = true;
+            for (Future<?> worker : workers) {
+                if (worker.isDone()) {
+                    worker.get();
+                } else {
+                    allDone = false;
+                }
+            }
+            return allDone;
+        }
+    }
+
+    private static final class Result {
+
+        private final int index;
+        private final SourceFile squidFile;
+
+        Result(int index, SourceFile squidFile) {
+            this.index = index;
+            this.squidFile = squidFile;
+        }
+    }
+
+    /**
+     * Files scanned by a worker, claimed one after the other while the scanner iterates over them. Moving to the next
+     * file marks the previous one as done, with the result the scanner gave for it, if any.
+     */
+    private static final class WorkerFiles extends AbstractCollection<java.io.File> implements ObjectiveCScanListener {
+
+        private final List<java.io.File> files;
+        private final OrderedResults results;
+        private final ObjectiveCScanProgress progress;
+        private int current = -1;
+        private SourceFile scanned;
+
+        WorkerFiles(List<java.io.File> files, OrderedResults results, ObjectiveCScanProgress progress) {
+            this.files = files;
+            this.results = results;
+            this.progress = progress;
+        }
+
+        @Override
+        public Iterator<java.io.File> iterator() {
+            return new AbstractIterator<java.io.File>() {
+                @Override
+                protected java.io.File computeNext() {
+                    finishCurrent();
+                    current = results.claim();
+                    if (current < 0) {
+                        return endOfData();
+                    }
+                    java.io.File file = files.get(current);
+                    progress.fileStarted(file);
+                    return file;
+                }
+            };
+        }
+
+        /**
+         * @return the number of files of the scan, of which this worker only scans a part
+         */
+        @Override
+        public int size() {
+            return files.size();
+        }
+
+        public void fileScanned(SourceFile squidFile) {
+            scanned = squidFile;
+        }
+
+        void finishCurrent() {
+            if (current >= 0) {
+                progress.fileDone(files.get(current), scanned);
+                results.done(current, scanned);
+                current = -1;
+                scanned = null;
+            }
+        }
+    }
+
+    /**
+     * Saves the results of a scanned file for this file and for all the files with the same content.
+     */
+    private void save(SourceFile squidFile) {
+        long start = profiler == null ? 0 : System.nanoTime();
+        java.io.File file = new java.io.File(squidFile.getKey());
+        save(file, squidFile);
+        List<java.io.File> copies = duplicates.get(file);
+        if (copies != null) {
+            for (java.io.File copy : copies) {
+                save(copy, squidFile);
+            }
+        }
+        release(squidFile);
+        if (profiler != null) {
+            profiler.add(ObjectiveCScanProfiler.Phase.SAVE, System.nanoTime() - start);
+        }
+    }
+
+    private void save(java.io.File file, SourceFile squidFile) {
+        String digest = digests.get(file.getAbsoluteFile());
+        if (digest != null) {
+            importGraph.put(file, digest, ObjectiveCImports.getImports(squidFile));
+        }
+
+        InputFile inputFile = inputFiles.get(file);
+
+        if (inputFile != null) {
             saveMeasures(inputFile, squidFile);
             saveIssues(inputFile, squidFile);
+        } else {
+            LOG.debug("Unable to find the input file of {}", file);
+        }
+    }
+
+    /**
+     * Drops the messages and functions of a saved file, which has already been removed from the squid tree, so that
+     * only the files being scanned are kept in memory.
+     */
+    private static void release(SourceFile squidFile) {
+        if (squidFile.getCheckMessages() != null) {
+            squidFile.getCheckMessages().clear();
+        }
+        if (squidFile.hasChildren()) {
+            squidFile.getChildren().clear();
         }
     }
 
@@ -122,8 +670,51 @@ public class ObjectiveCSquidSensor implements Sensor {
         context.saveMeasure(inputFile, CoreMetrics.FILES, squidFile.getDouble(ObjectiveCMetric.FILES));
         context.saveMeasure(inputFile, CoreMetrics.LINES, squidFile.getDouble(ObjectiveCMetric.LINES));
         context.saveMeasure(inputFile, CoreMetrics.NCLOC, squidFile.getDouble(ObjectiveCMetric.LINES_OF_CODE));
-        context.saveMeasure(inputFile, CoreMetrics.STATEMENTS, squidFile.getDouble(ObjectiveCMetric.STATEMENTS));
         context.saveMeasure(inputFile, CoreMetrics.COMMENT_LINES, squidFile.getDouble(ObjectiveCMetric.COMMENT_LINES));
+        saveFunctionMeasures(inputFile, squidFile);
+    }
+
+    /**
+     * Saves the statements of the file and, when Lizard is not used, the complexity measures it would have saved.
+     * Functions are the children of the file, whose measures are not aggregated yet when the file is saved.
+     */
+    private void saveFunctionMeasures(InputFile inputFile, SourceFile squidFile) {
+        int statements = 0;
+        int functions = 0;
+        // the complexity of the file does not count the blocks twice, unlike the sum of the complexity of its functions
+        int complexity = squidFile.getInt(ObjectiveCMetric.COMPLEXITY);
+        RangeDistributionBuilder functionDistribution = new RangeDistributionBuilder(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION, FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
+        if (squidFile.hasChildren()) {
+            for (SourceCode function : squidFile.getChildren()) {
+                statements += function.getInt(ObjectiveCMetric.STATEMENTS);
+                functions += function.getInt(ObjectiveCMetric.FUNCTIONS);
+                functionDistribution.add(function.getDouble(ObjectiveCMetric.COMPLEXITY));
+            }
+        }
+        context.saveMeasure(inputFile, CoreMetrics.STATEMENTS, (double) statements);
+
+        if (!isBuiltinComplexityEnabled(settings)) {
+            return;
+        }
+        context.saveMeasure(inputFile, CoreMetrics.COMPLEXITY, (double) complexity);
+        context.saveMeasure(inputFile, CoreMetrics.FUNCTIONS, (double) functions);
+        context.saveMeasure(inputFile, CoreMetrics.FILE_COMPLEXITY, (double) complexity);
+        RangeDistributionBuilder fileDistribution = new RangeDistributionBuilder(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION, FILES_DISTRIB_BOTTOM_LIMITS);
+        fileDistribution.add((double) complexity);
+        context.saveMeasure(inputFile, fileDistribution.build().setPersistenceMode(PersistenceMode.MEMORY));
+
+        if (functions > 0) {
+            context.saveMeasure(inputFile, CoreMetrics.FUNCTION_COMPLEXITY, (double) complexity / functions);
+            context.saveMeasure(inputFile, CoreMetrics.COMPLEXITY_IN_FUNCTIONS, (double) complexity);
+            context.saveMeasure(inputFile, functionDistribution.build().setPersistenceMode(PersistenceMode.MEMORY));
+        }
+    }
+
+    /**
+     * @return true if the complexity measures are computed by this sensor instead of being read from a Lizard report
+     */
+    public static boolean isBuiltinComplexityEnabled(Settings settings) {
+        return settings.hasKey(BUILTIN_COMPLEXITY_KEY) ? settings.getBoolean(BUILTIN_COMPLEXITY_KEY) : Boolean.parseBoolean(DEFAULT_BUILTIN_COMPLEXITY);
     }
 
     private void saveIssues(InputFile inputFile, SourceFile squidFile) {
@@ -134,7 +725,7 @@ public class ObjectiveCSquidSensor implements Sensor {
 
         if (messages != null && resource != null) {
             for (CheckMessage message : messages) {
-                RuleKey ruleKey = checks.ruleKey((SquidCheck<ObjectiveCGrammar>) message.getCheck());
+                RuleKey ruleKey = message.getCheck() instanceof RuleKey ? (RuleKey) message.getCheck() : ruleKeys.get(message.getCheck());
                 Issuable issuable = resourcePerspectives.as(Issuable.class, resource);
 
                 if (issuable != null) {
@@ -0,0 +1,115 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.colorizer;
+
+import org.sonar.api.source.Highlightable;
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.lexer.ObjectiveCLexerEngine;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+
+/**
+ * Highlights a file from its typed tokens, in a single pass over the token stream, with the same classes as
+ * {@link ObjectiveCColorizerFormat}:
+ * <ul>
+ * <li>strings, including <code>@"..."</code> ones and the header names of imports, and characters;</li>
+ * <li>comments, documentation comments (<code>/**</code>, <code>/*!</code>, <code>///</code> and <code>//!</code>) being
+ * told apart;</li>
+ * <li>keywords, including <code>@</code> directives;</li>
+ * <li>numbers;</li>
+ * <li>preprocessor directives, the whole line of a <code>#pragma</code> or of an unknown directive such as
+ * <code>#warning</code>, which is not made of code.</li>
+ * </ul>
+ */
+public final class ObjectiveCHighlighter {
+
+    static final String STRING = "s";
+    static final String COMMENT = "cd";
+    static final String DOCUMENTATION = "cppd";
+    static final String KEYWORD = "k";
+    static final String CONSTANT = "c";
+    static final String PREPROCESSOR = "p";
+
+    private ObjectiveCHighlighter() {
+    }
+
+    /**
+     * Adds the ranges of the tokens to the highlighting, in the order of the file, without calling
+     * {@link Highlightable.HighlightingBuilder#done()}.
+     */
+    public static void highlight(ObjectiveCTokenStream tokens, Highlightable.HighlightingBuilder highlighting) {
+        int size = tokens.size();
+        for (int i = 0; i < size; i++) {
+            int type = tokens.getType(i);
+            int start = tokens.getStart(i);
+            String typeOfText;
+            if (type == ObjectiveCLexerEngine.COMMENT) {
+                typeOfText = isDocumentation(tokens, i) ? DOCUMENTATION : COMMENT;
+            } else if (type == ObjectiveCLexerEngine.STRING || type == ObjectiveCLexerEngine.CHARACTER) {
+                typeOfText = STRING;
+            } else if (type == ObjectiveCLexerEngine.NUMBER) {
+                typeOfText = CONSTANT;
+            } else if (type == ObjectiveCLexerEngine.PREPROCESSOR) {
+                typeOfText = PREPROCESSOR;
+                i = lastTokenOfLine(tokens, i);
+            } else if (ObjectiveCLexerEngine.isKeyword(type)) {
+                ObjectiveCKeyword keyword = ObjectiveCLexerEngine.keyword(type);
+                if (keyword.getValue().charAt(0) != '#') {
+                    typeOfText = KEYWORD;
+                } else {
+                    typeOfText = PREPROCESSOR;
+                    if (keyword == ObjectiveCKeyword.HASH_PRAGMA) {
+                        i = lastTokenOfLine(tokens, i);
+                    }
+                }
+            } else {
+                continue;
+            }
+            highlighting.highlight(start, tokens.getStart(i) + tokens.getLength(i), typeOfText);
+        }
+    }
+
+    /**
+     * @return the index of the last token of the line of a directive, before any comment
+     */
+    private static int lastTokenOfLine(ObjectiveCTokenStream tokens, int index) {
+        int line = tokens.getLine(index);
+        int last = index;
+        while (last + 1 < tokens.size() && tokens.getLine(last + 1) == line && !tokens.isComment(last + 1)) {
+            last++;
+        }
+        return last;
+    }
+
+    private static boolean isDocumentation(ObjectiveCTokenStream tokens, int index) {
+        if (tokens.getLength(index) < 3) {
+            return false;
+        }
+        char[] buffer = tokens.getBuffer();
+        int start = tokens.getStart(index);
+        char second = buffer[start + 1];
+        char third = buffer[start + 2];
+        if (second == '*') {
+            // an empty block comment is not a documentation one
+            return (third == '*' || third == '!') && tokens.getLength(index) > 4;
+        }
+        return third == '/' || third == '!';
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.colorizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.source.Highlightable;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.InputFileIndex;
+import org.sonar.plugins.objectivec.ObjectiveCAnalysisTokenCache;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCPlugin;
+import org.sonar.plugins.objectivec.core.ObjectiveC;
+
+/**
+ * Saves the syntax highlighting of the Objective-C files computed by {@link ObjectiveCHighlighter}, which the platform
+ * uses instead of {@link ObjectiveCColorizerFormat} when rendering them. Runs after the squid sensor, so that the
+ * tokens of the files are taken from the token cache of the analysis when they are still in it.
+ */
+@Phase(name = Phase.Name.POST)
+public class ObjectiveCHighlightingSensor implements Sensor {
+
+    public static final String ENABLED_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".highlighting";
+    public static final String DEFAULT_ENABLED = "true";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCHighlightingSensor.class);
+
+    private final FileSystem fileSystem;
+    private final Settings settings;
+    private final ResourcePerspectives perspectives;
+    private final ObjectiveCExclusions exclusions;
+    private final ObjectiveCAnalysisTokenCache tokenCache;
+
+    public ObjectiveCHighlightingSensor(FileSystem fileSystem, Settings settings, ResourcePerspectives perspectives, ObjectiveCExclusions exclusions,
+            ObjectiveCAnalysisTokenCache tokenCache) {
+        this.fileSystem = fileSystem;
+        this.settings = settings;
+        this.perspectives = perspectives;
+        this.exclusions = exclusions;
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * @return true if the source code is highlighted by the plugin rather than by the generic tokenizers of the platform
+     */
+    public static boolean isEnabled(Settings settings) {
+        return settings.hasKey(ENABLED_KEY) ? settings.getBoolean(ENABLED_KEY) : Boolean.parseBoolean(DEFAULT_ENABLED);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+        return isEnabled(settings) && project.isRoot() && fileSystem.hasFiles(fileSystem.predicates().hasLanguage(ObjectiveC.KEY));
+    }
+
+    public void analyse(Project project, SensorContext context) {
+        List<File> files = exclusions.filter(fileSystem.files(fileSystem.predicates().hasLanguage(ObjectiveC.KEY)));
+
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration(fileSystem.encoding());
+        conf.setTokenCache(tokenCache);
+        ObjectiveCScannerPool scanners = new ObjectiveCScannerPool(conf);
+        // test files are only lexed here, their tokens are not cached
+        ObjectiveCScannerPool testScanners = new ObjectiveCScannerPool(new ObjectiveCConfiguration(fileSystem.encoding()));
+        InputFileIndex inputFiles = new InputFileIndex(fileSystem);
+
+        long start = System.currentTimeMillis();
+        int highlighted = 0;
+        for (File file : files) {
+            InputFile inputFile = inputFiles.get(file);
+            Highlightable highlightable = inputFile == null ? null : perspectives.as(Highlightable.class, inputFile);
+            if (highlightable == null) {
+                continue;
+            }
+            try {
+                Highlightable.HighlightingBuilder highlighting = highlightable.newHighlighting();
+                ObjectiveCScannerPool fileScanners = inputFile.type() == InputFile.Type.TEST ? testScanners : scanners;
+                ObjectiveCHighlighter.highlight(fileScanners.lex(file), highlighting);
+                highlighting.done();
+                highlighted++;
+            } catch (IOException e) {
+                LOG.warn("Unable to highlight " + file, e);
+            }
+        }
+        tokenCache.sensorDone();
+        LOG.info("Objective-C highlighting: {} files highlighted in {} ms", highlighted, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public String toString() {
+        return "Objective-C highlighting";
+    }
+
+}
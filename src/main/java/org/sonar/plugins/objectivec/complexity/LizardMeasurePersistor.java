@@ -27,6 +27,7 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
 import java.io.File;
 import java.util.List;
@@ -45,11 +46,13 @@ public class LizardMeasurePersistor {
     private final Project project;
     private final SensorContext sensorContext;
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
 
-    public LizardMeasurePersistor(final Project project, final SensorContext sensorContext, final FileSystem fileSystem) {
+    public LizardMeasurePersistor(final Project project, final SensorContext sensorContext, final FileSystem fileSystem, final ObjectiveCExclusions exclusions) {
         this.project = project;
         this.sensorContext = sensorContext;
         this.fileSystem = fileSystem;
+        this.exclusions = exclusions;
     }
 
     /**
@@ -64,6 +67,10 @@ public class LizardMeasurePersistor {
 
         for (Map.Entry<String, List<Measure>> entry : measures.entrySet()) {
             File file = new File(fileSystem.baseDir(), entry.getKey());
+            if (exclusions.isExcluded(file)) {
+                LOGGER.debug("Ignoring measures of excluded file {}", entry.getKey());
+                continue;
+            }
             InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasAbsolutePath(file.getAbsolutePath()));
 
             if (inputFile == null) {
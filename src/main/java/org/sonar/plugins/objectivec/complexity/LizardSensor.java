@@ -28,7 +28,9 @@ import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.ObjectiveCPlugin;
+import org.sonar.plugins.objectivec.ObjectiveCSquidSensor;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
 import java.io.File;
@@ -51,20 +53,22 @@ public class LizardSensor implements Sensor {
 
     private final Settings conf;
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
 
-    public LizardSensor(final FileSystem moduleFileSystem, final Settings config) {
+    public LizardSensor(final FileSystem moduleFileSystem, final Settings config, final ObjectiveCExclusions exclusions) {
         this.conf = config;
         this.fileSystem = moduleFileSystem;
+        this.exclusions = exclusions;
     }
 
     /**
      *
      * @param project
-     * @return true if the project is root the root project and uses Objective-C
+     * @return true if the project is root the root project and uses Objective-C, and the complexity is not computed by the plugin itself
      */
     @Override
     public boolean shouldExecuteOnProject(Project project) {
-        return project.isRoot() && fileSystem.languages().contains(ObjectiveC.KEY);
+        return project.isRoot() && fileSystem.languages().contains(ObjectiveC.KEY) && !ObjectiveCSquidSensor.isBuiltinComplexityEnabled(conf);
     }
 
     /**
@@ -77,7 +81,7 @@ public class LizardSensor implements Sensor {
         final String projectBaseDir = fileSystem.baseDir().getPath();
         Map<String, List<Measure>> measures = parseReportsIn(projectBaseDir, new LizardReportParser());
         LOGGER.info("Saving results of complexity analysis");
-        new LizardMeasurePersistor(project, sensorContext, fileSystem).saveMeasures(measures);
+        new LizardMeasurePersistor(project, sensorContext, fileSystem, exclusions).saveMeasures(measures);
     }
 
     /**
@@ -36,6 +36,7 @@ import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.ParsingUtils;
 import org.sonar.api.utils.StaxParser;
 import org.sonar.api.utils.XmlParserException;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
@@ -48,20 +49,22 @@ final class CoberturaReportParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(CoberturaReportParser.class);
 
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
     private final Project project;
     private final SensorContext context;
 
-    private CoberturaReportParser(FileSystem fileSystem, Project project, SensorContext context) {
+    private CoberturaReportParser(FileSystem fileSystem, ObjectiveCExclusions exclusions, Project project, SensorContext context) {
         this.fileSystem = fileSystem;
+        this.exclusions = exclusions;
         this.project = project;
         this.context = context;
     }
 
     /**
-     * Parse a Cobertura xml report and create measures accordingly
+     * Parse a Cobertura xml report and create measures accordingly, excluded files being ignored
      */
-    public static void parseReport(File xmlFile, FileSystem fileSystem, Project project, SensorContext context) {
-        new CoberturaReportParser(fileSystem, project, context).parse(xmlFile);
+    public static void parseReport(File xmlFile, FileSystem fileSystem, ObjectiveCExclusions exclusions, Project project, SensorContext context) {
+        new CoberturaReportParser(fileSystem, exclusions, project, context).parse(xmlFile);
     }
 
     private void parse(File xmlFile) {
@@ -87,6 +90,9 @@ final class CoberturaReportParser {
             for (Map.Entry<String, CoverageMeasuresBuilder> entry : builderByFilename.entrySet()) {
                 String filePath = entry.getKey();
                 File file = new File(fileSystem.baseDir(), filePath);
+                if (exclusions.isExcluded(file)) {
+                    continue;
+                }
                 InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasAbsolutePath(file.getAbsolutePath()));
 
                 if (inputFile == null) {
@@ -32,6 +32,7 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoverageMeasuresBuilder;
 import org.sonar.api.resources.Project;
 import org.sonar.api.scan.filesystem.PathResolver;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.ObjectiveCPlugin;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
@@ -49,13 +50,15 @@ public final class CoberturaSensor implements Sensor {
     private final Settings settings;
     private final FileSystem fileSystem;
     private final PathResolver pathResolver;
+    private final ObjectiveCExclusions exclusions;
     private Project project;
 
-    public CoberturaSensor(final FileSystem fileSystem, final PathResolver pathResolver, final Settings settings) {
+    public CoberturaSensor(final FileSystem fileSystem, final PathResolver pathResolver, final Settings settings, final ObjectiveCExclusions exclusions) {
 
         this.settings = settings;
         this.fileSystem = fileSystem;
         this.pathResolver = pathResolver;
+        this.exclusions = exclusions;
 
         reportFilesFinder = new ReportFilesFinder(settings, REPORT_PATTERN_KEY, DEFAULT_REPORT_PATTERN);
     }
@@ -73,7 +76,7 @@ public final class CoberturaSensor implements Sensor {
 
         for (final File report : reportFilesFinder.reportsIn(projectBaseDir)) {
             LOGGER.info("Processing coverage report {}", report);
-            CoberturaReportParser.parseReport(report, fileSystem, project, context);
+            CoberturaReportParser.parseReport(report, fileSystem, exclusions, project, context);
         }
 
     }
@@ -0,0 +1,252 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.objectivec.lexer.MappedBuffers;
+import org.sonar.plugins.objectivec.ObjectiveCSquidCache;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Lines, token counts and block hashes computed by {@link ObjectiveCDuplicationDetector} for the files of the previous
+ * analysis, stored in the working directory and keyed by the digest of the content of each file, so that only the files
+ * which changed are tokenized again. The whole cache is discarded when its fingerprint, made of the analysis version and
+ * of the settings the hashes depend on, does not match the current one.
+ *
+ * The stored file is mapped in memory: only the digests and the offsets of the entries are read when loading it, the
+ * hashes of a file being copied out of the mapping when the file is looked up. Lookups may be done on several threads,
+ * but not once the cache is saved: the mapping is released before the stored file is replaced.
+ */
+public class ObjectiveCBlockCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCBlockCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final String fingerprint;
+    private ByteBuffer previousData;
+    private final Map<String, Integer> previous;
+    private final ConcurrentMap<String, ObjectiveCDuplicationDetector.FileBlocks> current =
+        new ConcurrentHashMap<String, ObjectiveCDuplicationDetector.FileBlocks>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ObjectiveCBlockCache(File file, String fingerprint, ByteBuffer previousData, Map<String, Integer> previous) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.previousData = previousData;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the cache stored in <code>file</code>, or starts an empty one when it does not exist,
+     * cannot be read or has another fingerprint.
+     */
+    public static ObjectiveCBlockCache load(File file, String fingerprint) {
+        return load(file, ObjectiveCSquidCache.analysisVersion(), fingerprint);
+    }
+
+    static ObjectiveCBlockCache load(File file, String analysisVersion, String settingsFingerprint) {
+        String fingerprint = analysisVersion + '|' + settingsFingerprint;
+        Map<String, Integer> entries = Maps.newHashMap();
+        ByteBuffer data = null;
+        if (file.isFile()) {
+            FileInputStream input = null;
+            try {
+                input = new FileInputStream(file);
+                FileChannel channel = input.getChannel();
+                // the mapping stays valid once the channel is closed
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!readIndex(data, fingerprint, entries)) {
+                    LOG.info("Objective-C duplication cache is outdated and will be rebuilt");
+                    entries.clear();
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read the Objective-C duplication cache " + file + ", it will be rebuilt", e);
+                entries.clear();
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        if (entries.isEmpty()) {
+            // nothing will be read from the stored file, which is replaced when saving
+            MappedBuffers.unmap(data);
+            data = null;
+        }
+        return new ObjectiveCBlockCache(file, fingerprint, data, entries);
+    }
+
+    /**
+     * Reads the digest and the offset of every entry, skipping their hashes.
+     *
+     * @return false if the data has another format or fingerprint
+     */
+    private static boolean readIndex(ByteBuffer data, String fingerprint, Map<String, Integer> entries) throws IOException {
+        checkRemaining(data, 4);
+        if (data.getInt() != FORMAT_VERSION || !fingerprint.equals(readString(data))) {
+            return false;
+        }
+        checkRemaining(data, 4);
+        int count = data.getInt();
+        for (int i = 0; i < count; i++) {
+            String digest = readString(data);
+            int offset = data.position();
+            checkRemaining(data, 8);
+            long lineCount = data.getInt();
+            long blockCount = data.getInt();
+            long size = 4 * lineCount + 4 * (lineCount + 1) + 8 * blockCount;
+            checkRemaining(data, size);
+            data.position(data.position() + (int) size);
+            entries.put(digest, offset);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a string written by {@link DataOutputStream#writeUTF(String)}, which is made of ASCII characters
+     * for fingerprints and digests.
+     */
+    private static String readString(ByteBuffer data) throws IOException {
+        checkRemaining(data, 2);
+        byte[] bytes = new byte[data.getShort() & 0xFFFF];
+        checkRemaining(data, bytes.length);
+        data.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void checkRemaining(ByteBuffer data, long bytes) throws IOException {
+        if (bytes < 0 || data.remaining() < bytes) {
+            throw new IOException("Unexpected end of the cache at offset " + data.position());
+        }
+    }
+
+    /**
+     * @return the blocks stored for a file with the given digest, or <code>null</code>
+     */
+    ObjectiveCDuplicationDetector.FileBlocks get(String digest) {
+        Integer offset = previous.get(digest);
+        if (offset == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        ByteBuffer data = previousData.duplicate();
+        data.position(offset);
+        int[] lines = new int[data.getInt()];
+        long[] hashes = new long[data.getInt()];
+        int[] tokenCounts = new int[lines.length + 1];
+        data.asIntBuffer().get(lines);
+        data.position(data.position() + 4 * lines.length);
+        data.asIntBuffer().get(tokenCounts);
+        data.position(data.position() + 4 * tokenCounts.length);
+        data.asLongBuffer().get(hashes);
+
+        ObjectiveCDuplicationDetector.FileBlocks blocks = new ObjectiveCDuplicationDetector.FileBlocks(lines, tokenCounts, hashes);
+        current.put(digest, blocks);
+        hits.incrementAndGet();
+        return blocks;
+    }
+
+    void put(String digest, ObjectiveCDuplicationDetector.FileBlocks blocks) {
+        current.put(digest, blocks);
+    }
+
+    /**
+     * Writes the entries read or added during this analysis, replacing the previous content of the cache.
+     */
+    public void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(fingerprint);
+            output.writeInt(current.size());
+            for (Map.Entry<String, ObjectiveCDuplicationDetector.FileBlocks> entry : current.entrySet()) {
+                ObjectiveCDuplicationDetector.FileBlocks blocks = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeInt(blocks.lines.length);
+                output.writeInt(blocks.hashes.length);
+                for (int line : blocks.lines) {
+                    output.writeInt(line);
+                }
+                for (int tokenCount : blocks.tokenCounts) {
+                    output.writeInt(tokenCount);
+                }
+                for (long hash : blocks.hashes) {
+                    output.writeLong(hash);
+                }
+            }
+            output.close();
+            releasePreviousData();
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete " + file);
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to write the Objective-C duplication cache " + file, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(temporary);
+        }
+    }
+
+    /**
+     * Unmaps the stored file, which cannot be deleted on some platforms while it is mapped.
+     */
+    private void releasePreviousData() {
+        ByteBuffer data = previousData;
+        previousData = null;
+        previous.clear();
+        if (data != null && !MappedBuffers.unmap(data)) {
+            LOG.debug("Unable to unmap the Objective-C duplication cache {}", file);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+}
@@ -19,28 +19,59 @@
  */
 package org.sonar.plugins.objectivec.cpd;
 
-import java.nio.charset.Charset;
-
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
+import net.sourceforge.pmd.cpd.Tokens;
 
 import org.sonar.api.batch.AbstractCpdMapping;
 import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Language;
 import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.ObjectiveCAnalysisTokenCache;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCPlugin;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
 public class ObjectiveCCpdMapping extends AbstractCpdMapping {
 
+    public static final String IGNORE_LITERALS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".cpd.ignoreLiterals";
+    public static final String DEFAULT_IGNORE_LITERALS = "false";
+    public static final String IGNORE_IMPORTS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".cpd.ignoreImports";
+    public static final String DEFAULT_IGNORE_IMPORTS = "false";
+
     private final ObjectiveC language;
-    private final Charset charset;
+    private final ObjectiveCScannerPool scanners;
+    private final ObjectiveCExclusions exclusions;
+    private final boolean ignoreLiterals;
+    private final boolean ignoreImports;
+    private final boolean builtin;
 
-    public ObjectiveCCpdMapping(ObjectiveC language, FileSystem fs) {
+    public ObjectiveCCpdMapping(ObjectiveC language, FileSystem fs, ObjectiveCExclusions exclusions, Settings settings,
+            ObjectiveCAnalysisTokenCache tokenCache) {
         this.language = language;
-        this.charset = fs.encoding();
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration(fs.encoding());
+        conf.setTokenCache(tokenCache);
+        this.scanners = new ObjectiveCScannerPool(conf);
+        this.exclusions = exclusions;
+        this.ignoreLiterals = settings.hasKey(IGNORE_LITERALS_KEY) ? settings.getBoolean(IGNORE_LITERALS_KEY) : Boolean.parseBoolean(DEFAULT_IGNORE_LITERALS);
+        this.ignoreImports = settings.hasKey(IGNORE_IMPORTS_KEY) ? settings.getBoolean(IGNORE_IMPORTS_KEY) : Boolean.parseBoolean(DEFAULT_IGNORE_IMPORTS);
+        this.builtin = ObjectiveCCpdSensor.isBuiltin(settings);
     }
 
     public Tokenizer getTokenizer() {
-        return new ObjectiveCTokenizer(charset);
+        if (builtin) {
+            // duplications are detected by ObjectiveCCpdSensor, the engine of the platform is given no token
+            return new Tokenizer() {
+                public void tokenize(SourceCode source, Tokens tokens) {
+                    tokens.add(TokenEntry.getEOF());
+                }
+            };
+        }
+        return new ObjectiveCTokenizer(scanners, exclusions, ignoreLiterals, ignoreImports);
     }
 
     public Language getLanguage() {
@@ -0,0 +1,240 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.InputFileIndex;
+import org.sonar.plugins.objectivec.ObjectiveCAnalysisTokenCache;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCFileDigests;
+import org.sonar.plugins.objectivec.ObjectiveCPlugin;
+import org.sonar.plugins.objectivec.ObjectiveCSquidSensor;
+import org.sonar.plugins.objectivec.core.ObjectiveC;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Detects duplicated code with {@link ObjectiveCDuplicationDetector} instead of the CPD engine of the platform,
+ * when enabled, and saves the same measures and duplications data as the platform. Runs after the squid sensor,
+ * so that files it scanned without parser are not lexed again.
+ *
+ * When the analysis cache of the squid sensor is enabled, the blocks of the files are kept in an
+ * {@link ObjectiveCBlockCache} in the working directory for the next analyses.
+ */
+@Phase(name = Phase.Name.POST)
+public class ObjectiveCCpdSensor implements Sensor {
+
+    public static final String BUILTIN_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".cpd.builtin";
+    public static final String DEFAULT_BUILTIN = "false";
+    public static final String MINIMUM_LINES_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".cpd.minimumLines";
+    public static final String DEFAULT_MINIMUM_LINES = "10";
+    public static final String MINIMUM_TOKENS_KEY = ObjectiveCPlugin.PROPERTY_PREFIX + ".cpd.minimumTokens";
+    public static final String DEFAULT_MINIMUM_TOKENS = "100";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectiveCCpdSensor.class);
+
+    private static final String CACHE_FILE = "objectivec-cpd.cache";
+
+    private final FileSystem fileSystem;
+    private final Settings settings;
+    private final ObjectiveCExclusions exclusions;
+    private final ObjectiveCFileDigests fileDigests;
+    private final ObjectiveCAnalysisTokenCache tokenCache;
+
+    public ObjectiveCCpdSensor(FileSystem fileSystem, Settings settings, ObjectiveCExclusions exclusions, ObjectiveCFileDigests fileDigests,
+            ObjectiveCAnalysisTokenCache tokenCache) {
+        this.fileSystem = fileSystem;
+        this.settings = settings;
+        this.exclusions = exclusions;
+        this.fileDigests = fileDigests;
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * @return true if duplications are detected by the plugin rather than by the CPD engine of the platform
+     */
+    public static boolean isBuiltin(Settings settings) {
+        return settings.hasKey(BUILTIN_KEY) ? settings.getBoolean(BUILTIN_KEY) : Boolean.parseBoolean(DEFAULT_BUILTIN);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+        return isBuiltin(settings) && project.isRoot() && fileSystem.hasFiles(fileSystem.predicates().hasLanguage(ObjectiveC.KEY));
+    }
+
+    public void analyse(Project project, SensorContext context) {
+        List<File> files = exclusions.filter(fileSystem.files(fileSystem.predicates().and(
+            fileSystem.predicates().hasLanguage(ObjectiveC.KEY), fileSystem.predicates().hasType(InputFile.Type.MAIN))));
+
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration(fileSystem.encoding());
+        conf.setTokenCache(tokenCache);
+        ObjectiveCScannerPool scanners = new ObjectiveCScannerPool(conf);
+        boolean ignoreLiterals = booleanSetting(ObjectiveCCpdMapping.IGNORE_LITERALS_KEY, ObjectiveCCpdMapping.DEFAULT_IGNORE_LITERALS);
+        boolean ignoreImports = booleanSetting(ObjectiveCCpdMapping.IGNORE_IMPORTS_KEY, ObjectiveCCpdMapping.DEFAULT_IGNORE_IMPORTS);
+        int minimumLines = intSetting(MINIMUM_LINES_KEY, DEFAULT_MINIMUM_LINES);
+        ObjectiveCTokenizer tokenizer = new ObjectiveCTokenizer(scanners, exclusions, ignoreLiterals, ignoreImports);
+        ObjectiveCBlockCache blockCache = booleanSetting(ObjectiveCSquidSensor.CACHE_KEY, ObjectiveCSquidSensor.DEFAULT_CACHE)
+            ? ObjectiveCBlockCache.load(new File(fileSystem.workDir(), CACHE_FILE), cacheFingerprint(minimumLines, ignoreLiterals, ignoreImports))
+            : null;
+        Map<File, String> digests = Maps.newHashMap();
+        if (blockCache != null) {
+            for (File file : files) {
+                String digest = fileDigests.digest(file);
+                if (digest != null) {
+                    digests.put(file, digest);
+                }
+            }
+        }
+        ObjectiveCDuplicationDetector detector = new ObjectiveCDuplicationDetector(scanners, tokenizer,
+            minimumLines, intSetting(MINIMUM_TOKENS_KEY, DEFAULT_MINIMUM_TOKENS), threads(), blockCache, digests);
+
+        long start = System.currentTimeMillis();
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> duplications = detector.detect(files);
+        tokenCache.sensorDone();
+        LOG.info("Objective-C duplications: {} of {} files duplicated, detected in {} ms",
+            new Object[] {duplications.size(), files.size(), System.currentTimeMillis() - start});
+        if (blockCache != null) {
+            LOG.info("Objective-C duplication cache: {} hits, {} misses", blockCache.getHits(), blockCache.getMisses());
+            blockCache.save();
+        }
+
+        InputFileIndex inputFiles = new InputFileIndex(fileSystem);
+        Map<File, String> keys = Maps.newHashMap();
+        for (File file : files) {
+            InputFile inputFile = inputFiles.get(file);
+            Resource resource = inputFile == null ? null : context.getResource(inputFile);
+            if (resource != null) {
+                keys.put(file, resource.getEffectiveKey());
+            }
+        }
+        for (Map.Entry<File, List<ObjectiveCDuplicationDetector.Duplication>> entry : duplications.entrySet()) {
+            InputFile inputFile = inputFiles.get(entry.getKey());
+            if (inputFile != null && keys.containsKey(entry.getKey())) {
+                save(context, inputFile, entry.getKey(), entry.getValue(), keys);
+            }
+        }
+    }
+
+    private static void save(SensorContext context, InputFile inputFile, File file, List<ObjectiveCDuplicationDetector.Duplication> duplications,
+            Map<File, String> keys) {
+        Set<Integer> duplicatedLines = Sets.newHashSet();
+        int duplicatedBlocks = 0;
+        for (ObjectiveCDuplicationDetector.Duplication duplication : duplications) {
+            duplicatedBlocks += addLines(duplication.getOrigin(), file, duplicatedLines);
+            for (ObjectiveCDuplicationDetector.Part copy : duplication.getCopies()) {
+                duplicatedBlocks += addLines(copy, file, duplicatedLines);
+            }
+        }
+        context.saveMeasure(inputFile, CoreMetrics.DUPLICATED_FILES, 1.0);
+        context.saveMeasure(inputFile, CoreMetrics.DUPLICATED_LINES, (double) duplicatedLines.size());
+        context.saveMeasure(inputFile, CoreMetrics.DUPLICATED_BLOCKS, (double) duplicatedBlocks);
+        context.saveMeasure(inputFile, new Measure(CoreMetrics.DUPLICATIONS_DATA, toXml(duplications, keys)).setPersistenceMode(PersistenceMode.DATABASE));
+    }
+
+    /**
+     * @return 1 if the part is in the file, its lines being added to the lines, 0 otherwise
+     */
+    private static int addLines(ObjectiveCDuplicationDetector.Part part, File file, Set<Integer> lines) {
+        if (!part.getFile().equals(file)) {
+            return 0;
+        }
+        for (int line = part.getStartLine(); line <= part.getEndLine(); line++) {
+            lines.add(line);
+        }
+        return 1;
+    }
+
+    /**
+     * @return the duplications data, in the format of the CPD engine of the platform: one group per duplication,
+     * made of the origin block followed by the blocks of the copies
+     */
+    static String toXml(List<ObjectiveCDuplicationDetector.Duplication> duplications, Map<File, String> keys) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<duplications>");
+        for (ObjectiveCDuplicationDetector.Duplication duplication : duplications) {
+            xml.append("<g>");
+            appendBlock(xml, duplication.getOrigin(), keys);
+            for (ObjectiveCDuplicationDetector.Part copy : duplication.getCopies()) {
+                appendBlock(xml, copy, keys);
+            }
+            xml.append("</g>");
+        }
+        xml.append("</duplications>");
+        return xml.toString();
+    }
+
+    private static void appendBlock(StringBuilder xml, ObjectiveCDuplicationDetector.Part part, Map<File, String> keys) {
+        String key = keys.get(part.getFile());
+        if (key == null) {
+            return;
+        }
+        xml.append("<b s=\"").append(part.getStartLine())
+            .append("\" l=\"").append(part.getLines())
+            .append("\" r=\"").append(StringEscapeUtils.escapeXml(key))
+            .append("\"/>");
+    }
+
+    /**
+     * Cached blocks only hold for the same encoding, number of lines of a block and tokenizer settings. The analysis
+     * version is added by the cache.
+     */
+    private String cacheFingerprint(int minimumLines, boolean ignoreLiterals, boolean ignoreImports) {
+        return fileSystem.encoding().name() + "|" + minimumLines + "|" + ignoreLiterals + "|" + ignoreImports;
+    }
+
+    private boolean booleanSetting(String key, String defaultValue) {
+        return settings.hasKey(key) ? settings.getBoolean(key) : Boolean.parseBoolean(defaultValue);
+    }
+
+    private int intSetting(String key, String defaultValue) {
+        return settings.hasKey(key) ? settings.getInt(key) : Integer.parseInt(defaultValue);
+    }
+
+    private int threads() {
+        int threads = intSetting(ObjectiveCSquidSensor.THREADS_KEY, ObjectiveCSquidSensor.DEFAULT_THREADS);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String toString() {
+        return "Objective-C duplications";
+    }
+
+}
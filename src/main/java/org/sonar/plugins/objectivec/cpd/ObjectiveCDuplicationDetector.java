@@ -0,0 +1,532 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonar.objectivec.ObjectiveCScannerPool;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Finds duplicated code in Objective-C files the way the CPD engine of the platform does: the tokens kept by
+ * {@link ObjectiveCTokenizer} are grouped by line, a block is made of a fixed number of consecutive lines holding
+ * tokens, and code is duplicated when a run of consecutive blocks is found identical somewhere else and holds
+ * enough tokens.
+ *
+ * The files are lexed and the hashes of their blocks are rolled on several threads. All the blocks are then
+ * indexed by hash in an open addressing table made of primitive arrays, and the blocks of every file are looked up
+ * in the table, again on several threads, so that the detection is linear in the number of blocks as long as
+ * the same block is not found in many places.
+ *
+ * When a {@link ObjectiveCBlockCache} is given, the blocks of the files which did not change since the previous
+ * analysis are read from it instead of being computed again, the files being looked up by the digests computed
+ * by the other sensors of the analysis.
+ */
+public class ObjectiveCDuplicationDetector {
+
+    private static final long LINE_MULTIPLIER = 1000003L;
+    private static final long BLOCK_MULTIPLIER = 0x5DEECE66DL;
+
+    private final ObjectiveCScannerPool scanners;
+    private final ObjectiveCTokenizer tokenizer;
+    private final int blockLines;
+    private final int minimumTokens;
+    private final int threads;
+    private final ObjectiveCBlockCache blockCache;
+    private final Map<File, String> digests;
+
+    public ObjectiveCDuplicationDetector(ObjectiveCScannerPool scanners, ObjectiveCTokenizer tokenizer, int blockLines, int minimumTokens, int threads) {
+        this(scanners, tokenizer, blockLines, minimumTokens, threads, null, Collections.<File, String>emptyMap());
+    }
+
+    /**
+     * @param blockLines the number of lines holding tokens of a block, which is the minimum number of such lines of a duplication
+     * @param minimumTokens the minimum number of tokens of a duplication
+     * @param blockCache the blocks of the previous analysis, computed with the same tokenizer and number of lines, or <code>null</code>
+     * @param digests the digest of the content of each file, the files without digest being left out of the block cache
+     */
+    public ObjectiveCDuplicationDetector(ObjectiveCScannerPool scanners, ObjectiveCTokenizer tokenizer, int blockLines, int minimumTokens, int threads,
+            ObjectiveCBlockCache blockCache, Map<File, String> digests) {
+        this.scanners = scanners;
+        this.tokenizer = tokenizer;
+        this.blockLines = blockLines;
+        this.minimumTokens = minimumTokens;
+        this.threads = threads;
+        this.blockCache = blockCache;
+        this.digests = digests;
+    }
+
+    /**
+     * @return the duplications of each file which has some, in the order of the files, each file being the origin
+     * of its duplications
+     */
+    public Map<File, List<Duplication>> detect(final List<File> files) {
+        final FileBlocks[] blocks = new FileBlocks[files.size()];
+        runInParallel(files, new Task() {
+            public void run(int file) {
+                blocks[file] = hashBlocks(files.get(file));
+            }
+        });
+
+        final BlockIndex index = new BlockIndex(blocks);
+        final List<List<Duplication>> duplications = Lists.newArrayList(Collections.<List<Duplication>>nCopies(files.size(), null));
+        runInParallel(files, new Task() {
+            public void run(int file) {
+                duplications.set(file, findDuplications(file, files, blocks, index));
+            }
+        });
+
+        Map<File, List<Duplication>> result = Maps.newLinkedHashMap();
+        for (int file = 0; file < files.size(); file++) {
+            if (!duplications.get(file).isEmpty()) {
+                result.put(files.get(file), duplications.get(file));
+            }
+        }
+        return result;
+    }
+
+    private FileBlocks hashBlocks(File file) {
+        try {
+            String digest = blockCache == null ? null : digests.get(file);
+            if (digest == null) {
+                return computeBlocks(file);
+            }
+            FileBlocks blocks = blockCache.get(digest);
+            if (blocks == null) {
+                blocks = computeBlocks(file);
+                blockCache.put(digest, blocks);
+            }
+            return blocks;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read file '" + file.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private FileBlocks computeBlocks(File file) throws IOException {
+        LineHasher lines = new LineHasher();
+        tokenizer.tokens(scanners.lex(file), lines);
+        return lines.toBlocks(blockLines);
+    }
+
+    private List<Duplication> findDuplications(int file, List<File> files, FileBlocks[] blocks, BlockIndex index) {
+        FileBlocks origin = blocks[file];
+        List<Part[]> pairs = Lists.newArrayList();
+        for (int block = 0; block < origin.hashes.length; block++) {
+            for (int other = index.first(origin.hashes[block]); other >= 0; other = index.next(other)) {
+                int copyFile = index.file(other);
+                int copyBlock = index.block(other);
+                FileBlocks copy = blocks[copyFile];
+                if (copyFile == file && Math.abs(copyBlock - block) < blockLines) {
+                    // overlapping blocks of the same file
+                    continue;
+                }
+                if (block > 0 && copyBlock > 0 && origin.hashes[block - 1] == copy.hashes[copyBlock - 1]) {
+                    // already found from the previous blocks
+                    continue;
+                }
+                int length = 1;
+                while (block + length < origin.hashes.length && copyBlock + length < copy.hashes.length
+                        && origin.hashes[block + length] == copy.hashes[copyBlock + length]) {
+                    length++;
+                }
+                int lastLine = block + length + blockLines - 2;
+                if (origin.tokenCounts[lastLine + 1] - origin.tokenCounts[block] >= minimumTokens) {
+                    pairs.add(new Part[] {
+                        new Part(files.get(file), origin.lines[block], origin.lines[lastLine]),
+                        new Part(files.get(copyFile), copy.lines[copyBlock], copy.lines[copyBlock + length + blockLines - 2])});
+                }
+            }
+        }
+
+        Map<Part, Duplication> byOrigin = Maps.newHashMap();
+        for (Part[] pair : removeCovered(pairs)) {
+            Duplication duplication = byOrigin.get(pair[0]);
+            if (duplication == null) {
+                duplication = new Duplication(pair[0]);
+                byOrigin.put(pair[0], duplication);
+            }
+            if (!duplication.copies.contains(pair[1])) {
+                duplication.copies.add(pair[1]);
+            }
+        }
+        List<Duplication> duplications = Lists.newArrayList(byOrigin.values());
+        for (Duplication duplication : duplications) {
+            Collections.sort(duplication.copies, PART_ORDER);
+        }
+        Collections.sort(duplications, new Comparator<Duplication>() {
+            public int compare(Duplication left, Duplication right) {
+                return PART_ORDER.compare(left.origin, right.origin);
+            }
+        });
+        return duplications;
+    }
+
+    /**
+     * @return the pairs whose origin and copy are not both within the origin and the copy of another pair, as happens
+     * in code made of repeated lines. The pairs are swept by the start of their origin, the widest first, so that
+     * a pair is only compared with the kept pairs whose origin is not over yet.
+     */
+    private static List<Part[]> removeCovered(List<Part[]> pairs) {
+        List<Part[]> sorted = Lists.newArrayList(pairs);
+        Collections.sort(sorted, PAIR_SWEEP_ORDER);
+        List<Part[]> kept = Lists.newArrayList();
+        List<Part[]> open = Lists.newArrayList();
+        for (Part[] pair : sorted) {
+            for (Iterator<Part[]> openPairs = open.iterator(); openPairs.hasNext();) {
+                if (openPairs.next()[0].endLine < pair[0].startLine) {
+                    openPairs.remove();
+                }
+            }
+            if (!isCovered(pair, open)) {
+                kept.add(pair);
+                open.add(pair);
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isCovered(Part[] pair, List<Part[]> others) {
+        for (Part[] other : others) {
+            if (other[0].contains(pair[0]) && other[1].contains(pair[1])
+                    && !(other[0].equals(pair[0]) && other[1].equals(pair[1]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the task for every file, the largest files first, on as many threads as configured.
+     */
+    private void runInParallel(final List<File> files, final Task task) {
+        final Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer left, Integer right) {
+                long difference = files.get(right).length() - files.get(left).length();
+                return difference < 0 ? -1 : difference > 0 ? 1 : left.compareTo(right);
+            }
+        });
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            public void run() {
+                for (int i = next.getAndIncrement(); i < order.length; i = next.getAndIncrement()) {
+                    task.run(order[i]);
+                }
+            }
+        };
+
+        if (threads <= 1) {
+            worker.run();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = Lists.newArrayList();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(worker));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while detecting duplications in Objective-C files", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pairs by start of their origin, then by decreasing size of their origin and of their copy, so that a pair
+     * comes after the pairs it is within.
+     */
+    private static final Comparator<Part[]> PAIR_SWEEP_ORDER = new Comparator<Part[]>() {
+        public int compare(Part[] left, Part[] right) {
+            if (left[0].startLine != right[0].startLine) {
+                return left[0].startLine - right[0].startLine;
+            }
+            if (left[0].endLine != right[0].endLine) {
+                return right[0].endLine - left[0].endLine;
+            }
+            return right[1].getLines() - left[1].getLines();
+        }
+    };
+
+    private static final Comparator<Part> PART_ORDER = new Comparator<Part>() {
+        public int compare(Part left, Part right) {
+            int byFile = left.file.compareTo(right.file);
+            if (byFile != 0) {
+                return byFile;
+            }
+            return left.startLine != right.startLine ? left.startLine - right.startLine : left.endLine - right.endLine;
+        }
+    };
+
+    private interface Task {
+
+        void run(int file);
+
+    }
+
+    /**
+     * Lines of a file, from the line of their first token to the line of their last token.
+     */
+    public static final class Part {
+
+        private final File file;
+        private final int startLine;
+        private final int endLine;
+
+        Part(File file, int startLine, int endLine) {
+            this.file = file;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getStartLine() {
+            return startLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getLines() {
+            return endLine - startLine + 1;
+        }
+
+        boolean contains(Part other) {
+            return file.equals(other.file) && startLine <= other.startLine && other.endLine <= endLine;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Part)) {
+                return false;
+            }
+            Part other = (Part) object;
+            return file.equals(other.file) && startLine == other.startLine && endLine == other.endLine;
+        }
+
+        @Override
+        public int hashCode() {
+            return (file.hashCode() * 31 + startLine) * 31 + endLine;
+        }
+
+        @Override
+        public String toString() {
+            return file.getPath() + ":" + startLine + "-" + endLine;
+        }
+
+    }
+
+    /**
+     * Lines of a file, and the places where they are copied, in the same file or in other ones.
+     */
+    public static final class Duplication {
+
+        private final Part origin;
+        private final List<Part> copies = Lists.newArrayList();
+
+        Duplication(Part origin) {
+            this.origin = origin;
+        }
+
+        public Part getOrigin() {
+            return origin;
+        }
+
+        public List<Part> getCopies() {
+            return Collections.unmodifiableList(copies);
+        }
+
+    }
+
+    /**
+     * Hashes the tokens of each line holding tokens.
+     */
+    private static final class LineHasher implements ObjectiveCTokenizer.TokenHandler {
+
+        private int[] lines = new int[64];
+        private long[] hashes = new long[64];
+        private int[] tokenCounts = new int[65];
+        private int size;
+
+        public void token(String image, int line) {
+            if (size == 0 || lines[size - 1] != line) {
+                if (size == lines.length) {
+                    lines = Arrays.copyOf(lines, size * 2);
+                    hashes = Arrays.copyOf(hashes, size * 2);
+                    tokenCounts = Arrays.copyOf(tokenCounts, size * 2 + 1);
+                }
+                lines[size] = line;
+                hashes[size] = 0;
+                tokenCounts[size + 1] = tokenCounts[size];
+                size++;
+            }
+            hashes[size - 1] = hashes[size - 1] * LINE_MULTIPLIER + image.hashCode();
+            tokenCounts[size]++;
+        }
+
+        FileBlocks toBlocks(int blockLines) {
+            long[] blockHashes = new long[Math.max(0, size - blockLines + 1)];
+            if (blockHashes.length > 0) {
+                long power = 1;
+                long hash = 0;
+                for (int i = 0; i < blockLines; i++) {
+                    hash = hash * BLOCK_MULTIPLIER + hashes[i];
+                    if (i > 0) {
+                        power *= BLOCK_MULTIPLIER;
+                    }
+                }
+                blockHashes[0] = hash;
+                for (int i = 1; i < blockHashes.length; i++) {
+                    hash = (hash - hashes[i - 1] * power) * BLOCK_MULTIPLIER + hashes[i + blockLines - 1];
+                    blockHashes[i] = hash;
+                }
+            }
+            return new FileBlocks(Arrays.copyOf(lines, size), Arrays.copyOf(tokenCounts, size + 1), blockHashes);
+        }
+
+    }
+
+    static final class FileBlocks {
+
+        /**
+         * Line of each line holding tokens.
+         */
+        final int[] lines;
+        /**
+         * Number of tokens before each line holding tokens, followed by the number of tokens of the file.
+         */
+        final int[] tokenCounts;
+        /**
+         * Hash of the block starting at each line holding tokens, but the last lines which cannot start a block.
+         */
+        final long[] hashes;
+
+        FileBlocks(int[] lines, int[] tokenCounts, long[] hashes) {
+            this.lines = lines;
+            this.tokenCounts = tokenCounts;
+            this.hashes = hashes;
+        }
+
+    }
+
+    /**
+     * Blocks of all the files indexed by hash. Blocks are numbered across files, and the blocks of each hash
+     * are chained through their numbers.
+     */
+    private static final class BlockIndex {
+
+        private final int[] fileStarts;
+        private final int[] blockFiles;
+        private final long[] keys;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        BlockIndex(FileBlocks[] files) {
+            fileStarts = new int[files.length + 1];
+            for (int file = 0; file < files.length; file++) {
+                fileStarts[file + 1] = fileStarts[file] + files[file].hashes.length;
+            }
+            int blocks = fileStarts[files.length];
+            int capacity = 2;
+            while (capacity < 2L * blocks) {
+                capacity <<= 1;
+            }
+            mask = capacity - 1;
+            keys = new long[capacity];
+            heads = new int[capacity];
+            next = new int[blocks];
+            blockFiles = new int[blocks];
+            for (int file = 0; file < files.length; file++) {
+                long[] hashes = files[file].hashes;
+                for (int block = 0; block < hashes.length; block++) {
+                    int number = fileStarts[file] + block;
+                    blockFiles[number] = file;
+                    int slot = slot(hashes[block]);
+                    keys[slot] = hashes[block];
+                    // numbers are stored plus one, 0 marking empty slots and the ends of chains
+                    next[number] = heads[slot];
+                    heads[slot] = number + 1;
+                }
+            }
+        }
+
+        private int slot(long hash) {
+            long mixed = hash * 0x9E3779B97F4A7C15L;
+            int slot = (int) (mixed >>> 32) & mask;
+            while (heads[slot] != 0 && keys[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @return the number of a block with the hash, or -1 if there is none
+         */
+        int first(long hash) {
+            return heads[slot(hash)] - 1;
+        }
+
+        /**
+         * @return the number of the next block with the same hash, or -1 if there is none
+         */
+        int next(int number) {
+            return next[number] - 1;
+        }
+
+        int file(int number) {
+            return blockFiles[number];
+        }
+
+        int block(int number) {
+            return number - fileStarts[blockFiles[number]];
+        }
+
+    }
+
+}
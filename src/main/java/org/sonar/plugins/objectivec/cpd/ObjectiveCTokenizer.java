@@ -21,41 +21,135 @@ package org.sonar.plugins.objectivec.cpd;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.List;
 
 import net.sourceforge.pmd.cpd.SourceCode;
 import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
 
-import org.sonar.objectivec.ObjectiveCConfiguration;
-import org.sonar.objectivec.lexer.ObjectiveCLexer;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.api.ObjectiveCPunctuator;
+import org.sonar.objectivec.lexer.ObjectiveCLexerEngine;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
-import com.sonar.sslr.api.Token;
-import com.sonar.sslr.impl.Lexer;
+import com.sonar.sslr.api.TokenType;
 
+/**
+ * Hands the tokens of the lexer to CPD, comments excluded. Keywords and punctuators share the constant image
+ * of their token type instead of a copy of their text.
+ *
+ * Optionally, string, character and number literals are replaced by one placeholder per kind of literal,
+ * so that code copied with other literals is still a duplication, and the <code>#import</code>,
+ * <code>#include</code> and <code>@import</code> directives are left out, as blocks of them are not worth reporting.
+ */
 public class ObjectiveCTokenizer implements Tokenizer {
 
-    private final Charset charset;
+    static final String STRING_PLACEHOLDER = "$STRING";
+    static final String CHARACTER_PLACEHOLDER = "$CHARACTER";
+    static final String NUMBER_PLACEHOLDER = "$NUMBER";
+
+    private final ObjectiveCScannerPool scanners;
+    private final ObjectiveCExclusions exclusions;
+    private final boolean ignoreLiterals;
+    private final boolean ignoreImports;
+
+    public ObjectiveCTokenizer(ObjectiveCScannerPool scanners, ObjectiveCExclusions exclusions) {
+        this(scanners, exclusions, false, false);
+    }
 
-    public ObjectiveCTokenizer(Charset charset) {
-        this.charset = charset;
+    public ObjectiveCTokenizer(ObjectiveCScannerPool scanners, ObjectiveCExclusions exclusions, boolean ignoreLiterals, boolean ignoreImports) {
+        this.scanners = scanners;
+        this.exclusions = exclusions;
+        this.ignoreLiterals = ignoreLiterals;
+        this.ignoreImports = ignoreImports;
     }
 
     public void tokenize(SourceCode source, Tokens cpdTokens) throws IOException {
-        Lexer lexer = ObjectiveCLexer.create(new ObjectiveCConfiguration(charset));
-        String fileName = source.getFileName();
-        List<Token> tokens = lexer.lex(new File(fileName));
-        for (Token token : tokens) {
-            TokenEntry cpdToken = new TokenEntry(getTokenImage(token), fileName, token.getLine());
-            cpdTokens.add(cpdToken);
+        final String fileName = source.getFileName();
+        if (exclusions.isExcluded(new File(fileName))) {
+            // generated or vendored code is not read, and cannot be duplicated
+            cpdTokens.add(TokenEntry.getEOF());
+            return;
         }
+        final Tokens entries = cpdTokens;
+        ObjectiveCTokenStream tokens = scanners.lex(new File(fileName));
+        tokens(tokens, new TokenHandler() {
+            public void token(String image, int line) {
+                entries.add(new TokenEntry(image, fileName, line));
+            }
+        });
+        // end of file token, as produced by the SSLR lexer
+        cpdTokens.add(new TokenEntry("EOF", fileName, tokens.getLineCount()));
         cpdTokens.add(TokenEntry.getEOF());
     }
 
-    private String getTokenImage(Token token) {
-        return token.getValue();
+    /**
+     * Hands the tokens of the stream which are compared for duplications to the handler, in order,
+     * end of file excluded.
+     */
+    void tokens(ObjectiveCTokenStream tokens, TokenHandler handler) {
+        int i = 0;
+        while (i < tokens.size()) {
+            if (tokens.isComment(i)) {
+                i++;
+            } else if (ignoreImports && isImport(tokens.getTokenType(i))) {
+                i = skipImport(tokens, i);
+            } else {
+                handler.token(image(tokens, i), tokens.getLine(i));
+                i++;
+            }
+        }
+    }
+
+    private String image(ObjectiveCTokenStream tokens, int index) {
+        TokenType type = tokens.getTokenType(index);
+        if (type instanceof ObjectiveCKeyword || type instanceof ObjectiveCPunctuator) {
+            return type.getValue();
+        }
+        if (ignoreLiterals) {
+            switch (tokens.getType(index)) {
+                case ObjectiveCLexerEngine.STRING:
+                    return STRING_PLACEHOLDER;
+                case ObjectiveCLexerEngine.CHARACTER:
+                    return CHARACTER_PLACEHOLDER;
+                case ObjectiveCLexerEngine.NUMBER:
+                    return NUMBER_PLACEHOLDER;
+                default:
+                    break;
+            }
+        }
+        return tokens.getValue(index);
+    }
+
+    private static boolean isImport(TokenType type) {
+        return type == ObjectiveCKeyword.HASH_IMPORT || type == ObjectiveCKeyword.HASH_INCLUDE || type == ObjectiveCKeyword.AT_IMPORT;
+    }
+
+    /**
+     * @return the index of the first token after the directive starting at <code>index</code>: the end of its line
+     * for <code>#import</code> and <code>#include</code>, the end of its module name and semicolon for <code>@import</code>
+     */
+    private static int skipImport(ObjectiveCTokenStream tokens, int index) {
+        int i = index + 1;
+        if (tokens.getTokenType(index) == ObjectiveCKeyword.AT_IMPORT) {
+            while (i < tokens.size() && (tokens.getType(i) == ObjectiveCLexerEngine.IDENTIFIER || tokens.getTokenType(i) == ObjectiveCPunctuator.DOT)) {
+                i++;
+            }
+            return i < tokens.size() && tokens.getTokenType(i) == ObjectiveCPunctuator.SEMICOLON ? i + 1 : i;
+        }
+        int line = tokens.getLine(index);
+        while (i < tokens.size() && tokens.getLine(i) == line) {
+            i++;
+        }
+        return i;
+    }
+
+    interface TokenHandler {
+
+        void token(String image, int line);
+
     }
 
 }
@@ -33,6 +33,7 @@ import org.sonar.api.issue.Issuable;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.Project;
 import org.sonar.api.rule.RuleKey;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -44,14 +45,16 @@ public class FauxPasReportParser {
     private final SensorContext context;
     private final ResourcePerspectives resourcePerspectives;
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FauxPasReportParser.class);
 
-    public FauxPasReportParser(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem) {
+    public FauxPasReportParser(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem, final ObjectiveCExclusions exclusions) {
         project = p;
         context = c;
         this.resourcePerspectives = resourcePerspectives;
         this.fileSystem = fileSystem;
+        this.exclusions = exclusions;
     }
 
     public void parseReport(File reportFile) {
@@ -83,7 +86,7 @@ public class FauxPasReportParser {
 
         String filePath = (String)diagnosticJson.get("file");
 
-        if (filePath != null) {
+        if (filePath != null && !exclusions.isExcluded(filePath)) {
 
 
             InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasAbsolutePath(filePath));
@@ -29,6 +29,7 @@ import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.api.rules.Violation;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.ObjectiveCPlugin;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
@@ -47,11 +48,13 @@ public class FauxPasSensor implements Sensor {
     private final Settings conf;
     private final FileSystem fileSystem;
     private final ResourcePerspectives resourcePerspectives;
+    private final ObjectiveCExclusions exclusions;
 
-    public FauxPasSensor(final FileSystem moduleFileSystem, final Settings config, final ResourcePerspectives resourcePerspectives) {
+    public FauxPasSensor(final FileSystem moduleFileSystem, final Settings config, final ResourcePerspectives resourcePerspectives, final ObjectiveCExclusions exclusions) {
         this.conf = config;
         this.fileSystem = moduleFileSystem;
         this.resourcePerspectives = resourcePerspectives;
+        this.exclusions = exclusions;
     }
 
     @Override
@@ -64,7 +67,7 @@ public class FauxPasSensor implements Sensor {
 
         final String projectBaseDir = fileSystem.baseDir().getPath();
 
-        FauxPasReportParser parser = new FauxPasReportParser(module, context, resourcePerspectives, fileSystem);
+        FauxPasReportParser parser = new FauxPasReportParser(module, context, resourcePerspectives, fileSystem, exclusions);
         parseReportIn(projectBaseDir, parser);
     }
 
@@ -35,6 +35,7 @@ import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.resources.Project;
 import org.sonar.api.rules.Violation;
 import org.sonar.api.utils.StaxParser;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
 final class OCLintParser {
 
@@ -42,12 +43,14 @@ final class OCLintParser {
     private final SensorContext context;
     private final ResourcePerspectives resourcePerspectives;
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
 
-    public OCLintParser(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem) {
+    public OCLintParser(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem, final ObjectiveCExclusions exclusions) {
         project = p;
         context = c;
         this.resourcePerspectives = resourcePerspectives;
         this.fileSystem = fileSystem;
+        this.exclusions = exclusions;
     }
 
     public void parseReport(final File file) {
@@ -66,7 +69,7 @@ final class OCLintParser {
 
         try {
             final StaxParser parser = new StaxParser(
-                    new OCLintXMLStreamHandler(project, context, resourcePerspectives, fileSystem));
+                    new OCLintXMLStreamHandler(project, context, resourcePerspectives, fileSystem, exclusions));
             parser.parse(inputStream);
         } catch (final XMLStreamException e) {
             LoggerFactory.getLogger(getClass()).error(
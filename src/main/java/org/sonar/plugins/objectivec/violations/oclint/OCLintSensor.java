@@ -31,6 +31,7 @@ import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.ObjectiveCPlugin;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
@@ -41,11 +42,13 @@ public final class OCLintSensor implements Sensor {
     private final Settings conf;
     private final FileSystem fileSystem;
     private final ResourcePerspectives resourcePerspectives;
+    private final ObjectiveCExclusions exclusions;
 
-    public OCLintSensor(final FileSystem fileSystem, final Settings config, final ResourcePerspectives resourcePerspectives) {
+    public OCLintSensor(final FileSystem fileSystem, final Settings config, final ResourcePerspectives resourcePerspectives, final ObjectiveCExclusions exclusions) {
         this.conf = config;
         this.fileSystem = fileSystem;
         this.resourcePerspectives = resourcePerspectives;
+        this.exclusions = exclusions;
     }
 
     public boolean shouldExecuteOnProject(final Project project) {
@@ -56,7 +59,7 @@ public final class OCLintSensor implements Sensor {
 
     public void analyse(final Project project, final SensorContext context) {
         final String projectBaseDir = fileSystem.baseDir().getPath();
-        final OCLintParser parser = new OCLintParser(project, context, resourcePerspectives, fileSystem);
+        final OCLintParser parser = new OCLintParser(project, context, resourcePerspectives, fileSystem, exclusions);
 
         parseReportIn(projectBaseDir, parser);
 
@@ -35,6 +35,7 @@ import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.Project;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.StaxParser.XmlStreamHandler;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 
 final class OCLintXMLStreamHandler implements XmlStreamHandler {
     private static final int PMD_MINIMUM_PRIORITY = 5;
@@ -42,12 +43,14 @@ final class OCLintXMLStreamHandler implements XmlStreamHandler {
     private final SensorContext context;
     private final ResourcePerspectives resourcePerspectives;
     private final FileSystem fileSystem;
+    private final ObjectiveCExclusions exclusions;
 
-    public OCLintXMLStreamHandler(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem) {
+    public OCLintXMLStreamHandler(final Project p, final SensorContext c, final ResourcePerspectives resourcePerspectives, final FileSystem fileSystem, final ObjectiveCExclusions exclusions) {
         project = p;
         context = c;
         this.resourcePerspectives = resourcePerspectives;
         this.fileSystem = fileSystem;
+        this.exclusions = exclusions;
     }
 
     public void stream(final SMHierarchicCursor rootCursor) throws XMLStreamException {
@@ -61,6 +64,10 @@ final class OCLintXMLStreamHandler implements XmlStreamHandler {
     private void collectIssuesFor(final SMInputCursor file) throws XMLStreamException {
 
         final String filePath = file.getAttrValue("name");
+        if (exclusions.isExcluded(filePath)) {
+            LoggerFactory.getLogger(getClass()).debug("Ignoring violations of excluded file {}", filePath);
+            return;
+        }
         LoggerFactory.getLogger(getClass()).debug("Collection violations for {}", filePath);
         final InputFile inputFile = findResource(filePath);
         if (fileExists(inputFile)) {
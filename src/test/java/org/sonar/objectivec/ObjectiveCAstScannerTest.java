@@ -24,6 +24,8 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 import org.sonar.objectivec.api.ObjectiveCMetric;
@@ -51,4 +53,18 @@ public class ObjectiveCAstScannerTest {
         assertThat(file.getNoSonarTagLines().size(), is(1));
     }
 
+    @Test
+    public void metrics_from_tokens() {
+        File sample = new File("src/test/resources/objcSample.h");
+        SourceFile expected = ObjectiveCAstScanner.scanSingleFile(sample);
+        List<SourceFile> files = ObjectiveCAstScanner.scanMetrics(new ObjectiveCConfiguration(), Arrays.asList(sample));
+        assertThat(files.size(), is(1));
+        SourceFile file = files.get(0);
+        assertThat(file.getKey(), is(expected.getKey()));
+        for (ObjectiveCMetric metric : new ObjectiveCMetric[] {ObjectiveCMetric.FILES, ObjectiveCMetric.LINES, ObjectiveCMetric.LINES_OF_CODE, ObjectiveCMetric.COMMENT_LINES}) {
+            assertThat(file.getInt(metric), is(expected.getInt(metric)));
+        }
+        assertThat(file.getNoSonarTagLines(), is(expected.getNoSonarTagLines()));
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.squidbridge.AstScanner;
+
+public class ObjectiveCScanProfilerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final File sample = new File("src/test/resources/objcSample.h");
+
+    @Test
+    public void keep_slowest_files() {
+        ObjectiveCScanProfiler profiler = new ObjectiveCScanProfiler(2);
+        profiler.addFile(new File("a.m"), 3);
+        profiler.addFile(new File("b.m"), 1);
+        profiler.addFile(new File("c.m"), 5);
+        profiler.addFile(new File("d.m"), 2);
+        assertThat(profiler.getSlowestFiles(), is(Arrays.asList("c.m", "a.m")));
+    }
+
+    @Test
+    public void profile_scan_from_tokens() {
+        ObjectiveCScanProfiler profiler = new ObjectiveCScanProfiler(10);
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration();
+        conf.setProfiler(profiler);
+        ObjectiveCAstScanner.scanMetrics(conf, Arrays.asList(sample));
+        assertThat(profiler.getCount(ObjectiveCScanProfiler.Phase.LEXER), is(1L));
+        assertThat(profiler.getCount(ObjectiveCScanProfiler.Phase.PARSER), is(0L));
+        assertThat(profiler.getVisitors().containsKey("ObjectiveCMetricsVisitor"), is(true));
+        assertThat(profiler.getSlowestFiles(), is(Arrays.asList(sample.getPath())));
+    }
+
+    @Test
+    public void profile_parsed_scan() {
+        ObjectiveCScanProfiler profiler = new ObjectiveCScanProfiler(10);
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration();
+        conf.setProfiler(profiler);
+        AstScanner<ObjectiveCGrammar> scanner = ObjectiveCAstScanner.create(conf);
+        scanner.scanFiles(Arrays.asList(sample));
+        assertThat(profiler.getCount(ObjectiveCScanProfiler.Phase.LEXER), is(1L));
+        assertThat(profiler.getCount(ObjectiveCScanProfiler.Phase.PARSER), is(1L));
+        assertThat(profiler.getCount(ObjectiveCScanProfiler.Phase.VISITORS), is(1L));
+        assertThat(profiler.getVisitors().get("ObjectiveCMetricsVisitor")[1], greaterThan(2L));
+        assertThat(profiler.getSlowestFiles().size(), is(1));
+    }
+
+    @Test
+    public void write_json() throws Exception {
+        ObjectiveCScanProfiler profiler = new ObjectiveCScanProfiler(10);
+        profiler.add(ObjectiveCScanProfiler.Phase.SAVE, 2000000);
+        profiler.addVisitor("FooCheck", 1000000);
+        profiler.addFile(sample, 3000000);
+        File json = temp.newFile("profile.json");
+        profiler.writeJson(json);
+        String content = FileUtils.readFileToString(json);
+        assertThat(content, containsString("\"save\":{"));
+        assertThat(content, containsString("\"FooCheck\":{"));
+        assertThat(content, containsString("\"slowestFiles\":[{"));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.squidbridge.api.SourceFile;
+
+public class ObjectiveCScanWatchdogTest {
+
+    private final File sample = new File("src/test/resources/objcSample.h");
+    private final File profile = new File("src/test/resources/Profile.m");
+
+    @Test
+    public void skips_large_files() {
+        ObjectiveCScanWatchdog watchdog = new ObjectiveCScanWatchdog(sample.length(), 0, 0);
+        List<File> files = watchdog.filterBySize(Arrays.asList(sample, profile));
+        assertThat(files, is(Arrays.asList(sample)));
+        assertThat(watchdog.getTrips().size(), is(1));
+        assertThat(watchdog.getTrips().get(0).getFile(), is(profile));
+        assertThat(watchdog.getTrips().get(0).getLimit(), is(ObjectiveCScanWatchdog.Limit.FILE_SIZE));
+    }
+
+    @Test
+    public void stops_files_with_too_many_tokens() {
+        ObjectiveCScanWatchdog watchdog = new ObjectiveCScanWatchdog(0, 2, 0);
+        assertThat(watchdog.limitsLexing(), is(true));
+        ObjectiveCScanWatchdog.Watch watch = watchdog.watch(sample);
+        assertThat(watch.tokenLexed(), is(true));
+        assertThat(watch.tokenLexed(), is(true));
+        assertThat(watch.tokenLexed(), is(false));
+        assertThat(watchdog.getTrips().get(0).getLimit(), is(ObjectiveCScanWatchdog.Limit.TOKENS));
+        assertThat(watchdog.takeStopped(sample), is(true));
+        assertThat(watchdog.takeStopped(sample), is(false));
+    }
+
+    @Test
+    public void skips_stopped_files_when_parsing() {
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration();
+        conf.setWatchdog(new ObjectiveCScanWatchdog(0, 2, 0));
+        final List<String> scanned = new ArrayList<String>();
+        ObjectiveCAstScanner.create(conf, new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile file) {
+                scanned.add(file.getKey());
+            }
+        }).scanFiles(Arrays.asList(sample));
+        assertThat(scanned.isEmpty(), is(true));
+        assertThat(conf.getWatchdog().getTrips().size(), is(1));
+        assertThat(conf.getWatchdog().takeStopped(sample), is(false));
+    }
+
+    @Test
+    public void skips_stopped_files_when_measuring_tokens() {
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration();
+        conf.setWatchdog(new ObjectiveCScanWatchdog(0, 30, 0));
+        List<SourceFile> scanned = ObjectiveCAstScanner.scanMetrics(conf, Arrays.asList(sample, profile));
+        assertThat(scanned.size(), is(1));
+        assertThat(scanned.get(0).getKey(), is(sample.getAbsolutePath()));
+        assertThat(scanned.get(0).getInt(ObjectiveCMetric.LINES_OF_CODE), is(5));
+        assertThat(conf.getWatchdog().getTrips().size(), is(1));
+        assertThat(conf.getWatchdog().getTrips().get(0).getFile(), is(profile));
+        assertThat(conf.getWatchdog().getTrips().get(0).getLimit(), is(ObjectiveCScanWatchdog.Limit.TOKENS));
+    }
+
+}
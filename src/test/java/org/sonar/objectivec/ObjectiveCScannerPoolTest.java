@@ -0,0 +1,122 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceFile;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.AstNode;
+
+public class ObjectiveCScannerPoolTest {
+
+    private final ObjectiveCScannerPool pool = new ObjectiveCScannerPool(new ObjectiveCConfiguration());
+    private final File sample = new File("src/test/resources/objcSample.h");
+
+    @Test
+    public void scan_file() throws Exception {
+        SourceFile expected = ObjectiveCAstScanner.scanSingleFile(sample);
+        for (int i = 0; i < 2; i++) {
+            SourceFile file = pool.scanFile(sample);
+            assertThat(file.getKey(), is(expected.getKey()));
+            for (ObjectiveCMetric metric : new ObjectiveCMetric[] {ObjectiveCMetric.FILES, ObjectiveCMetric.LINES, ObjectiveCMetric.LINES_OF_CODE, ObjectiveCMetric.COMMENT_LINES}) {
+                assertThat(file.getInt(metric), is(expected.getInt(metric)));
+            }
+            assertThat(file.getNoSonarTagLines(), is(expected.getNoSonarTagLines()));
+        }
+    }
+
+    @Test
+    public void scan_source() {
+        SourceFile file = pool.scanSource("Foo.m", "// Foo\n- (void)foo {\n    return;\n}\n");
+        assertThat(file.getKey(), is("Foo.m"));
+        assertThat(file.getInt(ObjectiveCMetric.LINES), is(5));
+        assertThat(file.getInt(ObjectiveCMetric.LINES_OF_CODE), is(3));
+        assertThat(file.getInt(ObjectiveCMetric.COMMENT_LINES), is(1));
+    }
+
+    @Test
+    public void scan_from_several_threads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < 40; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return pool.scanFile(sample).getInt(ObjectiveCMetric.LINES_OF_CODE);
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get(), is(5));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void scan_single_file_with_visitors_from_several_threads() throws Exception {
+        final SourceFile expected = ObjectiveCAstScanner.scanSingleFile(sample);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        FileCounter counter = new FileCounter();
+                        SourceFile file = pool.scanSingleFile(sample, counter);
+                        return file.getKey() + "=" + file.getInt(ObjectiveCMetric.LINES_OF_CODE) + "/" + counter.files;
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertThat(result.get(), is(expected.getKey() + "=" + expected.getInt(ObjectiveCMetric.LINES_OF_CODE) + "/1"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class FileCounter extends SquidAstVisitor<ObjectiveCGrammar> {
+
+        private int files;
+
+        @Override
+        public void visitFile(AstNode astNode) {
+            files++;
+        }
+
+    }
+
+}
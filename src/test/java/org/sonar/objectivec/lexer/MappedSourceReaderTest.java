@@ -0,0 +1,152 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedSourceReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void readsAscii() throws Exception {
+        assertDecodedAsByReader("[self init];\r\n", "UTF-8");
+        assertDecodedAsByReader("[self init];\r\n", "US-ASCII");
+        assertDecodedAsByReader("", "UTF-8");
+    }
+
+    @Test
+    public void readsLatin1() throws Exception {
+        assertDecodedAsByReader(bytes("x = 'caf", 0xE9, "';", 0xFF, 0x80), "ISO-8859-1");
+    }
+
+    @Test
+    public void readsUtf8Sequences() throws Exception {
+        // 2, 3 and 4 bytes, the last one being decoded as a surrogate pair
+        byte[] source = "NSString *s = @\"\u00e9\u20ac\ud83d\ude00\";\n".getBytes(UTF_8);
+        assertDecodedAsByReader(source, "UTF-8");
+
+        MappedSourceReader reader = new MappedSourceReader(UTF_8);
+        int length = reader.read(write(source));
+        String decoded = new String(reader.getBuffer(), 0, length);
+        assertThat(Character.isHighSurrogate(decoded.charAt(18)), is(true));
+        assertThat(decoded.codePointAt(18), is(0x1F600));
+    }
+
+    @Test
+    public void replacesMalformedUtf8AsReaders() throws Exception {
+        // lone continuation byte, invalid start byte, missing continuation byte
+        assertDecodedAsByReader(bytes("a", 0x80, "b", 0xFF, "c", 0xC3, 0x28, "d"), "UTF-8");
+        // overlong encoding of '/', encoded surrogate, code point above U+10FFFF
+        assertDecodedAsByReader(bytes("a", 0xC0, 0xAF, "b", 0xED, 0xA0, 0x80, "c", 0xF4, 0x90, 0x80, 0x80), "UTF-8");
+        // truncated sequence at the end of the file
+        assertDecodedAsByReader(bytes("a\u00e9", 0xE2, 0x82), "UTF-8");
+        // valid sequences after a malformed one are decoded by the charset
+        assertDecodedAsByReader(bytes("a", 0xFF, "\u00e9\ud83d\ude00"), "UTF-8");
+        assertDecodedAsByReader(bytes("a", 0xE9), "US-ASCII");
+    }
+
+    @Test
+    public void keepsByteOrderMarkAsReaders() throws Exception {
+        byte[] source = bytes(0xEF, 0xBB, 0xBF, "#import \"Foo.h\"\n");
+        assertDecodedAsByReader(source, "UTF-8");
+
+        MappedSourceReader reader = new MappedSourceReader(UTF_8);
+        reader.read(write(source));
+        assertThat(reader.getBuffer()[0], is('\ufeff'));
+    }
+
+    @Test
+    public void readsOtherCharsetsWithDecoder() throws Exception {
+        assertDecodedAsByReader("x = @\"\u00e9\u20ac\";\n".getBytes("UTF-16LE"), "UTF-16LE");
+        assertDecodedAsByReader("x = @\"\u00e9\u20ac\";\n".getBytes("windows-1252"), "windows-1252");
+    }
+
+    @Test
+    public void mapsLargeFilesAndReleasesThem() throws Exception {
+        StringBuilder source = new StringBuilder();
+        while (source.length() < MappedSourceReader.MAPPING_THRESHOLD) {
+            source.append("[self init\u00e9];\n");
+        }
+        File file = write(source.toString().getBytes(UTF_8));
+        assertThat(file.length(), greaterThan((long) MappedSourceReader.MAPPING_THRESHOLD));
+
+        MappedSourceReader reader = new MappedSourceReader(UTF_8);
+        int length = reader.read(file);
+        assertThat(new String(reader.getBuffer(), 0, length), equalTo(source.toString()));
+        assertThat(file.delete(), is(true));
+
+        // the buffer grown for the large file is reused for the next one
+        length = reader.read(write("int a;\n".getBytes(UTF_8)));
+        assertThat(new String(reader.getBuffer(), 0, length), equalTo("int a;\n"));
+        assertThat(reader.getLength(), is(length));
+    }
+
+    private void assertDecodedAsByReader(String source, String charset) throws Exception {
+        assertDecodedAsByReader(source.getBytes(charset), charset);
+    }
+
+    private void assertDecodedAsByReader(byte[] source, String charset) throws Exception {
+        String expected = IOUtils.toString(new InputStreamReader(new ByteArrayInputStream(source), charset));
+        MappedSourceReader reader = new MappedSourceReader(Charset.forName(charset));
+        int length = reader.read(write(source));
+        assertThat(new String(reader.getBuffer(), 0, length), equalTo(expected));
+    }
+
+    private File write(byte[] source) throws Exception {
+        File file = temp.newFile();
+        FileUtils.writeByteArrayToFile(file, source);
+        return file;
+    }
+
+    /**
+     * @param parts strings, encoded in UTF-8, and single bytes
+     */
+    private static byte[] bytes(Object... parts) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                bytes.write(((String) part).getBytes(UTF_8));
+            } else {
+                bytes.write((Integer) part);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+}
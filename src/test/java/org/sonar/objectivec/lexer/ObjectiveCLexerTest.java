@@ -29,6 +29,9 @@ import java.util.List;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.api.ObjectiveCPunctuator;
+import org.sonar.objectivec.api.ObjectiveCTokenType;
 
 import com.sonar.sslr.api.GenericTokenType;
 import com.sonar.sslr.api.Token;
@@ -63,7 +66,129 @@ public class ObjectiveCLexerTest {
 
     @Test
     public void lexLineOfCode() {
-        assertThat(lexer.lex("[self init];"), hasToken("[self", GenericTokenType.LITERAL));
+        List<Token> tokens = lexer.lex("[self init];");
+        assertThat(tokens.size(), equalTo(6));
+        assertThat(tokens, hasToken("[", ObjectiveCPunctuator.LBRACKET));
+        assertThat(tokens, hasToken("self", ObjectiveCKeyword.SELF));
+        assertThat(tokens, hasToken("init", GenericTokenType.IDENTIFIER));
+        assertThat(tokens, hasToken("]", ObjectiveCPunctuator.RBRACKET));
+        assertThat(tokens, hasToken(";", ObjectiveCPunctuator.SEMICOLON));
+    }
+
+    @Test
+    public void lexSlashOutsideOfComment() {
+        List<Token> tokens = lexer.lex("a/b");
+        assertThat(tokens.size(), equalTo(4));
+        assertThat(tokens, hasToken("a", GenericTokenType.IDENTIFIER));
+        assertThat(tokens, hasToken("/", ObjectiveCPunctuator.SLASH));
+        assertThat(tokens, hasToken("b", GenericTokenType.IDENTIFIER));
+    }
+
+    @Test
+    public void lexWhitespaceRun() {
+        List<Token> tokens = lexer.lex("[self  \t init];\r\n\f  return;");
+        assertThat(tokens.size(), equalTo(8));
+        assertThat(tokens.get(5).getValue(), equalTo("return"));
+        assertThat(tokens.get(5).getLine(), equalTo(2));
+        assertThat(tokens.get(5).getColumn(), equalTo(3));
+    }
+
+    @Test
+    public void lexUnterminatedMultiLinesComment() {
+        List<Token> tokens = lexer.lex("[self init];\n/* My Comment\n[self init];");
+        assertThat(tokens, hasComment("/* My Comment\n[self init];"));
+        assertThat(tokens.size(), equalTo(6));
+        assertThat(lexer.lex("/*/"), hasComment("/*/"));
+    }
+
+    @Test(timeout = 5000)
+    public void lexHugeMultiLinesComment() {
+        StringBuilder comment = new StringBuilder("/*");
+        while (comment.length() < 4 * 1024 * 1024) {
+            comment.append(" * [self init]; // /* ** / \"\n");
+        }
+        comment.append("*/");
+        List<Token> tokens = lexer.lex(comment + "\n[self init];");
+        assertThat(tokens.size(), equalTo(6));
+        assertThat(tokens.get(0).getTrivia().get(0).getToken().getValue().length(), equalTo(comment.length()));
+    }
+
+    @Test(timeout = 5000)
+    public void lexHugeUnterminatedMultiLinesComments() {
+        StringBuilder source = new StringBuilder("[self init];\n");
+        while (source.length() < 4 * 1024 * 1024) {
+            source.append("/* [self init];\n");
+        }
+        List<Token> tokens = lexer.lex(source.toString());
+        assertThat(tokens.size(), equalTo(6));
+        ObjectiveCTokenStream stream = ObjectiveCTokenStream.lex(source.toString());
+        assertThat(stream.size(), equalTo(6));
+        assertThat(stream.isComment(5), equalTo(true));
+    }
+
+    @Test
+    public void lexKeywords() {
+        assertThat(lexer.lex("@interface Foo : NSObject"), hasToken("@interface", ObjectiveCKeyword.AT_INTERFACE));
+        assertThat(lexer.lex("@implementation Foo"), hasToken("@implementation", ObjectiveCKeyword.AT_IMPLEMENTATION));
+        assertThat(lexer.lex("return YES;"), hasToken("YES", ObjectiveCKeyword.YES));
+        assertThat(lexer.lex("return NO;"), hasToken("NO", ObjectiveCKeyword.NO));
+        assertThat(lexer.lex("if (x) {}"), hasToken("if", ObjectiveCKeyword.IF));
+        assertThat(lexer.lex("interface"), hasToken("interface", GenericTokenType.IDENTIFIER));
+        assertThat(lexer.lex("@import Foundation;"), hasToken("@import", ObjectiveCKeyword.AT_IMPORT));
+        assertThat(lexer.lex("@foo"), hasToken("@", GenericTokenType.UNKNOWN_CHAR));
+    }
+
+    @Test
+    public void lexAllKeywords() {
+        for (ObjectiveCKeyword keyword : ObjectiveCKeyword.values()) {
+            assertThat(lexer.lex(keyword.getValue()), hasToken(keyword.getValue(), keyword));
+        }
+    }
+
+    @Test
+    public void lexPunctuators() {
+        assertThat(lexer.lex("a->b"), hasToken("->", ObjectiveCPunctuator.MINUSLT));
+        assertThat(lexer.lex("a <<= b"), hasToken("<<=", ObjectiveCPunctuator.LTLTEQ));
+        assertThat(lexer.lex("a && b"), hasToken("&&", ObjectiveCPunctuator.AMPAMP));
+        assertThat(lexer.lex("self.view"), hasToken(".", ObjectiveCPunctuator.DOT));
+        assertThat(lexer.lex("@import UIKit.UIView;"), hasToken(".", ObjectiveCPunctuator.DOT));
+    }
+
+    @Test
+    public void lexLiterals() {
+        assertThat(lexer.lex("x = @\"a // b\";"), hasToken("@\"a // b\"", ObjectiveCTokenType.STRING_LITERAL));
+        assertThat(lexer.lex("x = \"a \\\" b\";"), hasToken("\"a \\\" b\"", ObjectiveCTokenType.STRING_LITERAL));
+        assertThat(lexer.lex("x = 'c';"), hasToken("'c'", ObjectiveCTokenType.CHARACTER_LITERAL));
+        assertThat(lexer.lex("x = 0x1Fu;"), hasToken("0x1Fu", ObjectiveCTokenType.NUMERIC_LITERAL));
+        assertThat(lexer.lex("x = 1.5e-3f;"), hasToken("1.5e-3f", ObjectiveCTokenType.NUMERIC_LITERAL));
+        assertThat(lexer.lex("x = .5;"), hasToken(".5", ObjectiveCTokenType.NUMERIC_LITERAL));
+    }
+
+    @Test
+    public void lexPreprocessorLines() {
+        assertThat(lexer.lex("#import <UIKit/UIKit.h>"), hasToken("#import", ObjectiveCKeyword.HASH_IMPORT));
+        assertThat(lexer.lex("#import <UIKit/UIKit.h>"), hasToken("<UIKit/UIKit.h>", ObjectiveCTokenType.STRING_LITERAL));
+        assertThat(lexer.lex("#include \"Foo.h\""), hasToken("\"Foo.h\"", ObjectiveCTokenType.STRING_LITERAL));
+        assertThat(lexer.lex("  #  pragma mark - Foo"), hasToken("#  pragma", ObjectiveCKeyword.HASH_PRAGMA));
+        assertThat(lexer.lex("#warning Foo"), hasToken("#warning", ObjectiveCTokenType.PREPROCESSOR));
+        assertThat(lexer.lex("#define STR(x) #x"), hasToken("#", GenericTokenType.UNKNOWN_CHAR));
+        assertThat(lexer.lex("x = a < b;"), hasToken("<", ObjectiveCPunctuator.LT));
+    }
+
+    @Test
+    public void lexContinuedLines() {
+        List<Token> tokens = lexer.lex("#define MAX(a, b) \\\n    ((a) > (b) ? (a) : (b))\n\\\r\n#x");
+        assertThat(tokens, hasToken("#define", ObjectiveCKeyword.HASH_DEFINE));
+        assertThat(tokens, hasToken("\\", GenericTokenType.UNKNOWN_CHAR));
+        assertThat(tokens.get(7).getValue(), equalTo("\\"));
+        assertThat(tokens.get(8).getLine(), equalTo(2));
+        // a backslash alone on its line is a line of code, as with the baseline lexer, and the next line continues it
+        Token splice = tokens.get(tokens.size() - 4);
+        assertThat(splice.getValue(), equalTo("\\"));
+        assertThat(splice.getLine(), equalTo(3));
+        assertThat(tokens, hasToken("#", GenericTokenType.UNKNOWN_CHAR));
+        assertThat(tokens.get(tokens.size() - 3).getValue(), equalTo("#"));
+        assertThat(tokens.get(tokens.size() - 3).getLine(), equalTo(4));
     }
 
     @Test
@@ -76,7 +201,7 @@ public class ObjectiveCLexerTest {
     @Test
     public void lexSampleFile() {
         List<Token> tokens = lexer.lex(new File("src/test/resources/objcSample.h"));
-        assertThat(tokens.size(), equalTo(16));
+        assertThat(tokens.size(), equalTo(21));
         assertThat(tokens, hasToken(GenericTokenType.EOF));
     }
 
@@ -0,0 +1,139 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObjectiveCTokenCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final MappedSourceReader reader = new MappedSourceReader(UTF_8);
+
+    @Test
+    public void lexesFilesOnce() throws Exception {
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(1024 * 1024);
+        File file = write("Foo.m", "[self init];\n");
+
+        ObjectiveCTokenStream first = cache.lex(file, reader);
+        ObjectiveCTokenStream second = cache.lex(file, reader);
+
+        assertThat(second, sameInstance(first));
+        assertThat(first.getBuffer(), not(sameInstance(reader.getBuffer())));
+        assertThat(first.getValue(2), equalTo("init"));
+        assertThat(cache.getHits(), equalTo(1));
+        assertThat(cache.getMisses(), equalTo(1));
+    }
+
+    @Test
+    public void lexesChangedFilesAgain() throws Exception {
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(1024 * 1024);
+        File file = write("Foo.m", "[self init];\n");
+        cache.lex(file, reader);
+
+        FileUtils.write(file, "[self initWithFoo:foo];\n", "UTF-8");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertThat(cache.lex(file, reader).getValue(2), equalTo("initWithFoo"));
+        assertThat(cache.getMisses(), equalTo(2));
+    }
+
+    @Test
+    public void evictsReadStreamsOnly() throws Exception {
+        File a = write("A.m", "int a;\n");
+        File b = write("B.m", "int b;\n");
+        File c = write("C.m", "int c;\n");
+        long size = ObjectiveCTokenStream.lex("int a;\n").detach().getMemorySize();
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(2 * size);
+
+        cache.lex(a, reader);
+        cache.lex(b, reader);
+        // full of streams which have not been read yet
+        cache.lex(c, reader);
+        assertThat(cache.getMemorySize(), equalTo(2 * size));
+
+        cache.lex(a, reader);
+        cache.lex(b, reader);
+        assertThat(cache.getHits(), equalTo(2));
+
+        // a is the least recently used stream
+        cache.lex(c, reader);
+        cache.lex(b, reader);
+        cache.lex(a, reader);
+        assertThat(cache.getHits(), equalTo(3));
+    }
+
+    @Test
+    public void dropsStreamsReadByAllReaders() throws Exception {
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(1024 * 1024, 1);
+        File file = write("Foo.m", "[self init];\n");
+
+        cache.lex(file, reader);
+        cache.lex(file, reader);
+        assertThat(cache.getHits(), equalTo(1));
+        assertThat(cache.getMemorySize(), equalTo(0L));
+
+        cache.lex(file, reader);
+        assertThat(cache.getMisses(), equalTo(2));
+    }
+
+    @Test
+    public void dropsUnreadStreamsWhenCleared() throws Exception {
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(1024 * 1024, 1);
+        File file = write("Foo.m", "[self init];\n");
+        cache.lex(file, reader);
+
+        cache.clear();
+        assertThat(cache.getMemorySize(), equalTo(0L));
+
+        cache.lex(file, reader);
+        assertThat(cache.getHits(), equalTo(0));
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        ObjectiveCTokenCache cache = new ObjectiveCTokenCache(0);
+        File file = write("Foo.m", "[self init];\n");
+
+        assertThat(cache.lex(file, reader).getBuffer(), sameInstance(reader.getBuffer()));
+        assertThat(cache.getMemorySize(), equalTo(0L));
+    }
+
+    private File write(String name, String source) throws Exception {
+        File file = temp.newFile(name);
+        FileUtils.write(file, source, "UTF-8");
+        return file;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.lexer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sonar.sslr.api.Token;
+
+public class ObjectiveCTokenStreamTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void positions() {
+        ObjectiveCTokenStream stream = ObjectiveCTokenStream.lex("[self init];\r\n  // done\n");
+        assertThat(stream.size(), equalTo(6));
+        assertThat(stream.getValue(2), equalTo("init"));
+        assertThat(stream.getStart(2), equalTo(6));
+        assertThat(stream.getLength(2), equalTo(4));
+        assertThat(stream.getType(2), equalTo(ObjectiveCLexerEngine.IDENTIFIER));
+        assertThat(stream.isComment(5), equalTo(true));
+        assertThat(stream.getLine(5), equalTo(2));
+        assertThat(stream.getColumn(5), equalTo(2));
+        assertThat(stream.getLineCount(), equalTo(3));
+    }
+
+    @Test
+    public void sameTokensAsLexer() throws Exception {
+        assertSameTokens(new File("src/test/resources/objcSample.h"));
+        assertSameTokens(new File("src/test/resources/Profile.m"));
+    }
+
+    private static void assertSameTokens(File file) throws Exception {
+        List<Token> expected = ObjectiveCLexer.create().lex(file);
+        List<Token> actual = ObjectiveCTokenStream.lex(file, UTF_8).toTokens(file.toURI());
+
+        assertThat(actual.size(), equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameToken(actual.get(i), expected.get(i));
+            assertThat(actual.get(i).getTrivia().size(), equalTo(expected.get(i).getTrivia().size()));
+            for (int j = 0; j < expected.get(i).getTrivia().size(); j++) {
+                assertSameToken(actual.get(i).getTrivia().get(j).getToken(), expected.get(i).getTrivia().get(j).getToken());
+            }
+        }
+    }
+
+    private static void assertSameToken(Token actual, Token expected) {
+        assertThat(actual.getType(), equalTo(expected.getType()));
+        assertThat(actual.getValue(), equalTo(expected.getValue()));
+        assertThat(actual.getLine(), equalTo(expected.getLine()));
+        assertThat(actual.getColumn(), equalTo(expected.getColumn()));
+    }
+
+}
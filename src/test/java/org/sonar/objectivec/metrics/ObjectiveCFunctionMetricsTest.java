@@ -0,0 +1,125 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+
+public class ObjectiveCFunctionMetricsTest {
+
+    private static SourceFile scan(String source) {
+        ObjectiveCFunctionMetrics metrics = new ObjectiveCFunctionMetrics();
+        metrics.scan(ObjectiveCTokenStream.lex(source));
+        SourceFile file = new SourceFile("file.m", "file.m");
+        metrics.saveTo(file);
+        return file;
+    }
+
+    private static void assertFunction(SourceCode function, String signature, int complexity, int statements) {
+        assertThat(function.getName(), is(signature));
+        assertThat(function.getInt(ObjectiveCMetric.FUNCTIONS), is(1));
+        assertThat(function.getInt(ObjectiveCMetric.COMPLEXITY), is(complexity));
+        assertThat(function.getInt(ObjectiveCMetric.STATEMENTS), is(statements));
+    }
+
+    @Test
+    public void methods() {
+        SourceFile file = scan("@interface Foo : NSObject\n"
+            + "{\n  int count;\n}\n"
+            + "- (void)bar:(int)a baz:(NSString *)b;\n"
+            + "@end\n"
+            + "@implementation Foo\n"
+            + "- (void)bar:(int)a baz:(NSString *)b {\n"
+            + "  for (int i = 0; i < a; i++) {\n    NSLog(@\"%d\", i);\n  }\n"
+            + "  switch (a) {\n    case 1: break;\n    default: break;\n  }\n"
+            + "}\n"
+            + "+ (instancetype)shared { return a && b ? nil : self; }\n"
+            + "@end\n");
+        assertThat(file.getChildren().size(), is(2));
+        Iterator<SourceCode> functions = file.getChildren().iterator();
+        assertFunction(functions.next(), "+shared:17", 3, 1);
+        assertFunction(functions.next(), "-bar:baz::8", 3, 5);
+    }
+
+    @Test
+    public void functions_and_blocks() {
+        SourceFile file = scan("typedef NS_ENUM(NSInteger, Kind) {\n  KindA\n};\n"
+            + "static int helper(int x) {\n"
+            + "  do {\n    x--;\n  } while (x > 0);\n"
+            + "  dispatch_async(queue, ^{\n    if (x) { x++; }\n  });\n"
+            + "  return x;\n"
+            + "}\n");
+        assertThat(file.getChildren().size(), is(2));
+        Iterator<SourceCode> functions = file.getChildren().iterator();
+        assertFunction(functions.next(), "^1:8", 2, 2);
+        // the if statement of the block is also a decision point of the function
+        assertFunction(functions.next(), "helper:4", 3, 4);
+        assertThat(file.getInt(ObjectiveCMetric.COMPLEXITY), is(4));
+    }
+
+    @Test
+    public void nested_blocks() {
+        SourceFile file = scan("@implementation Foo\n"
+            + "- (void)run {\n"
+            + "  [self each:^(id x) {\n"
+            + "    if (x) {\n"
+            + "      [self each:^(id y) { return y ? y : x; }];\n"
+            + "    }\n"
+            + "  }];\n"
+            + "  if (a || b) { }\n"
+            + "}\n"
+            + "@end\n");
+        assertThat(file.getChildren().size(), is(3));
+        Iterator<SourceCode> functions = file.getChildren().iterator();
+        assertFunction(functions.next(), "-run:2", 5, 2);
+        assertFunction(functions.next(), "^1:3", 3, 2);
+        assertFunction(functions.next(), "^2:5", 2, 1);
+        // each decision point is counted once in the file
+        assertThat(file.getInt(ObjectiveCMetric.COMPLEXITY), is(7));
+    }
+
+    @Test
+    public void skip_else_branches_of_directives() {
+        SourceFile file = scan("void f() {\n#if DEBUG\n  if (a) {\n#else\n  if (b) {\n#endif\n    a = a ^ 1;\n  }\n}\n");
+        assertThat(file.getChildren().size(), is(1));
+        assertFunction(file.getChildren().iterator().next(), "f:1", 2, 2);
+    }
+
+    @Test
+    public void skip_continued_lines_of_directives() {
+        SourceFile file = scan("#define CHECK(x) \\\n  if (!(x)) { \\\n    return; \\\n  }\n"
+            + "void f() {\n  CHECK(a);\n}\n"
+            + "#define LOG(x) \\\r\n  do { NSLog(x); } while (0)\n"
+            + "void g() {\n}\n");
+        assertThat(file.getChildren().size(), is(2));
+        Iterator<SourceCode> functions = file.getChildren().iterator();
+        assertFunction(functions.next(), "f:5", 1, 1);
+        assertFunction(functions.next(), "g:10", 1, 0);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+import org.sonar.squidbridge.api.SourceFile;
+
+public class ObjectiveCImportsTest {
+
+    private static List<String> scan(String source) {
+        ObjectiveCImports imports = new ObjectiveCImports();
+        imports.scan(ObjectiveCTokenStream.lex(source));
+        SourceFile file = new SourceFile("file.m", "file.m");
+        imports.saveTo(file);
+        return ObjectiveCImports.getImports(file);
+    }
+
+    @Test
+    public void directives() {
+        assertThat(scan("#import \"Foo.h\"\n#include <UIKit/UIKit.h>\n#  import \"Bar/Baz.h\" // comment\n"),
+                is(Arrays.asList("\"Foo.h\"", "<UIKit/UIKit.h>", "\"Bar/Baz.h\"")));
+    }
+
+    @Test
+    public void modules() {
+        assertThat(scan("@import Foundation;\n@import UIKit.UIView;\n"), is(Arrays.asList("@Foundation", "@UIKit.UIView")));
+    }
+
+    @Test
+    public void all_branches_of_conditional_directives() {
+        assertThat(scan("#if TARGET_OS_IPHONE\n#import <UIKit/UIKit.h>\n#else\n#import <AppKit/AppKit.h>\n#endif\n"),
+                is(Arrays.asList("<UIKit/UIKit.h>", "<AppKit/AppKit.h>")));
+    }
+
+    @Test
+    public void ignore_other_tokens() {
+        assertThat(scan("#import FOO\n#define IMPORT \"Foo.h\"\nNSString *s = @\"#import \\\"Foo.h\\\"\";\n@import ;\n").isEmpty(), is(true));
+    }
+
+    @Test
+    public void no_imports_saved() {
+        assertThat(ObjectiveCImports.getImports(new SourceFile("file.m", "file.m")).isEmpty(), is(true));
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.objectivec.metrics;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.ObjectiveCAstScanner;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.parser.ObjectiveCParser;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.squidbridge.metrics.CommentsVisitor;
+import org.sonar.squidbridge.metrics.LinesOfCodeVisitor;
+import org.sonar.squidbridge.metrics.LinesVisitor;
+
+/**
+ * Compares the metrics visitor, and the same metrics computed from the tokens, with the squid bridge visitors it
+ * replaces.
+ */
+public class ObjectiveCMetricsVisitorTest {
+
+    private static final ObjectiveCMetric[] METRICS = {ObjectiveCMetric.LINES, ObjectiveCMetric.LINES_OF_CODE, ObjectiveCMetric.COMMENT_LINES};
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void sample_files() {
+        assertSameMetrics(new File("src/test/resources/objcSample.h"));
+        assertSameMetrics(new File("src/test/resources/Profile.m"));
+    }
+
+    @Test
+    public void multi_line_tokens() throws Exception {
+        File file = write("NSString *s = @\"first \\\nsecond\";\nNSString *t = @\"third \\\nfourth\"\n;\nchar c = '\\\n';\n");
+        assertSameMetrics(file);
+        // only the first line of a string going on over several lines is a line of code
+        assertThat(scanWithSquidBridgeVisitors(file, true).getInt(ObjectiveCMetric.LINES_OF_CODE), is(6));
+    }
+
+    @Test
+    public void continued_directives() throws Exception {
+        assertSameMetrics(write("#define MAX(a, b) \\\n    ((a) > (b) \\\n\\\n     ? (a) : (b))\n\nint x = MAX(1, 2);\n"));
+    }
+
+    @Test
+    public void unterminated_comments() throws Exception {
+        assertSameMetrics(write("int a;\n/* not terminated\n * NOSONAR\n\n * comment\n"));
+        assertSameMetrics(write("/* header\n * not terminated"));
+        assertSameMetrics(write("int a; /*/"));
+    }
+
+    @Test
+    public void header_and_trailing_comments() throws Exception {
+        assertSameMetrics(write("// header\n/*\n * Copyright\n */\n\n#import \"Foo.h\" // NOSONAR\n/** doc */\n- (void)foo {\n  // ----\n}\n// end"));
+        assertSameMetrics(write("\r\n/* a\r\n b */ int a;\r// c\r\n"));
+        assertSameMetrics(write(""));
+    }
+
+    private void assertSameMetrics(File file) {
+        for (boolean ignoreHeaderComments : new boolean[] {true, false}) {
+            SourceFile expected = scanWithSquidBridgeVisitors(file, ignoreHeaderComments);
+            ObjectiveCConfiguration conf = configuration(ignoreHeaderComments);
+            assertSameMetrics(file, expected, scanWithMetricsVisitor(file, conf));
+            List<SourceFile> fromTokens = ObjectiveCAstScanner.scanMetrics(conf, Arrays.asList(file));
+            assertSameMetrics(file, expected, fromTokens.get(0));
+        }
+    }
+
+    private static void assertSameMetrics(File file, SourceFile expected, SourceFile actual) {
+        for (ObjectiveCMetric metric : METRICS) {
+            assertThat(file.getName() + " " + metric, actual.getInt(metric), is(expected.getInt(metric)));
+        }
+        assertThat(file.getName() + " NOSONAR", actual.getNoSonarTagLines(), is(expected.getNoSonarTagLines()));
+    }
+
+    private static SourceFile scanWithMetricsVisitor(File file, ObjectiveCConfiguration conf) {
+        return scan(ObjectiveCAstScanner.create(conf), file);
+    }
+
+    /**
+     * Scans the file as the squid sensor did before the metrics visitor.
+     */
+    private static SourceFile scanWithSquidBridgeVisitors(File file, boolean ignoreHeaderComments) {
+        ObjectiveCConfiguration conf = configuration(ignoreHeaderComments);
+        SquidAstVisitorContextImpl<ObjectiveCGrammar> context = new SquidAstVisitorContextImpl<ObjectiveCGrammar>(new SourceProject("Objective-C Project"));
+        AstScanner.Builder<ObjectiveCGrammar> builder = AstScanner.<ObjectiveCGrammar> builder(context).setBaseParser(ObjectiveCParser.create(conf));
+        builder.withMetrics(ObjectiveCMetric.values());
+        builder.setCommentAnalyser(new ObjectiveCCommentAnalyser());
+        builder.setFilesMetric(ObjectiveCMetric.FILES);
+        builder.withSquidAstVisitor(new LinesVisitor<ObjectiveCGrammar>(ObjectiveCMetric.LINES));
+        builder.withSquidAstVisitor(new LinesOfCodeVisitor<ObjectiveCGrammar>(ObjectiveCMetric.LINES_OF_CODE));
+        builder.withSquidAstVisitor(CommentsVisitor.<ObjectiveCGrammar> builder().withCommentMetric(ObjectiveCMetric.COMMENT_LINES)
+                .withNoSonar(true)
+                .withIgnoreHeaderComment(ignoreHeaderComments)
+                .build());
+        return scan(builder.build(), file);
+    }
+
+    private static SourceFile scan(AstScanner<ObjectiveCGrammar> scanner, File file) {
+        scanner.scanFile(file);
+        return (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+    }
+
+    private static ObjectiveCConfiguration configuration(boolean ignoreHeaderComments) {
+        ObjectiveCConfiguration conf = new ObjectiveCConfiguration();
+        conf.setIgnoreHeaderComments(ignoreHeaderComments);
+        return conf;
+    }
+
+    private File write(String source) throws Exception {
+        File file = temp.newFile();
+        FileUtils.write(file, source, "UTF-8");
+        return file;
+    }
+
+}
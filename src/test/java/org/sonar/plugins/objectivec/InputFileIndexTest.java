@@ -0,0 +1,81 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+
+public class InputFileIndexTest {
+
+    private final File baseDir = new File("project").getAbsoluteFile();
+    private InputFile header;
+    private InputFile implementation;
+    private InputFileIndex index;
+
+    @Before
+    public void setUp() {
+        header = inputFile("App/Foo.h");
+        implementation = inputFile("App/Foo.m");
+        FileSystem fileSystem = mock(FileSystem.class);
+        when(fileSystem.predicates()).thenReturn(mock(FilePredicates.class));
+        when(fileSystem.inputFiles(any(FilePredicate.class))).thenReturn(Arrays.asList(header, implementation));
+        index = new InputFileIndex(fileSystem);
+    }
+
+    @Test
+    public void findsFilesByAbsolutePath() {
+        assertThat(index.get(new File(baseDir, "App/Foo.h").getAbsolutePath())).isSameAs(header);
+        assertThat(index.get(new File(baseDir, "App/Foo.m"))).isSameAs(implementation);
+    }
+
+    @Test
+    public void findsFilesByRelativePath() {
+        assertThat(index.get("App/Foo.h")).isSameAs(header);
+        assertThat(index.get("App\\Foo.m")).isSameAs(implementation);
+    }
+
+    @Test
+    public void returnsNullForMissingFiles() {
+        assertThat(index.get("App/Bar.h")).isNull();
+        assertThat(index.get(new File(baseDir, "Foo.h"))).isNull();
+    }
+
+    private InputFile inputFile(String relativePath) {
+        File file = new File(baseDir, relativePath);
+        InputFile inputFile = mock(InputFile.class);
+        when(inputFile.absolutePath()).thenReturn(file.getAbsolutePath().replace('\\', '/'));
+        when(inputFile.relativePath()).thenReturn(relativePath);
+        when(inputFile.file()).thenReturn(file);
+        return inputFile;
+    }
+
+}
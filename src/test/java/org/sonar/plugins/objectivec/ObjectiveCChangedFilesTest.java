@@ -0,0 +1,73 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+public class ObjectiveCChangedFilesTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File baseDir;
+    private Settings settings;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = temp.newFolder();
+        settings = new Settings();
+    }
+
+    @Test
+    public void notLimitedByDefault() {
+        assertThat(ObjectiveCChangedFiles.create(settings, baseDir)).isNull();
+    }
+
+    @Test
+    public void readsRelativeAndAbsolutePaths() throws Exception {
+        File absolute = new File(temp.newFolder(), "Absolute.m");
+        FileUtils.write(new File(baseDir, "changed.txt"), "App/Changed.m\n\n  ./App/../Other.h  \n" + absolute.getAbsolutePath() + "\n", "UTF-8");
+        settings.setProperty(ObjectiveCChangedFiles.LIST_KEY, "changed.txt");
+
+        ObjectiveCChangedFiles changedFiles = ObjectiveCChangedFiles.create(settings, baseDir);
+
+        assertThat(changedFiles.size()).isEqualTo(3);
+        assertThat(changedFiles.contains(new File(baseDir, "App/Changed.m"))).isTrue();
+        assertThat(changedFiles.contains(new File(baseDir, "Other.h"))).isTrue();
+        assertThat(changedFiles.contains(absolute)).isTrue();
+        assertThat(changedFiles.contains(new File(baseDir, "App/Unchanged.m"))).isFalse();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsOnMissingList() {
+        settings.setProperty(ObjectiveCChangedFiles.LIST_KEY, "missing.txt");
+        ObjectiveCChangedFiles.create(settings, baseDir);
+    }
+
+}
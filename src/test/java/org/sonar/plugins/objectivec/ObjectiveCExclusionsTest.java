@@ -0,0 +1,135 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.Settings;
+
+public class ObjectiveCExclusionsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File baseDir;
+    private FileSystem fileSystem;
+    private Settings settings;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = temp.newFolder();
+        fileSystem = mock(FileSystem.class);
+        when(fileSystem.baseDir()).thenReturn(baseDir);
+        when(fileSystem.encoding()).thenReturn(Charset.forName("UTF-8"));
+        settings = new Settings();
+    }
+
+    @Test
+    public void excludesNothingByDefault() throws Exception {
+        File generated = new File(baseDir, "Pods/Person.pbobjc.m");
+        FileUtils.write(generated, "// Generated by the protocol buffer compiler.  DO NOT EDIT!\n", "UTF-8");
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.isExcluded(generated)).isFalse();
+        assertThat(exclusions.isExcluded("Carthage/Build/Foo.h")).isFalse();
+    }
+
+    @Test
+    public void excludesDirectories() {
+        settings.setProperty(ObjectiveCExclusions.DIRECTORIES_KEY, "Pods,Vendor/Lib,**/Carthage");
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.isExcluded("Pods/AFNetworking/AFHTTPClient.m")).isTrue();
+        assertThat(exclusions.isExcluded(new File(baseDir, "Vendor/Lib/Foo.m").getAbsolutePath())).isTrue();
+        assertThat(exclusions.isExcluded("App/Carthage/Build/Foo.h")).isTrue();
+        assertThat(exclusions.isExcluded("PodsHelper/Foo.m")).isFalse();
+        assertThat(exclusions.isExcluded("Vendor/Foo.m")).isFalse();
+        assertThat(exclusions.isExcluded("Pods.m")).isFalse();
+    }
+
+    @Test
+    public void excludesFileNames() {
+        settings.setProperty(ObjectiveCExclusions.FILE_NAMES_KEY, "*.pbobjc.m,_*.m");
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.isExcluded("Model/Person.pbobjc.m")).isTrue();
+        assertThat(exclusions.isExcluded("Model/_Person.m")).isTrue();
+        assertThat(exclusions.isExcluded("Model/Person.m")).isFalse();
+        assertThat(exclusions.isExcluded("Model/_Person.h")).isFalse();
+    }
+
+    @Test
+    public void excludesGeneratedFiles() throws Exception {
+        File generated = new File(baseDir, "Generated.m");
+        FileUtils.write(generated, "//\n// Generated by the protocol buffer compiler.  DO NOT EDIT!\n", "UTF-8");
+        File written = new File(baseDir, "Written.m");
+        FileUtils.write(written, "// Written by hand\n#import \"Written.h\"\n", "UTF-8");
+        File late = new File(baseDir, "Late.m");
+        FileUtils.write(late, "// 1\n// 2\n// 3\n// Generated by hand\n", "UTF-8");
+        settings.setProperty(ObjectiveCExclusions.GENERATED_MARKERS_KEY, "generated by,do not edit");
+        settings.setProperty(ObjectiveCExclusions.HEADER_LINES_KEY, 3);
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.filter(Arrays.asList(generated, written, late))).containsOnly(written, late);
+
+        settings.setProperty(ObjectiveCExclusions.HEADER_LINES_KEY, 0);
+        assertThat(new ObjectiveCExclusions(settings, fileSystem).isExcluded(generated)).isFalse();
+    }
+
+    @Test
+    public void searchesMarkersInTheFirstBytesOnly() throws Exception {
+        File generated = new File(baseDir, "Generated.m");
+        FileUtils.write(generated, "// " + StringUtils.repeat("x", 10000) + "\n// Generated by hand\n", "UTF-8");
+        settings.setProperty(ObjectiveCExclusions.GENERATED_MARKERS_KEY, "generated by");
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.isExcluded(generated)).isFalse();
+    }
+
+    @Test
+    public void excludesUnchangedFiles() throws Exception {
+        FileUtils.write(new File(baseDir, "changed.txt"), "App/Changed.m\n", "UTF-8");
+        ObjectiveCExclusions exclusions = new ObjectiveCExclusions(settings, fileSystem);
+        assertThat(exclusions.isLimitedToChangedFiles()).isFalse();
+
+        settings.setProperty(ObjectiveCChangedFiles.LIST_KEY, "changed.txt");
+        exclusions = new ObjectiveCExclusions(settings, fileSystem);
+
+        assertThat(exclusions.isLimitedToChangedFiles()).isTrue();
+        assertThat(exclusions.isExcluded("App/Changed.m")).isFalse();
+        assertThat(exclusions.isExcluded("App/Unchanged.m")).isTrue();
+        assertThat(exclusions.filter(Arrays.asList(new File(baseDir, "App/Changed.m"), new File(baseDir, "App/Unchanged.m"))))
+            .containsOnly(new File(baseDir, "App/Changed.m"));
+    }
+
+}
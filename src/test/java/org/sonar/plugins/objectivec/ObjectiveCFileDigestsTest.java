@@ -0,0 +1,56 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObjectiveCFileDigestsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void digestsEachFileOnce() throws Exception {
+        File file = temp.newFile("Foo.m");
+        FileUtils.write(file, "@implementation Foo\n@end\n", "UTF-8");
+        String digest = ObjectiveCSquidCache.digest(file);
+        ObjectiveCFileDigests digests = new ObjectiveCFileDigests();
+
+        assertThat(digests.digest(file)).isEqualTo(digest);
+
+        // kept for the whole analysis
+        FileUtils.write(file, "@implementation Bar\n@end\n", "UTF-8");
+        assertThat(digests.digest(file)).isEqualTo(digest);
+        assertThat(new ObjectiveCFileDigests().digest(file)).isNotEqualTo(digest);
+    }
+
+    @Test
+    public void returnsNullForMissingFiles() {
+        assertThat(new ObjectiveCFileDigests().digest(new File(temp.getRoot(), "Missing.m"))).isNull();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Maps;
+
+public class ObjectiveCImportGraphTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File graphFile;
+    private File header;
+    private File nestedHeader;
+    private File source;
+    private File other;
+
+    @Before
+    public void setUp() throws Exception {
+        File baseDir = temp.newFolder();
+        graphFile = new File(temp.newFolder(), ObjectiveCImportGraph.FILE_NAME);
+        header = new File(baseDir, "A.h");
+        nestedHeader = new File(baseDir, "Lib/B.h");
+        source = new File(baseDir, "C.m");
+        other = new File(baseDir, "D.m");
+
+        ObjectiveCImportGraph graph = ObjectiveCImportGraph.load(graphFile);
+        graph.put(header, "a", Collections.<String>emptyList());
+        graph.put(nestedHeader, "b", Arrays.asList("\"../A.h\""));
+        graph.put(source, "c", Arrays.asList("\"Lib/B.h\"", "<UIKit/UIKit.h>"));
+        graph.put(other, "d", Arrays.asList("<Lib/B.h>", "@Foundation"));
+        graph.save();
+    }
+
+    @Test
+    public void resolvesImports() {
+        ObjectiveCImportGraph graph = ObjectiveCImportGraph.load(graphFile);
+        assertThat(graph.getDependencies(nestedHeader)).containsOnly(header.getAbsoluteFile());
+        assertThat(graph.getDependencies(source)).containsOnly(nestedHeader.getAbsoluteFile());
+        assertThat(graph.getDependencies(other)).containsOnly(nestedHeader.getAbsoluteFile());
+        assertThat(graph.getDependents(nestedHeader)).containsOnly(source.getAbsoluteFile(), other.getAbsoluteFile());
+    }
+
+    @Test
+    public void findsTransitiveDependents() {
+        ObjectiveCImportGraph graph = ObjectiveCImportGraph.load(graphFile);
+        assertThat(graph.getTransitiveDependents(Arrays.asList(header)))
+                .containsOnly(nestedHeader.getAbsoluteFile(), source.getAbsoluteFile(), other.getAbsoluteFile());
+        assertThat(graph.getTransitiveDependents(Arrays.asList(source))).isEmpty();
+    }
+
+    @Test
+    public void findsChangedFiles() {
+        ObjectiveCImportGraph graph = ObjectiveCImportGraph.load(graphFile);
+        Map<File, String> digests = Maps.newHashMap();
+        digests.put(header.getAbsoluteFile(), "changed");
+        digests.put(nestedHeader.getAbsoluteFile(), "b");
+        digests.put(source.getAbsoluteFile(), "c");
+        assertThat(graph.getChangedFiles(digests)).containsOnly(header.getAbsoluteFile(), other.getAbsoluteFile());
+    }
+
+    @Test
+    public void forgetsRemovedFiles() {
+        ObjectiveCImportGraph graph = ObjectiveCImportGraph.load(graphFile);
+        graph.retainAll(Arrays.asList(header, nestedHeader));
+        assertThat(graph.getDigest(source)).isNull();
+        assertThat(graph.getDependents(nestedHeader)).isEmpty();
+        assertThat(graph.getDigest(header)).isEqualTo("a");
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.ObjectiveCScanListener;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.squidbridge.api.SourceFile;
+
+import com.google.common.collect.Lists;
+
+public class ObjectiveCScanProgressTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void countsScannedFiles() throws Exception {
+        List<File> files = Arrays.asList(newFile("A.m"), newFile("B.m"), newFile("C.m"));
+        ObjectiveCScanProgress progress = new ObjectiveCScanProgress(files, 0);
+        progress.start();
+        ObjectiveCScanProgress.TrackedFiles trackedFiles = progress.track(files, new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile file) {
+            }
+        });
+        Iterator<File> iterator = trackedFiles.iterator();
+        trackedFiles.fileScanned(scanned(iterator.next(), 12));
+        trackedFiles.fileScanned(scanned(iterator.next(), 30));
+        iterator.next();
+        progress.stop();
+
+        assertThat(progress.getDoneFiles()).isEqualTo(2);
+        assertThat(progress.getDoneLines()).isEqualTo(42);
+        assertThat(progress.report()).startsWith("2/3 files scanned, ");
+        assertThat(progress.report()).contains("remaining");
+        assertThat(progress.report()).endsWith("current file: " + files.get(2).getPath());
+    }
+
+    @Test
+    public void countsSkippedFiles() throws Exception {
+        List<File> files = Arrays.asList(newFile("A.m"), newFile("B.m"), newFile("C.m"));
+        ObjectiveCScanProgress progress = new ObjectiveCScanProgress(files, 0);
+        progress.start();
+        final List<SourceFile> handedOver = Lists.newArrayList();
+        ObjectiveCScanProgress.TrackedFiles trackedFiles = progress.track(files, new ObjectiveCScanListener() {
+            public void fileScanned(SourceFile file) {
+                handedOver.add(file);
+            }
+        });
+        for (File file : trackedFiles) {
+            if (!file.getName().equals("B.m")) {
+                // B.m is skipped by the scanner
+                trackedFiles.fileScanned(scanned(file, 10));
+            }
+        }
+        progress.stop();
+
+        assertThat(handedOver).hasSize(2);
+        assertThat(progress.getDoneFiles()).isEqualTo(3);
+        assertThat(progress.getDoneLines()).isEqualTo(20);
+        assertThat(progress.report()).startsWith("3/3 files scanned, ");
+        assertThat(progress.report()).contains("about 0 s remaining");
+    }
+
+    @Test
+    public void countsFilesDoneByWorkersWithTheirInitialSize() throws Exception {
+        List<File> files = Arrays.asList(newFile("A.m"), newFile("B.m"));
+        ObjectiveCScanProgress progress = new ObjectiveCScanProgress(files, 0);
+        progress.start();
+        progress.fileStarted(files.get(1));
+        assertThat(progress.report()).endsWith("current file: " + files.get(1).getPath());
+        for (File file : files) {
+            FileUtils.forceDelete(file);
+        }
+        progress.fileDone(files.get(1), null);
+        progress.fileDone(files.get(0), scanned(files.get(0), 5));
+        progress.stop();
+
+        assertThat(progress.getDoneFiles()).isEqualTo(2);
+        assertThat(progress.getDoneLines()).isEqualTo(5);
+        assertThat(progress.report()).contains("about 0 s remaining");
+    }
+
+    @Test
+    public void logsFromItsOwnThread() throws Exception {
+        List<File> files = Arrays.asList(newFile("A.m"));
+        ObjectiveCScanProgress progress = new ObjectiveCScanProgress(files, 10);
+        progress.start();
+        Thread.sleep(30);
+        progress.stop();
+        assertThat(progress.getDoneFiles()).isEqualTo(0);
+    }
+
+    private File newFile(String name) throws Exception {
+        File file = temp.newFile(name);
+        FileUtils.write(file, "int i;\n");
+        return file;
+    }
+
+    private static SourceFile scanned(File file, int lines) {
+        SourceFile squidFile = new SourceFile(file.getAbsolutePath(), file.getPath());
+        squidFile.setMeasure(ObjectiveCMetric.LINES, lines);
+        return squidFile;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.objectivec.api.ObjectiveCMetric;
+import org.sonar.objectivec.metrics.ObjectiveCImports;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+
+public class ObjectiveCSquidCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void replaysStoredResults() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        File source = new File("src/test/resources/objcSample.h");
+        String digest = ObjectiveCSquidCache.digest(source);
+
+        SourceFile squidFile = new SourceFile(source.getAbsolutePath(), source.getPath());
+        squidFile.setMeasure(ObjectiveCMetric.LINES_OF_CODE, 5);
+        squidFile.addNoSonarTagLines(Collections.singleton(10));
+        SourceFunction function = new SourceFunction(squidFile, "-init:12", 12);
+        function.setMeasure(ObjectiveCMetric.COMPLEXITY, 3);
+        function.setMeasure(ObjectiveCMetric.STATEMENTS, 2);
+        squidFile.addChild(function);
+        squidFile.addData(ObjectiveCImports.Data.IMPORTS, Arrays.asList("\"Foo.h\"", "@UIKit"));
+        CheckMessage message = new CheckMessage(RuleKey.of("objectivec", "Rule"), "Message");
+        message.setLine(3);
+        squidFile.log(message);
+
+        ObjectiveCSquidCache cache = ObjectiveCSquidCache.load(cacheFile, "fingerprint");
+        assertThat(cache.get(source, digest)).isNull();
+        cache.put(digest, squidFile, Collections.<Object, RuleKey>emptyMap());
+        cache.save();
+
+        cache = ObjectiveCSquidCache.load(cacheFile, "fingerprint");
+        SourceFile cached = cache.get(source, digest);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cached.getInt(ObjectiveCMetric.LINES_OF_CODE)).isEqualTo(5);
+        assertThat(cached.getNoSonarTagLines()).containsOnly(10);
+        SourceCode cachedFunction = cached.getChildren().iterator().next();
+        assertThat(cachedFunction.getKey()).isEqualTo(function.getKey());
+        assertThat(cachedFunction.getStartAtLine()).isEqualTo(12);
+        assertThat(cachedFunction.getInt(ObjectiveCMetric.FUNCTIONS)).isEqualTo(1);
+        assertThat(cachedFunction.getInt(ObjectiveCMetric.COMPLEXITY)).isEqualTo(3);
+        assertThat(cachedFunction.getInt(ObjectiveCMetric.STATEMENTS)).isEqualTo(2);
+        assertThat(ObjectiveCImports.getImports(cached)).containsExactly("\"Foo.h\"", "@UIKit");
+        CheckMessage cachedMessage = cached.getCheckMessages().iterator().next();
+        assertThat(cachedMessage.getCheck()).isEqualTo(RuleKey.of("objectivec", "Rule"));
+        assertThat(cachedMessage.getLine()).isEqualTo(Integer.valueOf(3));
+        assertThat(cachedMessage.getText(Locale.ENGLISH)).isEqualTo("Message");
+
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "other").get(source, digest)).isNull();
+    }
+
+    @Test
+    public void discardsResultsOfAnotherAnalysisVersion() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        File source = new File("src/test/resources/objcSample.h");
+        String digest = ObjectiveCSquidCache.digest(source);
+        SourceFile squidFile = new SourceFile(source.getAbsolutePath(), source.getPath());
+        squidFile.setMeasure(ObjectiveCMetric.LINES_OF_CODE, 5);
+
+        ObjectiveCSquidCache cache = ObjectiveCSquidCache.load(cacheFile, "0", "fingerprint");
+        cache.put(digest, squidFile, Collections.<Object, RuleKey>emptyMap());
+        cache.save();
+
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "0", "fingerprint").get(source, digest)).isNotNull();
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "1", "fingerprint").get(source, digest)).isNull();
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "fingerprint").get(source, digest)).isNull();
+    }
+
+    @Test
+    public void rebuildsWhenTheFingerprintChanges() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        File source = new File("src/test/resources/objcSample.h");
+        String digest = ObjectiveCSquidCache.digest(source);
+        SourceFile before = new SourceFile(source.getAbsolutePath(), source.getPath());
+        before.setMeasure(ObjectiveCMetric.LINES_OF_CODE, 5);
+        SourceFile after = new SourceFile(source.getAbsolutePath(), source.getPath());
+        after.setMeasure(ObjectiveCMetric.LINES_OF_CODE, 7);
+
+        ObjectiveCSquidCache cache = ObjectiveCSquidCache.load(cacheFile, "before");
+        cache.put(digest, before, Collections.<Object, RuleKey>emptyMap());
+        cache.save();
+
+        // the results of the previous fingerprint are not replayed, and are replaced by the new ones
+        cache = ObjectiveCSquidCache.load(cacheFile, "after");
+        assertThat(cache.get(source, digest)).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+        cache.put(digest, after, Collections.<Object, RuleKey>emptyMap());
+        cache.save();
+
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "after").get(source, digest).getInt(ObjectiveCMetric.LINES_OF_CODE)).isEqualTo(7);
+        assertThat(ObjectiveCSquidCache.load(cacheFile, "before").get(source, digest)).isNull();
+    }
+
+    @Test
+    public void derivesTheAnalysisVersionFromThePlugin() {
+        assertThat(ObjectiveCSquidCache.analysisVersion()).startsWith(ObjectiveCSquidCache.ANALYSIS_VERSION);
+        assertThat(ObjectiveCSquidCache.analysisVersion()).isEqualTo(ObjectiveCSquidCache.analysisVersion());
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.CheckFactory;
+import org.sonar.api.batch.rule.Checks;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issuable;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.objectivec.api.ObjectiveCGrammar;
+import org.sonar.objectivec.api.ObjectiveCKeyword;
+import org.sonar.objectivec.checks.CheckList;
+import org.sonar.squidbridge.checks.SquidCheck;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+
+public class ObjectiveCSquidSensorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<File> scannedFiles = Collections.synchronizedList(Lists.<File>newArrayList());
+    private final List<File> files = Lists.newArrayList();
+    private final List<InputFile> inputFiles = Lists.newArrayList();
+    private File baseDir;
+    private FileSystem fileSystem;
+    private Settings settings;
+    private CheckFactory checkFactory = new CheckFactory(new ActiveRulesBuilder().build());
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = temp.newFolder();
+        for (int i = 0; i < 12; i++) {
+            StringBuilder source = new StringBuilder("#import \"File" + i + ".h\"\n\n@implementation File" + i + "\n");
+            for (int j = 0; j <= i; j++) {
+                source.append("- (int)method").append(j).append(":(int)value {\n")
+                    .append("    // comment\n")
+                    .append("    if (value > ").append(j).append(") {\n")
+                    .append("        return value;\n")
+                    .append("    }\n")
+                    .append("    return ").append(j).append(";\n")
+                    .append("}\n");
+            }
+            source.append("@end\n");
+            addFile(new File(baseDir, "File" + i + ".m"), source.toString());
+        }
+
+        fileSystem = mock(FileSystem.class);
+        when(fileSystem.baseDir()).thenReturn(baseDir);
+        when(fileSystem.workDir()).thenReturn(temp.newFolder());
+        when(fileSystem.encoding()).thenReturn(Charset.forName("UTF-8"));
+        when(fileSystem.predicates()).thenReturn(mock(FilePredicates.class));
+        when(fileSystem.files(any(FilePredicate.class))).thenReturn(files);
+        when(fileSystem.inputFiles(any(FilePredicate.class))).thenReturn(inputFiles);
+
+        settings = new Settings();
+        settings.setProperty(ObjectiveCSquidSensor.CACHE_KEY, false);
+        settings.setProperty(ObjectiveCSquidSensor.PROGRESS_INTERVAL_KEY, 0);
+    }
+
+    @Test
+    public void scansInParallelLikeSequentially() {
+        settings.setProperty(ObjectiveCSquidSensor.THREADS_KEY, 1);
+        List<String> sequential = analyse();
+        settings.setProperty(ObjectiveCSquidSensor.THREADS_KEY, 3);
+        List<String> parallel = analyse();
+
+        // the same measures, saved in the same order
+        assertThat(sequential).isNotEmpty();
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    @Test
+    public void parsesInParallelWithChecksLikeSequentially() {
+        List<Thread> checkThreads = Lists.newArrayList();
+        checkFactory = checkFactoryWithIfCheck(checkThreads, scannedFiles);
+
+        settings.setProperty(ObjectiveCSquidSensor.THREADS_KEY, 1);
+        List<String> sequential = analyse();
+        assertThat(checkThreads).hasSize(1);
+        settings.setProperty(ObjectiveCSquidSensor.THREADS_KEY, 3);
+        List<String> parallel = analyse();
+
+        // one set of checks per worker, all created on the sensor thread
+        assertThat(checkThreads).hasSize(4);
+        assertThat(checkThreads).containsOnly(Thread.currentThread());
+
+        // one issue per if statement: File<i>.m has i + 1 of them
+        List<String> issues = Lists.newArrayList();
+        for (String saved : sequential) {
+            if (saved.startsWith("issue")) {
+                issues.add(saved);
+            }
+        }
+        assertThat(issues).hasSize(78);
+        assertThat(issues.get(0)).isEqualTo("issue File0.m objectivec:IfCheck line 6 if statement");
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    @Test
+    public void skipsFilesWithTooManyTokens() {
+        settings.setProperty(ObjectiveCSquidSensor.MAX_TOKENS_KEY, 100);
+        List<String> measures = analyse();
+
+        assertThat(measures.toString()).contains("File0.m");
+        assertThat(measures.toString()).excludes("File11.m");
+    }
+
+    @Test
+    public void skipsFilesLargerThanTheLimit() {
+        settings.setProperty(ObjectiveCSquidSensor.MAX_FILE_SIZE_KEY, 1);
+        List<String> measures = analyse();
+
+        assertThat(measures.toString()).contains("File0.m");
+        assertThat(measures.toString()).excludes("File11.m");
+    }
+
+    @Test
+    public void rebuildsTheCacheWhenTheSettingsChange() {
+        settings.setProperty(ObjectiveCSquidSensor.CACHE_KEY, true);
+        assertThat(analyse().toString()).contains("File11.m");
+
+        // File11.m is not replayed from the cache once it goes over the new limit
+        settings.setProperty(ObjectiveCSquidSensor.MAX_TOKENS_KEY, 100);
+        String limited = analyse().toString();
+        assertThat(limited).contains("File0.m");
+        assertThat(limited).excludes("File11.m");
+    }
+
+    @Test
+    public void savesTheSameMeasuresForFilesWithTheSameContent() throws Exception {
+        String source = "#import \"Header.h\"\n\n@implementation Copy\n- (int)one {\n    return 1;\n}\n@end\n";
+        addFile(new File(baseDir, "A/Copy.m"), source);
+        addFile(new File(baseDir, "B/Copy.m"), source);
+        List<String> saved = analyse();
+
+        List<String> first = savedFor("A/Copy.m", saved);
+        assertThat(first).isNotEmpty();
+        assertThat(savedFor("B/Copy.m", saved)).isEqualTo(first);
+    }
+
+    @Test
+    public void scansFilesAgainWhenACopyImportsAChangedHeader() throws Exception {
+        String source = "#import \"Header.h\"\n\n@implementation Copy\n@end\n";
+        File first = new File(baseDir, "A/Copy.m");
+        File copy = new File(baseDir, "B/Copy.m");
+        File header = new File(baseDir, "B/Header.h");
+        addFile(first, source);
+        addFile(copy, source);
+        addFile(new File(baseDir, "A/Header.h"), "@interface A\n@end\n");
+        addFile(header, "@interface B\n@end\n");
+        settings.setProperty(ObjectiveCSquidSensor.CACHE_KEY, true);
+        checkFactory = checkFactoryWithIfCheck(Lists.<Thread>newArrayList(), scannedFiles);
+        analyse();
+        assertThat(scannedFiles).contains(first);
+
+        scannedFiles.clear();
+        analyse();
+        assertThat(scannedFiles).isEmpty();
+
+        // only the copy imports the changed header, and it has the results of the first file of its group
+        FileUtils.write(header, "@interface B\n- (void)changed;\n@end\n", "UTF-8");
+        List<String> saved = analyse();
+        assertThat(scannedFiles).containsOnly(first, header);
+        assertThat(savedFor("B/Copy.m", saved)).isEqualTo(savedFor("A/Copy.m", saved));
+    }
+
+    private void addFile(File file, String source) throws Exception {
+        FileUtils.write(file, source, "UTF-8");
+        String relativePath = file.getAbsolutePath().substring(baseDir.getAbsolutePath().length() + 1).replace('\\', '/');
+        InputFile inputFile = mock(InputFile.class, relativePath);
+        when(inputFile.absolutePath()).thenReturn(file.getAbsolutePath());
+        when(inputFile.relativePath()).thenReturn(relativePath);
+        when(inputFile.file()).thenReturn(file);
+        files.add(file);
+        inputFiles.add(inputFile);
+    }
+
+    /**
+     * @return the measures and issues saved for the file, without its name
+     */
+    private static List<String> savedFor(String relativePath, List<String> saved) {
+        List<String> result = Lists.newArrayList();
+        for (String line : saved) {
+            if (line.startsWith("[" + relativePath + ",")) {
+                result.add(line.substring(relativePath.length() + 2));
+            } else if (line.startsWith("issue " + relativePath + " ")) {
+                result.add(line.substring(relativePath.length() + 7));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a check factory creating an {@link IfCheck} for each scanner, and recording the threads it is called on
+     * and the files the checks visit
+     */
+    private static CheckFactory checkFactoryWithIfCheck(final List<Thread> threads, final List<File> scannedFiles) {
+        CheckFactory checkFactory = mock(CheckFactory.class);
+        when(checkFactory.create(CheckList.REPOSITORY_KEY)).thenAnswer(new Answer<Checks<?>>() {
+            public Checks<?> answer(InvocationOnMock invocation) {
+                threads.add(Thread.currentThread());
+                final IfCheck check = new IfCheck(scannedFiles);
+                return mock(Checks.class, new Answer<Object>() {
+                    public Object answer(InvocationOnMock invocation) {
+                        String name = invocation.getMethod().getName();
+                        if ("all".equals(name)) {
+                            return Arrays.asList(check);
+                        } else if ("ruleKey".equals(name)) {
+                            return RuleKey.of(CheckList.REPOSITORY_KEY, "IfCheck");
+                        } else if (invocation.getMethod().getReturnType().isInstance(invocation.getMock())) {
+                            // addAnnotatedChecks
+                            return invocation.getMock();
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+        return checkFactory;
+    }
+
+    /**
+     * @return the measures and issues saved by the sensor, in order
+     */
+    private List<String> analyse() {
+        final List<String> saved = Lists.newArrayList();
+        SensorContext context = mock(SensorContext.class, new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                String name = invocation.getMethod().getName();
+                if ("saveMeasure".equals(name)) {
+                    saved.add(Arrays.toString(invocation.getArguments()));
+                } else if ("getResource".equals(name)) {
+                    return mock(Resource.class, invocation.getArguments()[0].toString());
+                }
+                return null;
+            }
+        });
+        ResourcePerspectives perspectives = mock(ResourcePerspectives.class);
+        when(perspectives.as(eq(Issuable.class), any(Resource.class))).thenAnswer(new Answer<Issuable>() {
+            public Issuable answer(InvocationOnMock invocation) {
+                return issuable(invocation.getArguments()[1].toString(), saved);
+            }
+        });
+        ObjectiveCSquidSensor sensor = new ObjectiveCSquidSensor(RulesProfile.create(), fileSystem, perspectives,
+            checkFactory, settings, new ObjectiveCExclusions(settings, fileSystem), new ObjectiveCFileDigests(),
+            new ObjectiveCAnalysisTokenCache(settings, RulesProfile.create()));
+        sensor.analyse(mock(Project.class), context);
+        return saved;
+    }
+
+    /**
+     * @return an issuable recording the issues built for the resource as "issue &lt;resource&gt; &lt;rule&gt; line &lt;line&gt; &lt;message&gt;"
+     */
+    private static Issuable issuable(final String resource, final List<String> saved) {
+        final StringBuilder issue = new StringBuilder();
+        final Issuable.IssueBuilder builder = mock(Issuable.IssueBuilder.class, new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                String name = invocation.getMethod().getName();
+                Object[] arguments = invocation.getArguments();
+                if ("ruleKey".equals(name)) {
+                    issue.setLength(0);
+                    issue.append("issue ").append(resource).append(' ').append(arguments[0]);
+                } else if ("line".equals(name)) {
+                    issue.append(" line ").append(arguments[0]);
+                } else if ("message".equals(name)) {
+                    issue.append(' ').append(arguments[0]);
+                } else if ("build".equals(name)) {
+                    saved.add(issue.toString());
+                    return mock(Issue.class);
+                }
+                return invocation.getMethod().getReturnType().isInstance(invocation.getMock()) ? invocation.getMock() : null;
+            }
+        });
+        return mock(Issuable.class, new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                String name = invocation.getMethod().getName();
+                if ("newIssueBuilder".equals(name)) {
+                    return builder;
+                }
+                return "addIssue".equals(name) ? Boolean.TRUE : null;
+            }
+        });
+    }
+
+    /**
+     * Raises an issue on every <code>if</code>, which needs the scanner to parse the files, and records the files it visits.
+     */
+    private static class IfCheck extends SquidCheck<ObjectiveCGrammar> {
+
+        private final List<File> scannedFiles;
+
+        IfCheck(List<File> scannedFiles) {
+            this.scannedFiles = scannedFiles;
+        }
+
+        @Override
+        public void visitFile(AstNode astNode) {
+            scannedFiles.add(getContext().getFile());
+            for (Token token : astNode.getTokens()) {
+                if (token.getType() == ObjectiveCKeyword.IF) {
+                    getContext().createLineViolation(this, "if statement", token.getLine());
+                }
+            }
+        }
+
+    }
+
+}
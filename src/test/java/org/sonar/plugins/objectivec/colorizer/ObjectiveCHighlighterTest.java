@@ -0,0 +1,80 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.colorizer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.api.source.Highlightable;
+import org.sonar.objectivec.lexer.ObjectiveCTokenStream;
+
+import com.google.common.collect.Lists;
+
+public class ObjectiveCHighlighterTest {
+
+    @Test
+    public void highlightsStringsAndDirectives() {
+        String source = "#import <UIKit/UIKit.h>\n"
+            + "#pragma mark - Actions // comment\n"
+            + "@interface Foo : NSObject\n"
+            + "@end\n"
+            + "NSString *s = @\"bar\";\n";
+
+        assertThat(highlight(source)).containsExactly(
+            "#import:p", "<UIKit/UIKit.h>:s",
+            "#pragma mark - Actions:p", "// comment:cd",
+            "@interface:k",
+            "@end:k",
+            "@\"bar\":s");
+    }
+
+    @Test
+    public void highlightsCommentsAndConstants() {
+        String source = "/** Documented */\n"
+            + "/* Plain */ /**/\n"
+            + "/// Documented\n"
+            + "#warning Not done yet\n"
+            + "int i = 42; char c = 'c';\n";
+
+        assertThat(highlight(source)).containsExactly(
+            "/** Documented */:cppd",
+            "/* Plain */:cd", "/**/:cd",
+            "/// Documented:cppd",
+            "#warning Not done yet:p",
+            "int:k", "42:c", "char:k", "'c':s");
+    }
+
+    private static List<String> highlight(final String source) {
+        final List<String> ranges = Lists.newArrayList();
+        ObjectiveCHighlighter.highlight(ObjectiveCTokenStream.lex(source), new Highlightable.HighlightingBuilder() {
+            public Highlightable.HighlightingBuilder highlight(int startOffset, int endOffset, String typeOfText) {
+                ranges.add(source.substring(startOffset, endOffset) + ":" + typeOfText);
+                return this;
+            }
+
+            public void done() {
+            }
+        });
+        return ranges;
+    }
+
+}
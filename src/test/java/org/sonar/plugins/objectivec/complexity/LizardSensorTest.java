@@ -24,6 +24,8 @@ import org.junit.Test;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCSquidSensor;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 
 import java.util.SortedSet;
@@ -59,7 +61,7 @@ public class LizardSensorTest {
         languages.add(ObjectiveC.KEY);
         when(fileSystem.languages()).thenReturn(languages);
 
-        final LizardSensor testedSensor = new LizardSensor(fileSystem, settings);
+        final LizardSensor testedSensor = new LizardSensor(fileSystem, settings, new ObjectiveCExclusions(settings, fileSystem));
 
         assertTrue(testedSensor.shouldExecuteOnProject(project));
     }
@@ -76,9 +78,27 @@ public class LizardSensorTest {
         languages.add("Test");
         when(fileSystem.languages()).thenReturn(languages);
 
-        final LizardSensor testedSensor = new LizardSensor(fileSystem, settings);
+        final LizardSensor testedSensor = new LizardSensor(fileSystem, settings, new ObjectiveCExclusions(settings, fileSystem));
 
         assertFalse(testedSensor.shouldExecuteOnProject(project));
     }
 
-}
\ No newline at end of file
+    /**
+     * this method tests that the sensor does not get executed when the complexity is computed by the plugin
+     */
+    @Test
+    public void shouldExecuteOnProjectShouldBeFalseWhenComplexityIsBuiltin() {
+        final Project project = new Project("Test");
+
+        FileSystem fileSystem = mock(FileSystem.class);
+        SortedSet<String> languages = new TreeSet<String>();
+        languages.add(ObjectiveC.KEY);
+        when(fileSystem.languages()).thenReturn(languages);
+        settings.setProperty(ObjectiveCSquidSensor.BUILTIN_COMPLEXITY_KEY, true);
+
+        final LizardSensor testedSensor = new LizardSensor(fileSystem, settings, new ObjectiveCExclusions(settings, fileSystem));
+
+        assertFalse(testedSensor.shouldExecuteOnProject(project));
+    }
+
+}
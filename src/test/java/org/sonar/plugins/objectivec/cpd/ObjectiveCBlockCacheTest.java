@@ -0,0 +1,159 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCSquidCache;
+
+import com.google.common.collect.Maps;
+
+public class ObjectiveCBlockCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void replaysStoredBlocks() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+
+        ObjectiveCBlockCache cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        assertThat(cache.get("digest")).isNull();
+        cache.put("digest", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {1, 3, 4}, new int[] {0, 2, 5, 6}, new long[] {-7L, Long.MAX_VALUE}));
+        cache.put("empty", new ObjectiveCDuplicationDetector.FileBlocks(new int[0], new int[] {0}, new long[0]));
+        cache.save();
+
+        cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        ObjectiveCDuplicationDetector.FileBlocks cached = cache.get("digest");
+        assertThat(cached.lines).isEqualTo(new int[] {1, 3, 4});
+        assertThat(cached.tokenCounts).isEqualTo(new int[] {0, 2, 5, 6});
+        assertThat(cached.hashes).isEqualTo(new long[] {-7L, Long.MAX_VALUE});
+        assertThat(cache.get("empty").tokenCounts).isEqualTo(new int[] {0});
+        assertThat(cache.get("other")).isNull();
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "other").get("digest")).isNull();
+    }
+
+    @Test
+    public void replacesTheMappedCache() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        ObjectiveCBlockCache cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        cache.put("digest", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {1}, new int[] {0, 2}, new long[] {5L}));
+        cache.save();
+
+        cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        assertThat(cache.get("digest")).isNotNull();
+        cache.put("other", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {2}, new int[] {0, 3}, new long[] {6L}));
+        cache.save();
+
+        cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        assertThat(cache.get("digest").hashes).isEqualTo(new long[] {5L});
+        assertThat(cache.get("other").hashes).isEqualTo(new long[] {6L});
+    }
+
+    @Test
+    public void discardsBlocksOfAnotherAnalysisVersion() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+
+        ObjectiveCBlockCache cache = ObjectiveCBlockCache.load(cacheFile, "0", "fingerprint");
+        cache.put("digest", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {1}, new int[] {0, 2}, new long[0]));
+        cache.save();
+
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "0", "fingerprint").get("digest")).isNotNull();
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "1", "fingerprint").get("digest")).isNull();
+    }
+
+    @Test
+    public void replacesTheCacheOfAnotherFingerprint() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        ObjectiveCBlockCache cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        cache.put("digest", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {1}, new int[] {0, 2}, new long[] {5L}));
+        cache.save();
+
+        // the outdated file is not kept mapped, so that it can be replaced on every platform
+        cache = ObjectiveCBlockCache.load(cacheFile, "other");
+        assertThat(cache.get("digest")).isNull();
+        cache.put("digest", new ObjectiveCDuplicationDetector.FileBlocks(new int[] {2}, new int[] {0, 3}, new long[] {6L}));
+        cache.save();
+
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "other").get("digest").hashes).isEqualTo(new long[] {6L});
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "fingerprint").get("digest")).isNull();
+    }
+
+    @Test
+    public void ignoresCorruptedCache() throws Exception {
+        File cacheFile = temp.newFile("cache");
+        FileUtils.writeByteArrayToFile(cacheFile, new byte[] {0, 0, 0, 1, 0});
+
+        assertThat(ObjectiveCBlockCache.load(cacheFile, "fingerprint").get("digest")).isNull();
+    }
+
+    @Test
+    public void detectsDuplicationsOfCachedFiles() throws Exception {
+        File cacheFile = new File(temp.newFolder(), "cache");
+        StringBuilder method = new StringBuilder("- (void)foo {\n");
+        for (int i = 0; i < 12; i++) {
+            method.append("    [self doSomething:@\"value").append(i).append("\" count:").append(i).append("];\n");
+        }
+        method.append("}\n");
+        File first = temp.newFile("First.m");
+        FileUtils.write(first, method.toString(), "UTF-8");
+        File second = temp.newFile("Second.m");
+        FileUtils.write(second, "int x;\n\n" + method, "UTF-8");
+
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> detected = detect(cacheFile, first, second);
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> replayed = detect(cacheFile, first, second);
+
+        assertThat(replayed.keySet()).containsOnly(first, second);
+        assertThat(replayed.get(first).get(0).getOrigin()).isEqualTo(detected.get(first).get(0).getOrigin());
+        assertThat(replayed.get(first).get(0).getCopies()).isEqualTo(detected.get(first).get(0).getCopies());
+    }
+
+    private static Map<File, List<ObjectiveCDuplicationDetector.Duplication>> detect(File cacheFile, File... files) throws Exception {
+        ObjectiveCScannerPool scanners = new ObjectiveCScannerPool(new ObjectiveCConfiguration(Charset.forName("UTF-8")));
+        ObjectiveCTokenizer tokenizer = new ObjectiveCTokenizer(scanners, mock(ObjectiveCExclusions.class));
+        ObjectiveCBlockCache cache = ObjectiveCBlockCache.load(cacheFile, "fingerprint");
+        Map<File, String> digests = Maps.newHashMap();
+        for (File file : files) {
+            digests.put(file, ObjectiveCSquidCache.digest(file));
+        }
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> duplications =
+            new ObjectiveCDuplicationDetector(scanners, tokenizer, 10, 50, 2, cache, digests).detect(Arrays.asList(files));
+        cache.save();
+        return duplications;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.objectivec.ObjectiveCAnalysisTokenCache;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+import org.sonar.plugins.objectivec.ObjectiveCFileDigests;
+import org.sonar.plugins.objectivec.ObjectiveCSquidSensor;
+
+import com.google.common.collect.Lists;
+
+public class ObjectiveCCpdSensorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<File> files = Lists.newArrayList();
+    private final List<InputFile> inputFiles = Lists.newArrayList();
+    private FileSystem fileSystem;
+    private SensorContext context;
+    private Settings settings;
+
+    @Before
+    public void setUp() throws Exception {
+        File baseDir = temp.newFolder();
+        fileSystem = mock(FileSystem.class);
+        when(fileSystem.baseDir()).thenReturn(baseDir);
+        when(fileSystem.workDir()).thenReturn(temp.newFolder());
+        when(fileSystem.encoding()).thenReturn(Charset.forName("UTF-8"));
+        when(fileSystem.predicates()).thenReturn(mock(FilePredicates.class));
+        when(fileSystem.files(any(FilePredicate.class))).thenReturn(files);
+        when(fileSystem.inputFiles(any(FilePredicate.class))).thenReturn(inputFiles);
+        context = mock(SensorContext.class);
+
+        settings = new Settings();
+        settings.setProperty(ObjectiveCSquidSensor.CACHE_KEY, false);
+        settings.setProperty(ObjectiveCCpdSensor.MINIMUM_TOKENS_KEY, 50);
+    }
+
+    @Test
+    public void savesDuplicationsLikeThePlatform() throws Exception {
+        InputFile first = addFile(new File(fileSystem.baseDir(), "First.m"), "#import \"First.h\"\n\n" + method());
+        InputFile second = addFile(new File(fileSystem.baseDir(), "Second.m"), "#import \"Second.h\"\n// other\nint x;\n\n" + method());
+        InputFile other = addFile(new File(fileSystem.baseDir(), "Other.m"), "int y;\n");
+
+        new ObjectiveCCpdSensor(fileSystem, settings, new ObjectiveCExclusions(settings, fileSystem), new ObjectiveCFileDigests(), new ObjectiveCAnalysisTokenCache(settings, RulesProfile.create()))
+            .analyse(mock(Project.class), context);
+
+        verify(context).saveMeasure(first, CoreMetrics.DUPLICATED_FILES, 1.0);
+        verify(context).saveMeasure(first, CoreMetrics.DUPLICATED_LINES, 14.0);
+        verify(context).saveMeasure(first, CoreMetrics.DUPLICATED_BLOCKS, 1.0);
+        assertThat(duplicationsData(first)).isEqualTo("<duplications><g>"
+            + "<b s=\"3\" l=\"14\" r=\"project:First.m\"/>"
+            + "<b s=\"5\" l=\"14\" r=\"project:Second.m\"/>"
+            + "</g></duplications>");
+
+        verify(context).saveMeasure(second, CoreMetrics.DUPLICATED_FILES, 1.0);
+        verify(context).saveMeasure(second, CoreMetrics.DUPLICATED_LINES, 14.0);
+        verify(context).saveMeasure(second, CoreMetrics.DUPLICATED_BLOCKS, 1.0);
+        assertThat(duplicationsData(second)).isEqualTo("<duplications><g>"
+            + "<b s=\"5\" l=\"14\" r=\"project:Second.m\"/>"
+            + "<b s=\"3\" l=\"14\" r=\"project:First.m\"/>"
+            + "</g></duplications>");
+
+        verify(context, never()).saveMeasure(eq(other), any(Metric.class), any(Double.class));
+        verify(context, never()).saveMeasure(eq(other), any(Measure.class));
+    }
+
+    private InputFile addFile(File file, String source) throws Exception {
+        FileUtils.write(file, source, "UTF-8");
+        InputFile inputFile = mock(InputFile.class);
+        when(inputFile.absolutePath()).thenReturn(file.getAbsolutePath());
+        when(inputFile.relativePath()).thenReturn(file.getName());
+        Resource resource = mock(Resource.class);
+        when(resource.getEffectiveKey()).thenReturn("project:" + file.getName());
+        when(context.getResource(inputFile)).thenReturn(resource);
+        files.add(file);
+        inputFiles.add(inputFile);
+        return inputFile;
+    }
+
+    private String duplicationsData(InputFile inputFile) {
+        ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+        verify(context).saveMeasure(eq(inputFile), measure.capture());
+        assertThat(measure.getValue().getMetric()).isEqualTo(CoreMetrics.DUPLICATIONS_DATA);
+        return measure.getValue().getData();
+    }
+
+    /**
+     * @return a method of 14 lines
+     */
+    private static String method() {
+        StringBuilder method = new StringBuilder("- (void)foo {\n");
+        for (int i = 0; i < 12; i++) {
+            method.append("    [self doSomething:@\"value").append(i).append("\" count:").append(i).append("];\n");
+        }
+        return method.append("}\n").toString();
+    }
+
+}
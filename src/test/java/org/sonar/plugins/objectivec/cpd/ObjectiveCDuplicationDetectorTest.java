@@ -0,0 +1,141 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+
+public class ObjectiveCDuplicationDetectorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final ObjectiveCScannerPool scanners = new ObjectiveCScannerPool(new ObjectiveCConfiguration(Charset.forName("UTF-8")));
+
+    private File first;
+    private File second;
+    private File renamed;
+    private File other;
+
+    @Before
+    public void setUp() throws Exception {
+        first = write("First.m", "#import \"First.h\"\n\n" + method("value"));
+        second = write("Second.m", "#import \"Second.h\"\n// other\nint x;\n\n" + method("value"));
+        renamed = write("Renamed.m", method("other"));
+        other = write("Other.m", "int y;\n");
+    }
+
+    @Test
+    public void detectsDuplications() {
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> duplications = detect(false, 1, first, second, renamed, other);
+
+        assertThat(duplications.keySet()).containsOnly(first, second);
+        assertThat(duplications.get(first)).hasSize(1);
+        ObjectiveCDuplicationDetector.Duplication duplication = duplications.get(first).get(0);
+        assertThat(duplication.getOrigin().getStartLine()).isEqualTo(3);
+        assertThat(duplication.getOrigin().getEndLine()).isEqualTo(16);
+        assertThat(duplication.getCopies()).hasSize(1);
+        assertThat(duplication.getCopies().get(0).getFile()).isEqualTo(second);
+        assertThat(duplication.getCopies().get(0).getStartLine()).isEqualTo(5);
+        assertThat(duplication.getCopies().get(0).getLines()).isEqualTo(14);
+    }
+
+    @Test
+    public void detectsDuplicationsWithOtherLiterals() {
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> duplications = detect(true, 1, first, second, renamed, other);
+
+        assertThat(duplications.keySet()).containsOnly(first, second, renamed);
+        assertThat(duplications.get(renamed)).hasSize(1);
+        ObjectiveCDuplicationDetector.Duplication duplication = duplications.get(renamed).get(0);
+        assertThat(duplication.getOrigin().getStartLine()).isEqualTo(1);
+        assertThat(duplication.getOrigin().getEndLine()).isEqualTo(14);
+        assertThat(duplication.getCopies()).hasSize(2);
+        assertThat(duplication.getCopies().get(0).getFile()).isEqualTo(first);
+        assertThat(duplication.getCopies().get(1).getFile()).isEqualTo(second);
+    }
+
+    @Test
+    public void detectsDuplicationsInTheSameFile() throws Exception {
+        File twice = write("Twice.m", method("value") + "\n" + method("value"));
+
+        List<ObjectiveCDuplicationDetector.Duplication> duplications = detect(false, 1, twice).get(twice);
+
+        assertThat(duplications).hasSize(2);
+        assertThat(duplications.get(0).getOrigin().getStartLine()).isEqualTo(1);
+        assertThat(duplications.get(0).getOrigin().getEndLine()).isEqualTo(14);
+        assertThat(duplications.get(0).getCopies().get(0).getStartLine()).isEqualTo(16);
+        assertThat(duplications.get(1).getOrigin().getStartLine()).isEqualTo(16);
+    }
+
+    @Test
+    public void sameDuplicationsOnSeveralThreads() throws Exception {
+        File twice = write("Twice.m", method("value") + "\n" + method("value"));
+
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> sequential = detect(true, 1, first, second, renamed, other, twice);
+        Map<File, List<ObjectiveCDuplicationDetector.Duplication>> parallel = detect(true, 3, first, second, renamed, other, twice);
+
+        assertThat(parallel.keySet()).isEqualTo(sequential.keySet());
+        for (File file : sequential.keySet()) {
+            assertThat(parallel.get(file)).hasSize(sequential.get(file).size());
+            for (int i = 0; i < sequential.get(file).size(); i++) {
+                assertThat(parallel.get(file).get(i).getOrigin()).isEqualTo(sequential.get(file).get(i).getOrigin());
+                assertThat(parallel.get(file).get(i).getCopies()).isEqualTo(sequential.get(file).get(i).getCopies());
+            }
+        }
+    }
+
+    private Map<File, List<ObjectiveCDuplicationDetector.Duplication>> detect(boolean ignoreLiterals, int threads, File... files) {
+        ObjectiveCTokenizer tokenizer = new ObjectiveCTokenizer(scanners, mock(ObjectiveCExclusions.class), ignoreLiterals, false);
+        return new ObjectiveCDuplicationDetector(scanners, tokenizer, 10, 50, threads).detect(Arrays.asList(files));
+    }
+
+    /**
+     * @return a method of 14 lines, its 12 statements using a string made of the given prefix
+     */
+    private static String method(String prefix) {
+        StringBuilder method = new StringBuilder("- (void)foo {\n");
+        for (int i = 0; i < 12; i++) {
+            method.append("    [self doSomething:@\"").append(prefix).append(i).append("\" count:").append(i).append("];\n");
+        }
+        return method.append("}\n").toString();
+    }
+
+    private File write(String name, String source) throws Exception {
+        File file = temp.newFile(name);
+        FileUtils.write(file, source, "UTF-8");
+        return file;
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonar Objective-C Plugin
+ * Copyright (C) 2012 OCTO Technology, Backelite
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.objectivec.cpd;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.Tokens;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.objectivec.ObjectiveCConfiguration;
+import org.sonar.objectivec.ObjectiveCScannerPool;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
+
+import com.google.common.collect.Lists;
+
+public class ObjectiveCTokenizerTest {
+
+    private static final String SOURCE = "#import \"Foo.h\"\n"
+        + "@import UIKit.UIView;\n"
+        + "// comment\n"
+        + "int x = [self foo:@\"bar\" baz:42];\n";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void tokenizesLexerTokens() throws Exception {
+        assertThat(images(new ObjectiveCTokenizer(scanners(), mock(ObjectiveCExclusions.class))))
+            .containsExactly("#import", "\"Foo.h\"", "@import", "UIKit", ".", "UIView", ";",
+                "int", "x", "=", "[", "self", "foo", ":", "@\"bar\"", "baz", ":", "42", "]", ";", "EOF");
+    }
+
+    @Test
+    public void normalisesLiteralsAndIgnoresImports() throws Exception {
+        assertThat(images(new ObjectiveCTokenizer(scanners(), mock(ObjectiveCExclusions.class), true, true)))
+            .containsExactly("int", "x", "=", "[", "self", "foo", ":", ObjectiveCTokenizer.STRING_PLACEHOLDER,
+                "baz", ":", ObjectiveCTokenizer.NUMBER_PLACEHOLDER, "]", ";", "EOF");
+    }
+
+    private static ObjectiveCScannerPool scanners() {
+        return new ObjectiveCScannerPool(new ObjectiveCConfiguration(Charset.forName("UTF-8")));
+    }
+
+    private List<String> images(ObjectiveCTokenizer tokenizer) throws Exception {
+        File file = temp.newFile("Foo.m");
+        FileUtils.write(file, SOURCE, "UTF-8");
+        SourceCode source = mock(SourceCode.class);
+        when(source.getFileName()).thenReturn(file.getAbsolutePath());
+        Tokens tokens = new Tokens();
+
+        tokenizer.tokenize(source, tokens);
+
+        List<String> images = Lists.newArrayList();
+        for (TokenEntry token : tokens.getTokens()) {
+            if (token != TokenEntry.getEOF()) {
+                images.add(token.getValue());
+            }
+        }
+        return images;
+    }
+
+}
@@ -25,6 +25,7 @@ import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 import org.sonar.plugins.objectivec.violations.fauxpas.FauxPasSensor;
 
@@ -58,7 +59,7 @@ public class FauxPasSensorTest {
         languages.add(ObjectiveC.KEY);
         when(fileSystem.languages()).thenReturn(languages);
 
-        final FauxPasSensor testedSensor = new FauxPasSensor(fileSystem, settings, resourcePerspectives);
+        final FauxPasSensor testedSensor = new FauxPasSensor(fileSystem, settings, resourcePerspectives, new ObjectiveCExclusions(settings, fileSystem));
 
         assertTrue(testedSensor.shouldExecuteOnProject(project));
     }
@@ -73,7 +74,7 @@ public class FauxPasSensorTest {
         languages.add("Test");
         when(fileSystem.languages()).thenReturn(languages);
 
-        final FauxPasSensor testedSensor = new FauxPasSensor(fileSystem, settings, resourcePerspectives);
+        final FauxPasSensor testedSensor = new FauxPasSensor(fileSystem, settings, resourcePerspectives, new ObjectiveCExclusions(settings, fileSystem));
 
         assertFalse(testedSensor.shouldExecuteOnProject(project));
     }
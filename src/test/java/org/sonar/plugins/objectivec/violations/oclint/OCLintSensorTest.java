@@ -30,6 +30,7 @@ import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.plugins.objectivec.ObjectiveCExclusions;
 import org.sonar.plugins.objectivec.core.ObjectiveC;
 import org.sonar.plugins.objectivec.violations.oclint.OCLintSensor;
 
@@ -55,7 +56,7 @@ public final class OCLintSensorTest {
         languages.add(ObjectiveC.KEY);
         when(fileSystem.languages()).thenReturn(languages);
 
-		final OCLintSensor testedSensor = new OCLintSensor(fileSystem, settings, resourcePerspectives);
+		final OCLintSensor testedSensor = new OCLintSensor(fileSystem, settings, resourcePerspectives, new ObjectiveCExclusions(settings, fileSystem));
 
 		assertTrue(testedSensor.shouldExecuteOnProject(project));
 	}
@@ -70,7 +71,7 @@ public final class OCLintSensorTest {
         languages.add("Test");
         when(fileSystem.languages()).thenReturn(languages);
 
-		final OCLintSensor testedSensor = new OCLintSensor(fileSystem, settings, resourcePerspectives);
+		final OCLintSensor testedSensor = new OCLintSensor(fileSystem, settings, resourcePerspectives, new ObjectiveCExclusions(settings, fileSystem));
 
 		assertFalse(testedSensor.shouldExecuteOnProject(project));
 	}